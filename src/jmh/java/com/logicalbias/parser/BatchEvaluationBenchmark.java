@@ -0,0 +1,65 @@
+package com.logicalbias.parser;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares evaluating a formula row by row against column-at-a-time batch evaluation.
+ * Scores are per row.
+ */
+@State(Scope.Benchmark)
+public class BatchEvaluationBenchmark {
+
+    private static final int ROWS = 1 << 16;
+
+    @Param({ "price * qty - discount", "max(a, b) * 1.5 + min(a, c) / 2 - abs(b - c)" })
+    public String expression;
+
+    private CompiledExpression compiled;
+    private BatchEvaluator batchEvaluator;
+    private double[][] columns;
+    private double[] row;
+    private double[] output;
+
+    @Setup
+    public void setup() {
+        compiled = new ExpressionParser().compile(expression);
+        batchEvaluator = compiled.newBatchEvaluator();
+
+        Random random = new Random(42);
+        columns = new double[compiled.getVariableCount()][ROWS];
+        for (double[] column : columns) {
+            for (int i = 0; i < ROWS; i++) {
+                column[i] = random.nextDouble() * 100;
+            }
+        }
+        row = new double[columns.length];
+        output = new double[ROWS];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public double[] rowAtATime() {
+        for (int i = 0; i < ROWS; i++) {
+            for (int v = 0; v < columns.length; v++) {
+                row[v] = columns[v][i];
+            }
+            output[i] = compiled.evaluate(row);
+        }
+        return output;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public double[] columnAtATime() {
+        batchEvaluator.evaluate(columns, output);
+        return output;
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.logicalbias.parser;
+
+/**
+ * Representative expressions shared by the benchmarks, selected by name through a JMH {@code @Param}.
+ */
+public final class ExpressionCorpus {
+
+    public static final String SHORT = "short";
+    public static final String LONG = "long";
+    public static final String NESTED = "nested";
+    public static final String FUNCTIONS = "functions";
+
+    private ExpressionCorpus() {
+    }
+
+    public static String get(String name) {
+        switch (name) {
+            case SHORT:
+                return "2 + 3 * 4 - 1";
+            case LONG:
+                return longExpression(250);
+            case NESTED:
+                return nestedExpression(60);
+            case FUNCTIONS:
+                return functionExpression(40);
+            default:
+                throw new IllegalArgumentException("Unknown corpus expression: " + name);
+        }
+    }
+
+    /**
+     * A flat chain of binary operators mixing every precedence level, e.g. {@code 1 + 2 * 3 - 4 / 5 ^ 2 ...}
+     */
+    static String longExpression(int terms) {
+        String[] operators = { " + ", " * ", " - ", " / ", " % ", " ^ " };
+        StringBuilder builder = new StringBuilder("1");
+        for (int i = 1; i < terms; i++) {
+            String operator = operators[i % operators.length];
+            builder.append(operator).append(operator.equals(" ^ ") ? "1.5" : String.valueOf(i + 1));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Deeply parenthesized expression, e.g. {@code (((1 + 1) * 2 + 1) * 2 + 1) ...}
+     */
+    static String nestedExpression(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append('(');
+        }
+        builder.append('1');
+        for (int i = 0; i < depth; i++) {
+            builder.append(" + 1) * ").append(i % 2 == 0 ? "1.01" : "0.99");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A sum of function calls exercising every built-in function, unary minus and constants.
+     */
+    static String functionExpression(int calls) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < calls; i++) {
+            if (i > 0) {
+                builder.append(" + ");
+            }
+            builder.append("max(abs(-").append(i).append(".5), min(floor(pi * ").append(i)
+                    .append("), ceil(e / 2))) - round(").append(i).append(".25)");
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.logicalbias.parser;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks each stage of the parser separately, plus the end-to-end {@link ExpressionParser#evaluate(String)},
+ * across the {@link ExpressionCorpus}. Run with {@code gradle jmh}; modes, time unit and the GC
+ * (allocation rate) profiler are configured in build.gradle.
+ */
+@State(Scope.Benchmark)
+public class ExpressionParserBenchmark {
+
+    @Param({ ExpressionCorpus.SHORT, ExpressionCorpus.LONG, ExpressionCorpus.NESTED, ExpressionCorpus.FUNCTIONS })
+    public String corpus;
+
+    private String expression;
+    private ExpressionParser parser;
+    private Tokenizer tokenizer;
+    private List<Token> tokens;
+    private List<Token> rpnTokens;
+    private CompiledExpression compiled;
+
+    @Setup
+    public void setup() {
+        expression = ExpressionCorpus.get(corpus);
+        parser = new ExpressionParser();
+        tokenizer = new Tokenizer();
+        tokens = parser.tokenize(expression);
+        rpnTokens = parser.shuntingYard(tokens);
+
+        // The corpus is constant, so an optimized program would be a single folded constant
+        ExpressionParser unoptimized = new ExpressionParser();
+        unoptimized.setOptimizationEnabled(false);
+        compiled = unoptimized.compile(expression);
+    }
+
+    /** Lexing only: characters to typed tokens */
+    @Benchmark
+    public List<Token> tokenize() {
+        return tokenizer.tokenize(expression);
+    }
+
+    /** Lexing plus token classification and sanity checks */
+    @Benchmark
+    public List<Token> tokenizeAndClassify() {
+        return parser.tokenize(expression);
+    }
+
+    /** Infix tokens to RPN order */
+    @Benchmark
+    public List<Token> shuntingYard() {
+        return parser.shuntingYard(tokens);
+    }
+
+    /** RPN tokens to an executable instruction stream */
+    @Benchmark
+    public CompiledExpression compileRpn() {
+        return parser.compile(expression, rpnTokens);
+    }
+
+    /** Evaluation of an already compiled, unoptimized RPN program */
+    @Benchmark
+    public double evaluateRpn() {
+        return compiled.evaluate();
+    }
+
+    /** Parse and evaluate from source text on every call */
+    @Benchmark
+    public double evaluateString() {
+        return parser.evaluate(expression);
+    }
+
+}
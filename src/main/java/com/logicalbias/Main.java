@@ -1,20 +1,150 @@
 package com.logicalbias;
 
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import com.logicalbias.parser.ExpressionParser;
+import com.logicalbias.parser.stream.BinaryRecordReader;
+import com.logicalbias.parser.stream.BinaryRecordWriter;
+import com.logicalbias.parser.stream.CsvRecordReader;
+import com.logicalbias.parser.stream.CsvRecordWriter;
+import com.logicalbias.parser.stream.RecordReader;
+import com.logicalbias.parser.stream.RecordWriter;
+import com.logicalbias.parser.stream.StreamEvaluator;
 
 public class Main {
-    public static void main(String[] args) {
+
+    private static final String USAGE = "Usage: Main [expression]\n"
+            + "       Main --input <file> --output <file> --formula <name=expression>... [options]\n"
+            + "Options:\n"
+            + "  --input-format csv|binary    format of the input file (default csv)\n"
+            + "  --output-format csv|binary   format of the output file (default csv)\n"
+            + "  --columns a,b,c              column names of a binary input file\n"
+            + "  --delimiter <char>           field delimiter of csv files (default ,)\n"
+            + "Binary files hold one native byte order double per column per record.";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].startsWith("--")) {
+            stream(args);
+            return;
+        }
+
         ExpressionParser parser = new ExpressionParser();
 
         //System.out.print("Enter an expression to parse: ");
         //Scanner scanner = new Scanner(System.in);
         //String expression = scanner.nextLine();
 
-        String expression = "5! * 2";
+        String expression = args.length > 0 ? String.join(" ", args) : "5! * 2";
 
         System.out.println("Calculating value for: " + expression);
 
         double value = parser.evaluate(expression);
         System.out.println(value);
     }
+
+    /**
+     * Applies the formulas to every record of the input file, writing one column per formula to the output file.
+     */
+    private static void stream(String[] args) throws IOException {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        String input = null;
+        String output = null;
+        String inputFormat = "csv";
+        String outputFormat = "csv";
+        String[] columns = null;
+        char delimiter = ',';
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 == args.length) {
+                usage("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--input":
+                    input = value;
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                case "--formula":
+                    int separator = value.indexOf('=');
+                    if (separator < 1) {
+                        usage("Formula must be of the form name=expression: " + value);
+                    }
+                    formulas.put(value.substring(0, separator).trim(), value.substring(separator + 1));
+                    break;
+                case "--input-format":
+                    inputFormat = value;
+                    break;
+                case "--output-format":
+                    outputFormat = value;
+                    break;
+                case "--columns":
+                    columns = value.split(",");
+                    break;
+                case "--delimiter":
+                    if (value.length() != 1) {
+                        usage("Delimiter must be a single character: " + value);
+                    }
+                    delimiter = value.charAt(0);
+                    break;
+                default:
+                    usage("Unknown option " + option);
+            }
+        }
+        if (input == null || output == null || formulas.isEmpty()) {
+            usage("--input, --output and at least one --formula are required");
+        }
+
+        StreamEvaluator evaluator = new StreamEvaluator(new ExpressionParser(), formulas);
+        long start = System.nanoTime();
+        long records;
+
+        try (RecordReader reader = openReader(Paths.get(input), inputFormat, columns, delimiter);
+                RecordWriter writer = openWriter(Paths.get(output), outputFormat, evaluator.getOutputNames(), delimiter)) {
+            records = evaluator.evaluate(reader, writer);
+        }
+
+        System.out.println("Evaluated " + formulas.size() + " formula(s) over " + records + " record(s) in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private static RecordReader openReader(Path path, String format, String[] columns, char delimiter) throws IOException {
+        switch (format) {
+            case "csv":
+                return new CsvRecordReader(path, delimiter);
+            case "binary":
+                if (columns == null) {
+                    usage("--columns is required for binary input");
+                }
+                return new BinaryRecordReader(path, ByteOrder.nativeOrder(), columns);
+            default:
+                usage("Unknown input format " + format);
+                return null;
+        }
+    }
+
+    private static RecordWriter openWriter(Path path, String format, String[] names, char delimiter) throws IOException {
+        switch (format) {
+            case "csv":
+                return new CsvRecordWriter(path, delimiter, names);
+            case "binary":
+                return new BinaryRecordWriter(path, ByteOrder.nativeOrder(), names.length);
+            default:
+                usage("Unknown output format " + format);
+                return null;
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(1);
+    }
 }
@@ -0,0 +1,333 @@
+package com.logicalbias.parser;
+
+import java.util.Arrays;
+
+import com.logicalbias.parser.functions.Function;
+import com.logicalbias.parser.operators.FactorialOperator;
+import com.logicalbias.parser.operators.PowerOfTwoDivisionOperator;
+import com.logicalbias.parser.operators.PowerOfTwoModulusOperator;
+
+/**
+ * Evaluates a {@link CompiledExpression} over columns of variable values, one chunk of rows at a time.<br />
+ * Rather than walking the RPN program once per row, each instruction is applied to a whole chunk before
+ * moving on to the next: variables refer directly into their input column, constants are pre-broadcast
+ * buffers, and every operator runs as a tight loop over the chunk which the JIT compiler can unroll and
+ * vectorize. Chunks are sized so the working set of the operand stack stays in the L1 cache.<br />
+ * The branches of {@code &&}, {@code ||} and {@code if} are taken differently by each row, so each of these functions
+ * (a {@link JumpRegion}) is interpreted row by row over the chunk, sparing every row its untaken branches, while the
+ * rest of the program around it still runs a chunk at a time.<br />
+ * An evaluator owns its scratch buffers, so it is not thread-safe; use one evaluator per thread.
+ */
+public final class BatchEvaluator {
+
+    /** Rows evaluated per pass over the program */
+    public static final int CHUNK_SIZE = 256;
+
+    private final CompiledExpression expression;
+    private final int[] instructions;
+    private final Function[] functions;
+    private final int[] argumentCounts;
+    private final Intrinsic[] intrinsics;
+    private final int variableCount;
+
+    // Each operand stack slot refers to a chunk of values: an input column, a constant or a scratch buffer
+    private final double[][] stackArrays;
+    private final int[] stackOffsets;
+    private final double[][] scratch;
+    private final double[][] constantChunks;
+    private final double[][] temporaries;
+    private final double[] arguments;
+    // Row at a time evaluation of the lazy functions
+    private final JumpRegion[] regions;
+    private final double[] row;
+    private final double[] frame;
+
+    BatchEvaluator(CompiledExpression expression) {
+        this.expression = expression;
+        this.instructions = expression.instructions();
+        this.functions = expression.functions();
+        this.argumentCounts = expression.argumentCounts();
+        this.variableCount = expression.getVariableCount();
+
+        this.intrinsics = new Intrinsic[functions.length];
+        int maxArity = 0;
+        for (int i = 0; i < functions.length; i++) {
+            intrinsics[i] = Intrinsic.of(functions[i]);
+            maxArity = Math.max(maxArity, argumentCounts[i]);
+        }
+
+        int depth = expression.getMaxStackDepth();
+        this.stackArrays = new double[depth][];
+        this.stackOffsets = new int[depth];
+        this.scratch = new double[depth][CHUNK_SIZE];
+
+        double[] constants = expression.constants();
+        this.constantChunks = new double[constants.length][CHUNK_SIZE];
+        for (int i = 0; i < constants.length; i++) {
+            Arrays.fill(constantChunks[i], constants[i]);
+        }
+        this.arguments = new double[maxArity];
+        this.temporaries = new double[expression.getTemporaryCount()][CHUNK_SIZE];
+
+        this.regions = JumpRegion.find(expression);
+        this.row = new double[variableCount];
+        this.frame = new double[expression.getFrameSize()];
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluates every row of the output: {@code output[row]} is the value of the expression with the
+     * variable at slot {@code i} bound to {@code columns[i][row]}.
+     */
+    public void evaluate(double[][] columns, double[] output) {
+        evaluate(columns, output, 0, output.length);
+    }
+
+    /**
+     * Evaluates the rows {@code [from, to)}, writing {@code output[row]} for each.
+     */
+    public void evaluate(double[][] columns, double[] output, int from, int to) {
+        if (columns.length < variableCount) {
+            throw new IllegalArgumentException("Expected " + variableCount + " column(s) but received " + columns.length);
+        }
+        if (from < 0 || from > to || to > output.length) {
+            throw new IndexOutOfBoundsException("Invalid row range [" + from + ", " + to + ") for output of length " + output.length);
+        }
+        for (int i = 0; i < variableCount; i++) {
+            if (columns[i].length < to) {
+                throw new IllegalArgumentException("Column " + i + " has " + columns[i].length + " row(s) but " + to + " are required");
+            }
+        }
+
+        for (int start = from; start < to; start += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, to - start);
+            evaluateChunk(columns, start, length);
+            System.arraycopy(stackArrays[0], stackOffsets[0], output, start, length);
+        }
+    }
+
+    private void evaluateChunk(double[][] columns, int start, int length) {
+        int top = 0;
+
+        for (int pc = 0; pc < instructions.length; pc++) {
+            if (regions[pc] != null) {
+                // The region replaces the chunk on top of the stack, as a unary function would
+                double[] out = scratch[top - 1];
+                region(regions[pc], columns, start, stackArrays[top - 1], stackOffsets[top - 1], out, length);
+                stackArrays[top - 1] = out;
+                stackOffsets[top - 1] = 0;
+                pc = regions[pc].end - 1;
+                continue;
+            }
+
+            int instruction = instructions[pc];
+            int operand = CompiledExpression.operand(instruction);
+            switch (CompiledExpression.opcode(instruction)) {
+                case CompiledExpression.OP_CONSTANT:
+                    stackArrays[top] = constantChunks[operand];
+                    stackOffsets[top++] = 0;
+                    break;
+                case CompiledExpression.OP_VARIABLE:
+                    stackArrays[top] = columns[operand];
+                    stackOffsets[top++] = start;
+                    break;
+                case CompiledExpression.OP_STORE:
+                    // The scratch buffer on top of the stack is overwritten by later instructions, so copy the chunk
+                    System.arraycopy(stackArrays[top - 1], stackOffsets[top - 1], temporaries[operand], 0, length);
+                    break;
+                case CompiledExpression.OP_LOAD:
+                    stackArrays[top] = temporaries[operand];
+                    stackOffsets[top++] = 0;
+                    break;
+                case CompiledExpression.OP_FUNCTION:
+                    Function function = functions[operand];
+                    int numArgs = argumentCounts[operand];
+                    top -= numArgs;
+                    double[] out = scratch[top];
+                    if (numArgs == 1) {
+                        unary(intrinsics[operand], function, stackArrays[top], stackOffsets[top], out, length);
+                    }
+                    else if (numArgs == 2) {
+                        binary(intrinsics[operand], function, stackArrays[top], stackOffsets[top],
+                                stackArrays[top + 1], stackOffsets[top + 1], out, length);
+                    }
+                    else {
+                        nary(intrinsics[operand], function, top, numArgs, out, length);
+                    }
+                    stackArrays[top] = out;
+                    stackOffsets[top++] = 0;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode in compiled expression: " + CompiledExpression.opcode(instruction));
+            }
+        }
+    }
+
+    /**
+     * Interprets the region once per row with the row's first argument as the only operand on the stack, binding just
+     * the variables and temporaries it reads. The output may alias the argument, which each row reads before writing.
+     */
+    private void region(JumpRegion region, double[][] columns, int start, double[] a, int ao, double[] out, int length) {
+        int maxStackDepth = expression.getMaxStackDepth();
+        for (int i = 0; i < length; i++) {
+            for (int slot : region.variables) {
+                row[slot] = columns[slot][start + i];
+            }
+            for (int temporary : region.temporaries) {
+                frame[maxStackDepth + temporary] = temporaries[temporary][i];
+            }
+            frame[0] = a[ao + i];
+            out[i] = expression.interpret(row, frame, region.start, region.end, 1);
+        }
+    }
+
+    private static void unary(Intrinsic intrinsic, Function function, double[] a, int ao, double[] out, int length) {
+        switch (intrinsic) {
+            case NEGATE:
+                for (int i = 0; i < length; i++) {
+                    out[i] = -a[ao + i];
+                }
+                break;
+            case ABS:
+                for (int i = 0; i < length; i++) {
+                    out[i] = Math.abs(a[ao + i]);
+                }
+                break;
+            case FLOOR:
+                for (int i = 0; i < length; i++) {
+                    out[i] = Math.floor(a[ao + i]);
+                }
+                break;
+            case CEIL:
+                for (int i = 0; i < length; i++) {
+                    out[i] = Math.ceil(a[ao + i]);
+                }
+                break;
+            case ROUND:
+                for (int i = 0; i < length; i++) {
+                    out[i] = Math.round(a[ao + i]);
+                }
+                break;
+            case FACTORIAL:
+                for (int i = 0; i < length; i++) {
+                    out[i] = FactorialOperator.factorial(a[ao + i]);
+                }
+                break;
+            default:
+                for (int i = 0; i < length; i++) {
+                    out[i] = function.apply1(a[ao + i]);
+                }
+                break;
+        }
+    }
+
+    private static void binary(Intrinsic intrinsic, Function function, double[] a, int ao, double[] b, int bo, double[] out, int length) {
+        switch (intrinsic) {
+            case ADD:
+                for (int i = 0; i < length; i++) {
+                    out[i] = a[ao + i] + b[bo + i];
+                }
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < length; i++) {
+                    out[i] = a[ao + i] - b[bo + i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < length; i++) {
+                    out[i] = a[ao + i] * b[bo + i];
+                }
+                break;
+            case DIVIDE:
+                if (function instanceof PowerOfTwoDivisionOperator) {
+                    // The divisor operand of a specialization is always its constant
+                    double reciprocal = ((PowerOfTwoDivisionOperator) function).getReciprocal();
+                    for (int i = 0; i < length; i++) {
+                        out[i] = a[ao + i] * reciprocal;
+                    }
+                    break;
+                }
+                for (int i = 0; i < length; i++) {
+                    out[i] = a[ao + i] / b[bo + i];
+                }
+                break;
+            case MODULUS:
+                if (function instanceof PowerOfTwoModulusOperator) {
+                    double divisor = ((PowerOfTwoModulusOperator) function).getDivisor();
+                    double reciprocal = ((PowerOfTwoModulusOperator) function).getReciprocal();
+                    for (int i = 0; i < length; i++) {
+                        out[i] = PowerOfTwoModulusOperator.remainder(a[ao + i], divisor, reciprocal);
+                    }
+                    break;
+                }
+                for (int i = 0; i < length; i++) {
+                    out[i] = a[ao + i] % b[bo + i];
+                }
+                break;
+            case POWER:
+                for (int i = 0; i < length; i++) {
+                    out[i] = Math.pow(a[ao + i], b[bo + i]);
+                }
+                break;
+            case MIN:
+                for (int i = 0; i < length; i++) {
+                    out[i] = Math.min(a[ao + i], b[bo + i]);
+                }
+                break;
+            case MAX:
+                for (int i = 0; i < length; i++) {
+                    out[i] = Math.max(a[ao + i], b[bo + i]);
+                }
+                break;
+            case SUM:
+                for (int i = 0; i < length; i++) {
+                    out[i] = a[ao + i] + b[bo + i];
+                }
+                break;
+            default:
+                for (int i = 0; i < length; i++) {
+                    out[i] = function.apply2(a[ao + i], b[bo + i]);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Applies a function of three or more arguments. The variadic built-ins fold the argument chunks into the output
+     * one argument at a time (in the same order as their scalar implementations); any other function is applied
+     * row by row, gathering each row's arguments into a reused array.
+     */
+    private void nary(Intrinsic intrinsic, Function function, int base, int numArgs, double[] out, int length) {
+        switch (intrinsic) {
+            case MIN:
+            case MAX:
+            case SUM:
+            case AVERAGE:
+                // The output is the scratch buffer of the first argument's slot, so it may alias that argument
+                System.arraycopy(stackArrays[base], stackOffsets[base], out, 0, length);
+                Intrinsic fold = intrinsic == Intrinsic.AVERAGE ? Intrinsic.SUM : intrinsic;
+                for (int arg = 1; arg < numArgs; arg++) {
+                    binary(fold, function, out, 0, stackArrays[base + arg], stackOffsets[base + arg], out, length);
+                }
+                if (intrinsic == Intrinsic.AVERAGE) {
+                    for (int i = 0; i < length; i++) {
+                        out[i] /= numArgs;
+                    }
+                }
+                return;
+            default:
+                break;
+        }
+
+        for (int i = 0; i < length; i++) {
+            for (int arg = 0; arg < numArgs; arg++) {
+                arguments[arg] = stackArrays[base + arg][stackOffsets[base + arg] + i];
+            }
+            out[i] = function.apply(arguments, 0, numArgs);
+        }
+    }
+
+}
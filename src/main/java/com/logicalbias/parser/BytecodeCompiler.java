@@ -0,0 +1,373 @@
+package com.logicalbias.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.logicalbias.parser.ClassFileWriter.Code;
+import com.logicalbias.parser.functions.Function;
+import com.logicalbias.parser.operators.PowerOfTwoDivisionOperator;
+import com.logicalbias.parser.operators.PowerOfTwoModulusOperator;
+
+/**
+ * Translates the instruction stream of a {@link CompiledExpression} into a generated subclass of
+ * {@link BytecodeExpression}. The RPN program maps directly onto the JVM operand stack: constants
+ * become {@code ldc2_w}, variables become {@code daload} from the {@code vars} argument, and the
+ * built-in operators/functions are inlined as the equivalent JVM instruction, {@link Math} call or static kernel.
+ * Common subexpression temporaries become local variables, and the jumps of lazily evaluated functions become branches.
+ */
+final class BytecodeCompiler {
+
+    private static final String BASE_CLASS = "com/logicalbias/parser/BytecodeExpression";
+    private static final String FUNCTION_CLASS = "com/logicalbias/parser/functions/Function";
+    private static final String FUNCTIONS_DESCRIPTOR = "[L" + FUNCTION_CLASS + ";";
+    private static final String MATH_CLASS = "java/lang/Math";
+    private static final String FACTORIAL_CLASS = "com/logicalbias/parser/operators/FactorialOperator";
+    private static final String MODULUS_CLASS = "com/logicalbias/parser/operators/PowerOfTwoModulusOperator";
+
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    // Local variable slots of the generated eval(double[]) method
+    private static final int LOCAL_THIS = 0;
+    private static final int LOCAL_VARS = 1;
+    private static final int LOCAL_TEMPS = 2;
+
+    private static final AtomicLong classCounter = new AtomicLong();
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * Generates, loads and instantiates a class evaluating the specified program.
+     * Returns null if the program is too large to fit into a single JVM method or to be reached by a branch.
+     */
+    static BytecodeExpression compile(int[] instructions, double[] constants, Function[] functions, int[] argumentCounts,
+            int maxStackDepth, int temporaryCount) {
+        String className = "com/logicalbias/parser/generated/Expression" + classCounter.incrementAndGet();
+        ClassFileWriter writer = new ClassFileWriter(className, BASE_CLASS);
+
+        writeConstructor(writer);
+        Code code = writeEval(writer, instructions, constants, functions, argumentCounts, maxStackDepth, temporaryCount);
+        if (code == null || code.position() > MAX_CODE_LENGTH) {
+            return null;
+        }
+
+        byte[] classBytes = writer.toByteArray();
+        try {
+            Class<?> generated = new Loader().define(className.replace('/', '.'), classBytes);
+            return (BytecodeExpression) generated.getConstructor(Function[].class).newInstance((Object) functions);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to instantiate generated expression class " + className, e);
+        }
+    }
+
+    private static void writeConstructor(ClassFileWriter writer) {
+        Code code = new Code(2, 2);
+        code.local(Code.ALOAD, LOCAL_THIS);
+        code.local(Code.ALOAD, 1);
+        code.opShort(Code.INVOKESPECIAL, writer.methodRef(BASE_CLASS, "<init>", "(" + FUNCTIONS_DESCRIPTOR + ")V"));
+        code.op(Code.RETURN);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "(" + FUNCTIONS_DESCRIPTOR + ")V", code);
+    }
+
+    private static Code writeEval(ClassFileWriter writer, int[] instructions, double[] constants, Function[] functions,
+            int[] argumentCounts, int maxStackDepth, int temporaryCount) {
+        int maxArity = 0;
+        int maxCallArity = 0;
+        for (int i = 0; i < functions.length; i++) {
+            maxArity = Math.max(maxArity, argumentCounts[i]);
+            if (!isVariadicIntrinsic(functions[i])) {
+                maxCallArity = Math.max(maxCallArity, argumentCounts[i]);
+            }
+        }
+
+        // Every operand is a double (two words); a generic call additionally needs the receiver,
+        // the argument array, an index and one double argument on top of the stack.
+        // Common subexpression temporaries are held in locals following the argument spill slots,
+        // followed by the argument array shared by every call of three or more arguments.
+        int localShared = LOCAL_TEMPS + maxArity * 2;
+        int localArguments = localShared + temporaryCount * 2;
+        Code code = new Code(maxStackDepth * 2 + 6, localArguments + 1);
+
+        if (maxCallArity > 2) {
+            code.pushInt(writer, maxCallArity);
+            code.op(Code.NEWARRAY, Code.T_DOUBLE);
+            code.local(Code.ASTORE, localArguments);
+        }
+
+        // Jumps are always forward: the pending branches targeting each instruction are patched when it is reached
+        List<List<Integer>> branches = new ArrayList<>(Collections.nCopies(instructions.length + 1, (List<Integer>) null));
+
+        for (int pc = 0; pc < instructions.length; pc++) {
+            if (!patchBranches(code, branches.get(pc))) {
+                return null;
+            }
+
+            int instruction = instructions[pc];
+            int operand = CompiledExpression.operand(instruction);
+            switch (CompiledExpression.opcode(instruction)) {
+                case CompiledExpression.OP_CONSTANT:
+                    code.pushDouble(writer, constants[operand]);
+                    break;
+                case CompiledExpression.OP_VARIABLE:
+                    code.local(Code.ALOAD, LOCAL_VARS);
+                    code.pushInt(writer, operand);
+                    code.op(Code.DALOAD);
+                    break;
+                case CompiledExpression.OP_STORE:
+                    code.op(Code.DUP2);
+                    code.local(Code.DSTORE, localShared + operand * 2);
+                    break;
+                case CompiledExpression.OP_LOAD:
+                    code.local(Code.DLOAD, localShared + operand * 2);
+                    break;
+                case CompiledExpression.OP_FUNCTION:
+                    int numArgs = argumentCounts[operand];
+                    if (!writeIntrinsic(writer, code, functions[operand], numArgs)) {
+                        writeCall(writer, code, numArgs, operand, localArguments);
+                    }
+                    break;
+                case CompiledExpression.OP_JUMP:
+                    addBranch(branches, operand, code.branch(Code.GOTO));
+                    break;
+                case CompiledExpression.OP_JUMP_IF_FALSE:
+                    // dcmpl of NaN and zero is non-zero, so NaN is true
+                    code.op(Code.DCONST_0);
+                    code.op(Code.DCMPL);
+                    addBranch(branches, operand, code.branch(Code.IFEQ));
+                    break;
+                case CompiledExpression.OP_JUMP_IF_TRUE:
+                    code.op(Code.DCONST_0);
+                    code.op(Code.DCMPL);
+                    addBranch(branches, operand, code.branch(Code.IFNE));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode in compiled expression: " + CompiledExpression.opcode(instruction));
+            }
+        }
+
+        if (!patchBranches(code, branches.get(instructions.length))) {
+            return null;
+        }
+        code.op(Code.DRETURN);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "eval", "([D)D", code);
+        return code;
+    }
+
+    private static void addBranch(List<List<Integer>> branches, int target, int branch) {
+        if (branches.get(target) == null) {
+            branches.set(target, new ArrayList<>());
+        }
+        branches.get(target).add(branch);
+    }
+
+    private static boolean patchBranches(Code code, List<Integer> pending) {
+        if (pending != null) {
+            for (int branch : pending) {
+                if (!code.patch(branch)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isVariadicIntrinsic(Function function) {
+        switch (Intrinsic.of(function)) {
+            case MIN:
+            case MAX:
+            case SUM:
+            case AVERAGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Emits the inlined equivalent of a built-in function, returning false if the function is not an {@link Intrinsic}.
+     */
+    private static boolean writeIntrinsic(ClassFileWriter writer, Code code, Function function, int numArgs) {
+        Intrinsic intrinsic = Intrinsic.of(function);
+        switch (intrinsic) {
+            case ADD:
+                code.op(Code.DADD);
+                return true;
+            case SUBTRACT:
+                code.op(Code.DSUB);
+                return true;
+            case MULTIPLY:
+                code.op(Code.DMUL);
+                return true;
+            case DIVIDE:
+                if (function instanceof PowerOfTwoDivisionOperator) {
+                    // The divisor on the stack is the specialization's constant
+                    code.op(Code.POP2);
+                    code.pushDouble(writer, ((PowerOfTwoDivisionOperator) function).getReciprocal());
+                    code.op(Code.DMUL);
+                    return true;
+                }
+                code.op(Code.DDIV);
+                return true;
+            case MODULUS:
+                if (function instanceof PowerOfTwoModulusOperator) {
+                    code.pushDouble(writer, ((PowerOfTwoModulusOperator) function).getReciprocal());
+                    code.opShort(Code.INVOKESTATIC, writer.methodRef(MODULUS_CLASS, "remainder", "(DDD)D"));
+                    return true;
+                }
+                code.op(Code.DREM);
+                return true;
+            case NEGATE:
+                code.op(Code.DNEG);
+                return true;
+            case POWER:
+                code.opShort(Code.INVOKESTATIC, writer.methodRef(MATH_CLASS, "pow", "(DD)D"));
+                return true;
+            case FACTORIAL:
+                code.opShort(Code.INVOKESTATIC, writer.methodRef(FACTORIAL_CLASS, "factorial", "(D)D"));
+                return true;
+            case MIN:
+            case MAX:
+                // Math.min and Math.max are commutative and associative, including for NaN and signed zeros
+                for (int i = 1; i < numArgs; i++) {
+                    code.opShort(Code.INVOKESTATIC, writer.methodRef(MATH_CLASS, intrinsic == Intrinsic.MIN ? "min" : "max", "(DD)D"));
+                }
+                return true;
+            case SUM:
+            case AVERAGE:
+                writeSum(code, numArgs);
+                if (intrinsic == Intrinsic.AVERAGE) {
+                    code.pushDouble(writer, numArgs);
+                    code.op(Code.DDIV);
+                }
+                return true;
+            case ABS:
+                code.opShort(Code.INVOKESTATIC, writer.methodRef(MATH_CLASS, "abs", "(D)D"));
+                return true;
+            case FLOOR:
+                code.opShort(Code.INVOKESTATIC, writer.methodRef(MATH_CLASS, "floor", "(D)D"));
+                return true;
+            case CEIL:
+                code.opShort(Code.INVOKESTATIC, writer.methodRef(MATH_CLASS, "ceil", "(D)D"));
+                return true;
+            case ROUND:
+                code.opShort(Code.INVOKESTATIC, writer.methodRef(MATH_CLASS, "round", "(D)J"));
+                code.op(Code.L2D);
+                return true;
+            // dcmpg pushes 1 and dcmpl pushes -1 if either operand is NaN, so every comparison but != is then false
+            case LESS:
+                writeComparison(code, Code.DCMPG, Code.IFLT);
+                return true;
+            case LESS_EQUAL:
+                writeComparison(code, Code.DCMPG, Code.IFLE);
+                return true;
+            case GREATER:
+                writeComparison(code, Code.DCMPL, Code.IFGT);
+                return true;
+            case GREATER_EQUAL:
+                writeComparison(code, Code.DCMPL, Code.IFGE);
+                return true;
+            case EQUAL:
+                writeComparison(code, Code.DCMPL, Code.IFEQ);
+                return true;
+            case NOT_EQUAL:
+                writeComparison(code, Code.DCMPL, Code.IFNE);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Emits {@code compare; if<condition> true; dconst_0; goto end; true: dconst_1; end:}.
+     */
+    private static void writeComparison(Code code, int compare, int condition) {
+        code.op(compare);
+        int isTrue = code.branch(condition);
+        code.op(Code.DCONST_0);
+        int end = code.branch(Code.GOTO);
+        code.patch(isTrue);
+        code.op(Code.DCONST_1);
+        code.patch(end);
+    }
+
+    /**
+     * Emits the left to right sum of the arguments on top of the stack. Addition is not associative,
+     * so more than two arguments are spilled into temporary locals and added in order.
+     */
+    private static void writeSum(Code code, int numArgs) {
+        if (numArgs == 2) {
+            code.op(Code.DADD);
+            return;
+        }
+        if (numArgs > 2) {
+            for (int i = numArgs - 1; i >= 0; i--) {
+                code.local(Code.DSTORE, LOCAL_TEMPS + i * 2);
+            }
+            code.local(Code.DLOAD, LOCAL_TEMPS);
+            for (int i = 1; i < numArgs; i++) {
+                code.local(Code.DLOAD, LOCAL_TEMPS + i * 2);
+                code.op(Code.DADD);
+            }
+        }
+    }
+
+    /**
+     * Emits a call through the functions table: the arguments are spilled into temporary locals and
+     * reloaded above the receiver. Unary and binary functions are called through {@link Function#apply1(double)}
+     * and {@link Function#apply2(double, double)}; any other arity is copied into the argument array allocated
+     * once per evaluation and passed through {@link Function#apply(double[], int, int)}.
+     */
+    private static void writeCall(ClassFileWriter writer, Code code, int numArgs, int functionIndex, int localArguments) {
+        for (int i = numArgs - 1; i >= 0; i--) {
+            code.local(Code.DSTORE, LOCAL_TEMPS + i * 2);
+        }
+
+        code.local(Code.ALOAD, LOCAL_THIS);
+        code.opShort(Code.GETFIELD, writer.fieldRef(BASE_CLASS, "functions", FUNCTIONS_DESCRIPTOR));
+        code.pushInt(writer, functionIndex);
+        code.op(Code.AALOAD);
+
+        if (numArgs == 1) {
+            code.local(Code.DLOAD, LOCAL_TEMPS);
+            code.opShort(Code.INVOKEVIRTUAL, writer.methodRef(FUNCTION_CLASS, "apply1", "(D)D"));
+            return;
+        }
+        if (numArgs == 2) {
+            code.local(Code.DLOAD, LOCAL_TEMPS);
+            code.local(Code.DLOAD, LOCAL_TEMPS + 2);
+            code.opShort(Code.INVOKEVIRTUAL, writer.methodRef(FUNCTION_CLASS, "apply2", "(DD)D"));
+            return;
+        }
+
+        for (int i = 0; i < numArgs; i++) {
+            code.local(Code.ALOAD, localArguments);
+            code.pushInt(writer, i);
+            code.local(Code.DLOAD, LOCAL_TEMPS + i * 2);
+            code.op(Code.DASTORE);
+        }
+
+        code.local(Code.ALOAD, localArguments);
+        code.pushInt(writer, 0);
+        code.pushInt(writer, numArgs);
+        code.opShort(Code.INVOKEVIRTUAL, writer.methodRef(FUNCTION_CLASS, "apply", "([DII)D"));
+    }
+
+    /**
+     * Each generated class gets its own loader so that it can be unloaded once its expression is unreachable.
+     */
+    private static final class Loader extends ClassLoader {
+
+        Loader() {
+            super(BytecodeExpression.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] classBytes) {
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.logicalbias.parser;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * Base class of the JVM classes generated by the bytecode backend of {@link CompiledExpression}.<br />
+ * Each generated subclass implements {@link #eval(double[])} as straight-line bytecode in which the
+ * built-in operators and functions are inlined; any other {@link Function} is invoked through the
+ * {@link #functions} table handed to the constructor.
+ */
+public abstract class BytecodeExpression {
+
+    protected final Function[] functions;
+
+    protected BytecodeExpression(Function[] functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * Evaluates the expression with {@code vars[i]} bound to the variable at slot {@code i}.
+     */
+    public abstract double eval(double[] vars);
+
+}
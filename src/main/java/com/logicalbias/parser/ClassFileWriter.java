@@ -0,0 +1,379 @@
+package com.logicalbias.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JVM class file writer capable of emitting a single class with a handful of methods.<br />
+ * Classes are written with major version 49 so the JVM verifies them by type inference and no
+ * StackMapTable frames need to be computed for methods containing branches.
+ * @see <a href="https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html">The class File Format</a>
+ */
+class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1;
+
+    private final String className;
+    private final String superClassName;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    /**
+     * @param className internal (slash separated) name of the class to write
+     * @param superClassName internal (slash separated) name of the super class
+     */
+    ClassFileWriter(String className, String superClassName) {
+        this.className = className;
+        this.superClassName = superClassName;
+    }
+
+    int utf8(String value) {
+        Integer index = constantIndexes.get("U" + value);
+        if (index == null) {
+            index = addConstant("U" + value, 1, out -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            });
+        }
+        return index;
+    }
+
+    int integer(int value) {
+        Integer index = constantIndexes.get("I" + value);
+        if (index == null) {
+            index = addConstant("I" + value, 1, out -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(value);
+            });
+        }
+        return index;
+    }
+
+    int doubleValue(double value) {
+        // Key on the raw bits so that -0.0 and distinct NaN payloads are preserved
+        String key = "D" + Double.doubleToRawLongBits(value);
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            index = addConstant(key, 2, out -> {
+                out.writeByte(CONSTANT_DOUBLE);
+                out.writeDouble(value);
+            });
+        }
+        return index;
+    }
+
+    int classRef(String internalName) {
+        Integer index = constantIndexes.get("C" + internalName);
+        if (index == null) {
+            int name = utf8(internalName);
+            index = addConstant("C" + internalName, 1, out -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(name);
+            });
+        }
+        return index;
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            index = addConstant(key, 1, out -> {
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+        return index;
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + descriptor;
+        Integer index = constantIndexes.get(key);
+        if (index == null) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            index = addConstant(key, 1, out -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+        }
+        return index;
+    }
+
+    private int addConstant(String key, int slots, ConstantWriter writer) {
+        int index = constantCount;
+        try {
+            writer.write(constantPool);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        constantCount += slots;
+        constantIndexes.put(key, index);
+        return index;
+    }
+
+    /**
+     * Adds a method whose body is the specified code.
+     */
+    void addMethod(int access, String name, String descriptor, Code code) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            int codeIndex = utf8("Code");
+
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1); // attributes_count
+
+            byte[] body = code.toByteArray();
+            out.writeShort(codeIndex);
+            out.writeInt(12 + body.length);
+            out.writeShort(code.getMaxStack());
+            out.writeShort(code.getMaxLocals());
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0); // exception_table_length
+            out.writeShort(0); // attributes_count
+
+            methods.add(bytes.toByteArray());
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    byte[] toByteArray() {
+        try {
+            int thisClass = classRef(className);
+            int superClass = classRef(superClassName);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(constantCount);
+            constantPool.flush();
+            constantPoolBytes.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces_count
+            out.writeShort(0); // fields_count
+
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+
+            out.writeShort(0); // attributes_count
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * A growable buffer of JVM instructions for a single method body.
+     */
+    static class Code {
+
+        static final int DCONST_0 = 0x0e;
+        static final int DCONST_1 = 0x0f;
+        static final int BIPUSH = 0x10;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int ALOAD = 0x19;
+        static final int DLOAD = 0x18;
+        static final int DSTORE = 0x39;
+        static final int ASTORE = 0x3a;
+        static final int DALOAD = 0x31;
+        static final int AALOAD = 0x32;
+        static final int DASTORE = 0x52;
+        static final int POP2 = 0x58;
+        static final int DUP = 0x59;
+        static final int DUP2 = 0x5c;
+        static final int DADD = 0x63;
+        static final int DSUB = 0x67;
+        static final int DMUL = 0x6b;
+        static final int DDIV = 0x6f;
+        static final int DREM = 0x73;
+        static final int DNEG = 0x77;
+        static final int L2D = 0x8a;
+        static final int DCMPL = 0x97;
+        static final int DCMPG = 0x98;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int IFLT = 0x9b;
+        static final int IFGE = 0x9c;
+        static final int IFGT = 0x9d;
+        static final int IFLE = 0x9e;
+        static final int GOTO = 0xa7;
+        static final int DRETURN = 0xaf;
+        static final int RETURN = 0xb1;
+        static final int GETFIELD = 0xb4;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int NEWARRAY = 0xbc;
+
+        static final int T_DOUBLE = 7;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int maxStack;
+        private int maxLocals;
+        // Branch offsets patched into the code once their targets are known, as {position, offset} pairs
+        private final List<int[]> patches = new ArrayList<>();
+
+        Code(int maxStack, int maxLocals) {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        int getMaxStack() {
+            return maxStack;
+        }
+
+        int getMaxLocals() {
+            return maxLocals;
+        }
+
+        int position() {
+            return bytes.size();
+        }
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code op(int opcode, int u1) {
+            bytes.write(opcode);
+            bytes.write(u1);
+            return this;
+        }
+
+        Code opShort(int opcode, int u2) {
+            bytes.write(opcode);
+            bytes.write(u2 >>> 8);
+            bytes.write(u2);
+            return this;
+        }
+
+        /**
+         * Pushes an int constant using the shortest available encoding.
+         */
+        Code pushInt(ClassFileWriter writer, int value) {
+            if (value >= -1 && value <= 5) {
+                return op(0x03 + value); // ICONST_M1 .. ICONST_5
+            }
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                return op(BIPUSH, value & 0xFF);
+            }
+            if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                return opShort(SIPUSH, value & 0xFFFF);
+            }
+            return opShort(LDC_W, writer.integer(value));
+        }
+
+        /**
+         * Pushes a double constant, using DCONST_0/DCONST_1 for positive zero and one.
+         */
+        Code pushDouble(ClassFileWriter writer, double value) {
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                return op(DCONST_0);
+            }
+            if (value == 1.0) {
+                return op(DCONST_1);
+            }
+            return opShort(LDC2_W, writer.doubleValue(value));
+        }
+
+        Code local(int opcode, int index) {
+            if (index > 0xFF) {
+                op(0xc4); // WIDE
+                return opShort(opcode, index);
+            }
+            return op(opcode, index);
+        }
+
+        /**
+         * Emits a branch instruction with a placeholder offset, returning its position for {@link #patch(int)}.
+         */
+        int branch(int opcode) {
+            int position = position();
+            opShort(opcode, 0);
+            return position;
+        }
+
+        /**
+         * Points the branch at the position to the current end of the code.
+         * Returns false if the offset does not fit the signed 16 bit operand.
+         */
+        boolean patch(int branch) {
+            int offset = position() - branch;
+            if (offset > Short.MAX_VALUE) {
+                return false;
+            }
+            patches.add(new int[] { branch + 1, offset });
+            return true;
+        }
+
+        byte[] toByteArray() {
+            byte[] code = bytes.toByteArray();
+            for (int[] patch : patches) {
+                code[patch[0]] = (byte) (patch[1] >>> 8);
+                code[patch[0] + 1] = (byte) patch[1];
+            }
+            return code;
+        }
+
+    }
+
+}
@@ -0,0 +1,415 @@
+package com.logicalbias.parser;
+
+import java.util.Arrays;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * An immutable, pre-parsed mathematical expression produced by {@link ExpressionParser#compile(String)}.<br />
+ * The RPN token list is resolved once into a flat instruction stream: numeric tokens and constants are
+ * stored as primitive values and function/operator tokens as direct {@link Function} references.
+ * Evaluating a compiled expression therefore performs no tokenizing, map lookups or number parsing.
+ * Instances are safe to share and evaluate concurrently from any number of threads.<br />
+ * Free variables are resolved to integer slots at compile time, in order of first appearance, and
+ * bound at evaluation time either positionally through a {@code double[]} or through reusable {@link Bindings}.<br />
+ * Common subexpressions are evaluated once per evaluation: the first occurrence stores its value into a
+ * temporary slot which later occurrences load. Temporaries share the caller's scratch frame, above the operand stack.<br />
+ * The lazily evaluated {@code &&}, {@code ||} and {@code if} are compiled into forward jumps, so a branch
+ * that is not taken is never evaluated.<br />
+ * Each function table entry records the number of arguments it is called with, so a variadic function has an entry
+ * per distinct count. Functions of more than two arguments are passed a view of the operand stack rather than a copy.
+ */
+public final class CompiledExpression {
+
+    // Each instruction packs the opcode in the low bits and the operand index in the high bits
+    static final int OPCODE_BITS = 8;
+    static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+
+    /** Push constants[operand] onto the stack */
+    static final int OP_CONSTANT = 0;
+    /** Pop the argumentCounts[operand] arguments for functions[operand], apply it and push the result */
+    static final int OP_FUNCTION = 1;
+    /** Push variables[operand] onto the stack */
+    static final int OP_VARIABLE = 2;
+    /** Copy the top of the stack into temporary slot operand, leaving the stack unchanged */
+    static final int OP_STORE = 3;
+    /** Push the value of temporary slot operand onto the stack */
+    static final int OP_LOAD = 4;
+    /** Continue at instruction operand */
+    static final int OP_JUMP = 5;
+    /** Pop the top of the stack and continue at instruction operand if it is false (zero) */
+    static final int OP_JUMP_IF_FALSE = 6;
+    /** Pop the top of the stack and continue at instruction operand if it is true (non-zero, including NaN) */
+    static final int OP_JUMP_IF_TRUE = 7;
+
+    private static final double[] EMPTY = new double[0];
+
+    // Per-thread scratch stack used when the caller does not supply one; grown on demand
+    private static final ThreadLocal<Scratch> scratchStacks = ThreadLocal.withInitial(Scratch::new);
+
+    private final String expression;
+    private final int[] instructions;
+    private final double[] constants;
+    private final Function[] functions;
+    private final int[] argumentCounts;
+    private final String[] variables;
+    private final int maxStackDepth;
+    private final int temporaryCount;
+    private final BytecodeExpression bytecode;
+
+    CompiledExpression(String expression, int[] instructions, double[] constants, Function[] functions, int[] argumentCounts,
+            String[] variables, int maxStackDepth, int temporaryCount) {
+        this(expression, instructions, constants, functions, argumentCounts, variables, maxStackDepth, temporaryCount, null);
+    }
+
+    private CompiledExpression(String expression, int[] instructions, double[] constants, Function[] functions, int[] argumentCounts,
+            String[] variables, int maxStackDepth, int temporaryCount, BytecodeExpression bytecode) {
+        this.expression = expression;
+        this.instructions = instructions;
+        this.constants = constants;
+        this.functions = functions;
+        this.argumentCounts = argumentCounts;
+        this.variables = variables;
+        this.maxStackDepth = maxStackDepth;
+        this.temporaryCount = temporaryCount;
+        this.bytecode = bytecode;
+    }
+
+    static int instruction(int opcode, int operand) {
+        return (operand << OPCODE_BITS) | opcode;
+    }
+
+    static int opcode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }
+
+    static int operand(int instruction) {
+        return instruction >>> OPCODE_BITS;
+    }
+
+    /**
+     * Evaluates and returns the value of this expression, which must not reference any variables.
+     */
+    public double evaluate() {
+        return evaluate(EMPTY);
+    }
+
+    /**
+     * Evaluates and returns the value of this expression using the values held by the bindings.
+     */
+    public double evaluate(Bindings bindings) {
+        if (bindings.expression != this) {
+            throw new IllegalArgumentException("Bindings were not created by this expression: " + bindings.expression);
+        }
+        return execute(bindings.values, bindings.stack);
+    }
+
+    /**
+     * Evaluates and returns the value of this expression with each variable bound positionally:
+     * {@code variables[i]} is the value of the variable at slot {@code i} (see {@link #getVariableIndex(String)}).
+     * The evaluation stack is a per-thread scratch array, so steady-state evaluation does not allocate.
+     * An evaluation nested within another on the same thread, such as from a custom function or a listener,
+     * finds that array in use and allocates a stack of its own.
+     */
+    public double evaluate(double... variables) {
+        Scratch scratch = scratchStacks.get();
+        if (scratch.inUse) {
+            return evaluate(variables, new double[getFrameSize()]);
+        }
+        if (scratch.stack.length < getFrameSize()) {
+            scratch.stack = new double[getFrameSize()];
+        }
+
+        scratch.inUse = true;
+        try {
+            return evaluate(variables, scratch.stack);
+        }
+        finally {
+            scratch.inUse = false;
+        }
+    }
+
+    /**
+     * Evaluates and returns the value of this expression with each variable bound positionally,
+     * using the caller supplied array (of at least {@link #getFrameSize()} elements) as the operand stack and temporaries.
+     */
+    public double evaluate(double[] variables, double[] stack) {
+        if (variables.length < this.variables.length) {
+            throw new IllegalArgumentException("Expected " + this.variables.length + " variable value(s) " + Arrays.toString(this.variables)
+                    + " but received " + variables.length);
+        }
+        if (stack.length < getFrameSize()) {
+            throw new IllegalArgumentException("Evaluation stack requires " + getFrameSize() + " element(s) but received " + stack.length);
+        }
+        return execute(variables, stack);
+    }
+
+    private double execute(double[] variables, double[] stack) {
+        if (bytecode != null) {
+            return bytecode.eval(variables);
+        }
+        return interpret(variables, stack, 0, instructions.length, 0);
+    }
+
+    /**
+     * Interprets the instructions {@code [from, to)} above the {@code top} operands already on the stack and returns
+     * the value left on top. Every jump within the range must stay within it, up to {@code to} itself.
+     */
+    double interpret(double[] variables, double[] stack, int from, int to, int top) {
+        for (int pc = from; pc < to; pc++) {
+            int instruction = instructions[pc];
+            int operand = operand(instruction);
+            switch (opcode(instruction)) {
+                case OP_CONSTANT:
+                    stack[top++] = constants[operand];
+                    break;
+                case OP_FUNCTION:
+                    // Unary and binary functions operate in place on the top of the stack
+                    Function function = functions[operand];
+                    int numArgs = argumentCounts[operand];
+                    if (numArgs == 1) {
+                        stack[top - 1] = function.apply1(stack[top - 1]);
+                    }
+                    else if (numArgs == 2) {
+                        top--;
+                        stack[top - 1] = function.apply2(stack[top - 1], stack[top]);
+                    }
+                    else {
+                        top -= numArgs;
+                        stack[top] = function.apply(stack, top, numArgs);
+                        top++;
+                    }
+                    break;
+                case OP_VARIABLE:
+                    stack[top++] = variables[operand];
+                    break;
+                case OP_STORE:
+                    stack[maxStackDepth + operand] = stack[top - 1];
+                    break;
+                case OP_LOAD:
+                    stack[top++] = stack[maxStackDepth + operand];
+                    break;
+                case OP_JUMP:
+                    pc = operand - 1;
+                    break;
+                case OP_JUMP_IF_FALSE:
+                    if (stack[--top] == 0) {
+                        pc = operand - 1;
+                    }
+                    break;
+                case OP_JUMP_IF_TRUE:
+                    if (stack[--top] != 0) {
+                        pc = operand - 1;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode in compiled expression: " + opcode(instruction));
+            }
+        }
+
+        return stack[top - 1];
+    }
+
+    /**
+     * Returns an equivalent expression that is evaluated by a generated JVM class rather than by
+     * interpreting the instruction stream. The built-in operators and functions are inlined into the
+     * generated method so the JIT compiler can optimize each expression like hand-written Java.
+     * Returns this expression if it is already bytecode compiled, or if it is too large for a single method.
+     */
+    public CompiledExpression toBytecode() {
+        if (bytecode != null) {
+            return this;
+        }
+
+        BytecodeExpression generated = BytecodeCompiler.compile(instructions, constants, functions, argumentCounts, maxStackDepth,
+                temporaryCount);
+        if (generated == null) {
+            return this;
+        }
+        return new CompiledExpression(expression, instructions, constants, functions, argumentCounts, variables, maxStackDepth,
+                temporaryCount, generated);
+    }
+
+    /**
+     * Returns true if this expression is evaluated by a generated JVM class.
+     */
+    public boolean isBytecode() {
+        return bytecode != null;
+    }
+
+    /**
+     * Returns this expression in a form evaluated exactly in {@code long} arithmetic, or null if it is not
+     * integral: it has a non-integer constant or a function without integer semantics.
+     * @see LongExpression
+     */
+    public LongExpression toLongExpression() {
+        return LongExpression.of(this);
+    }
+
+    /**
+     * Creates a new column-at-a-time evaluator for this expression. Evaluators hold scratch buffers and are not thread-safe.
+     */
+    public BatchEvaluator newBatchEvaluator() {
+        return new BatchEvaluator(this);
+    }
+
+    /**
+     * Evaluates this expression once per row of the columns, writing {@code output[row]}.
+     * {@code columns[i]} holds the values of the variable at slot {@code i}; all columns must be at least as long as the output.
+     * @see BatchEvaluator
+     */
+    public void evaluate(double[][] columns, double[] output) {
+        newBatchEvaluator().evaluate(columns, output);
+    }
+
+    /**
+     * Creates a new evaluator which, with all variables initially zero, recomputes only the results affected by
+     * the variables changed between evaluations. Evaluators hold the variable values and are not thread-safe.
+     * @see IncrementalEvaluator
+     */
+    public IncrementalEvaluator newIncrementalEvaluator() {
+        return new IncrementalEvaluator(this);
+    }
+
+    /**
+     * Creates a new, zeroed set of bindings for this expression's variables. Bindings are
+     * mutable and intended to be reused across evaluations by a single thread.
+     */
+    public Bindings newBindings() {
+        return new Bindings(this);
+    }
+
+    /**
+     * Returns the number of distinct variables referenced by this expression.
+     */
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * Returns the variable names in slot order.
+     */
+    public String[] getVariableNames() {
+        return variables.clone();
+    }
+
+    /**
+     * Returns the slot index of the named variable or -1 if this expression does not reference it.
+     */
+    public int getVariableIndex(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the source text this expression was compiled from.
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the maximum number of operands held on the evaluation stack at any point.
+     */
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * Returns the number of temporary slots holding the values of common subexpressions.
+     */
+    public int getTemporaryCount() {
+        return temporaryCount;
+    }
+
+    /**
+     * Returns the number of elements of the scratch array required by {@link #evaluate(double[], double[])}:
+     * the operand stack followed by the temporaries.
+     */
+    public int getFrameSize() {
+        return maxStackDepth + temporaryCount;
+    }
+
+    int[] instructions() {
+        return instructions;
+    }
+
+    static boolean isJump(int opcode) {
+        return opcode == OP_JUMP || opcode == OP_JUMP_IF_FALSE || opcode == OP_JUMP_IF_TRUE;
+    }
+
+    double[] constants() {
+        return constants;
+    }
+
+    Function[] functions() {
+        return functions;
+    }
+
+    /**
+     * Returns the number of arguments each function table entry is called with.
+     */
+    int[] argumentCounts() {
+        return argumentCounts;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledExpression [expression=" + expression + "]";
+    }
+
+    /**
+     * A reusable, slot-indexed set of variable values for a single {@link CompiledExpression}, together
+     * with a preallocated operand stack. Setting a value by slot and evaluating performs no allocation. Not thread-safe.
+     */
+    public static final class Bindings {
+
+        private final CompiledExpression expression;
+        private final double[] values;
+        private final double[] stack;
+
+        private Bindings(CompiledExpression expression) {
+            this.expression = expression;
+            this.values = new double[expression.variables.length];
+            this.stack = new double[expression.getFrameSize()];
+        }
+
+        public Bindings set(int slot, double value) {
+            values[slot] = value;
+            return this;
+        }
+
+        public Bindings set(String name, double value) {
+            int slot = expression.getVariableIndex(name);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Unknown variable: " + name);
+            }
+            values[slot] = value;
+            return this;
+        }
+
+        public double get(int slot) {
+            return values[slot];
+        }
+
+        public double evaluate() {
+            return expression.evaluate(this);
+        }
+
+    }
+
+    /**
+     * The scratch stack of a thread, and whether an evaluation on that thread is using it.
+     */
+    private static final class Scratch {
+
+        double[] stack = new double[32];
+        boolean inUse;
+
+    }
+
+}
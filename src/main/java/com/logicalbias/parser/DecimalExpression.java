@@ -0,0 +1,546 @@
+package com.logicalbias.parser;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import com.logicalbias.parser.functions.Function;
+import com.logicalbias.parser.operators.FactorialOperator;
+
+/**
+ * An expression evaluated in arbitrary-precision decimal arithmetic, produced by
+ * {@link ExpressionParser#compileDecimal(String, MathContext)}.<br />
+ * The program is the same instruction stream as a {@link CompiledExpression} but holds {@link BigDecimal}
+ * constants taken directly from the literal text of the expression, so {@code 0.1} is exactly one tenth.
+ * Constant subexpressions are not folded, since folding happens in {@code double} arithmetic.<br />
+ * Every operation rounds its result to the expression's {@link MathContext}. The built-in operators and
+ * functions have decimal implementations: division is {@link BigDecimal#divide(BigDecimal, MathContext)} (so an
+ * unlimited context rejects non-terminating quotients with an {@link ArithmeticException}), integer powers use
+ * {@link BigDecimal#pow(int, MathContext)}, and {@code round}, {@code floor} and {@code ceil} keep the semantics
+ * of their {@code double} counterparts. A power with a non-integer exponent, the factorial of a negative or
+ * non-integer number, and any custom function are evaluated in {@code double} arithmetic and converted back. Comparisons compare numerically, so {@code 1.0 == 1.00}.
+ * As in a compiled expression, {@code &&}, {@code ||} and {@code if} are lowered to forward jumps, so an untaken
+ * branch is never evaluated and cannot raise an error, such as a division by zero.<br />
+ * Literal and named constants are converted, and {@code pi} and {@code e} rounded, once at compile time and
+ * pooled by value. Instances are immutable and thread-safe.
+ */
+public final class DecimalExpression {
+
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+    private static final BigDecimal MAX_STEPS = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private final String expression;
+    private final MathContext context;
+    private final int[] instructions;
+    private final BigDecimal[] constants;
+    private final Function[] functions;
+    private final int[] argumentCounts;
+    private final Intrinsic[] intrinsics;
+    private final String[] variables;
+    private final int maxStackDepth;
+    // The source offset of each instruction's token, and the cost budget of an evaluation (see ExpressionLimits)
+    private final int[] offsets;
+    private final long maxCost;
+
+    private DecimalExpression(String expression, MathContext context, int[] instructions, int[] offsets, BigDecimal[] constants,
+            Function[] functions, int[] argumentCounts, String[] variables, int maxStackDepth, long maxCost) {
+        this.expression = expression;
+        this.context = context;
+        this.instructions = instructions;
+        this.offsets = offsets;
+        this.maxCost = maxCost;
+        this.constants = constants;
+        this.functions = functions;
+        this.argumentCounts = argumentCounts;
+        this.variables = variables;
+        this.maxStackDepth = maxStackDepth;
+
+        this.intrinsics = new Intrinsic[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            intrinsics[i] = Intrinsic.of(functions[i]);
+        }
+    }
+
+    /**
+     * Resolves a valid list of tokens in reverse polish notation order into a decimal program,
+     * whose evaluations are limited to the specified cost.<br />
+     * Every operand on the RPN stack is a contiguous run of instructions. The arguments of a lazy function are
+     * re-emitted in place with the jumps of {@link ProgramBuilder} between them, moving their own jump targets along.
+     */
+    static DecimalExpression compile(String expression, List<Token> rpnTokens, MathContext context, long maxCost) {
+        List<Integer> instructions = new ArrayList<>(rpnTokens.size());
+        List<Integer> offsets = new ArrayList<>(rpnTokens.size());
+        List<BigDecimal> constants = new ArrayList<>();
+        List<Function> functions = new ArrayList<>();
+        List<Integer> argumentCounts = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        Deque<Operand> operands = new ArrayDeque<>();
+
+        for (Token token : rpnTokens) {
+            int start = instructions.size();
+            switch (token.getType()) {
+                case NUMBER:
+                    instructions.add(CompiledExpression.instruction(CompiledExpression.OP_CONSTANT,
+                            indexOf(constants, new BigDecimal(token.getText()))));
+                    operands.push(new Operand(start, 1));
+                    break;
+
+                case CONSTANT:
+                    // Named constants are only known as doubles; use their shortest decimal representation
+                    instructions.add(CompiledExpression.instruction(CompiledExpression.OP_CONSTANT,
+                            indexOf(constants, BigDecimal.valueOf(token.getValue()).round(context))));
+                    operands.push(new Operand(start, 1));
+                    break;
+
+                case VARIABLE:
+                    instructions.add(CompiledExpression.instruction(CompiledExpression.OP_VARIABLE, indexOf(variables, token.getText())));
+                    operands.push(new Operand(start, 1));
+                    break;
+
+                case FUNCTION:
+                case OPERATOR:
+                case PREFIX_OPERATOR:
+                    Function function = token.getFunction();
+                    int numArgs = token.getArgumentCount();
+                    ExpressionParser.checkArguments(token);
+                    if (operands.size() < numArgs) {
+                        throw new RuntimeException("Invalid expression... Missing argument(s) for " + token + " at offset " + token.getOffset());
+                    }
+                    Operand[] args = new Operand[numArgs];
+                    for (int i = numArgs - 1; i >= 0; i--) {
+                        args[i] = operands.pop();
+                    }
+
+                    Intrinsic intrinsic = Intrinsic.of(function);
+                    if (intrinsic.isLazy()) {
+                        operands.push(emitLazy(intrinsic, args, token.getOffset(), instructions, offsets, constants));
+                        continue;
+                    }
+
+                    // The i-th argument is evaluated above the i before it, and the result replaces them all
+                    int maxDepth = 1;
+                    for (int i = 0; i < numArgs; i++) {
+                        maxDepth = Math.max(maxDepth, i + args[i].maxDepth);
+                    }
+                    instructions.add(CompiledExpression.instruction(CompiledExpression.OP_FUNCTION,
+                            indexOfCall(functions, argumentCounts, function, numArgs)));
+                    operands.push(new Operand(numArgs > 0 ? args[0].start : start, maxDepth));
+                    break;
+
+                default:
+                    throw new RuntimeException("Invalid token detected in expression... " + token + " at offset " + token.getOffset());
+            }
+            offsets.add(token.getOffset());
+        }
+
+        if (operands.size() > 1) {
+            throw new RuntimeException("Invalid expression... Multiple values remained after evaluation: " + rpnTokens);
+        }
+        if (operands.isEmpty()) {
+            throw new RuntimeException("Invalid expression... No value to evaluate: " + rpnTokens);
+        }
+
+        return new DecimalExpression(expression, context, toArray(instructions), toArray(offsets), constants.toArray(new BigDecimal[constants.size()]),
+                functions.toArray(new Function[functions.size()]), toArray(argumentCounts), variables.toArray(new String[variables.size()]),
+                operands.peek().maxDepth, maxCost);
+    }
+
+    /**
+     * Replaces the already emitted arguments of a lazy function with its control flow, the same as {@link ProgramBuilder}:
+     * <ul>
+     * <li>{@code if}: condition; JUMP_IF_FALSE else; a; JUMP end; else: b; end:</li>
+     * <li>{@code &&}: a; JUMP_IF_FALSE false; b; JUMP_IF_FALSE false; 1; JUMP end; false: 0; end:</li>
+     * <li>{@code ||}: a; JUMP_IF_TRUE true; b; JUMP_IF_TRUE true; 0; JUMP end; true: 1; end:</li>
+     * </ul>
+     * The added instructions take the offset of the function's token. Returns the operand of the function's value.
+     */
+    private static Operand emitLazy(Intrinsic intrinsic, Operand[] args, int offset, List<Integer> instructions, List<Integer> offsets,
+            List<BigDecimal> constants) {
+        int start = args[0].start;
+        int[] code = toArray(instructions.subList(start, instructions.size()));
+        int[] codeOffsets = toArray(offsets.subList(start, offsets.size()));
+        instructions.subList(start, instructions.size()).clear();
+        offsets.subList(start, offsets.size()).clear();
+
+        // Every argument is evaluated on its own above the same base, and only its value is kept
+        int maxDepth = 1;
+        for (Operand arg : args) {
+            maxDepth = Math.max(maxDepth, arg.maxDepth);
+        }
+
+        if (intrinsic == Intrinsic.IF) {
+            copyArgument(args, 0, code, codeOffsets, instructions, offsets);
+            int elseJump = addJump(CompiledExpression.OP_JUMP_IF_FALSE, offset, instructions, offsets);
+            copyArgument(args, 1, code, codeOffsets, instructions, offsets);
+            int endJump = addJump(CompiledExpression.OP_JUMP, offset, instructions, offsets);
+            patch(elseJump, instructions);
+            copyArgument(args, 2, code, codeOffsets, instructions, offsets);
+            patch(endJump, instructions);
+            return new Operand(start, maxDepth);
+        }
+
+        boolean and = intrinsic == Intrinsic.AND;
+        int jumpOpcode = and ? CompiledExpression.OP_JUMP_IF_FALSE : CompiledExpression.OP_JUMP_IF_TRUE;
+        copyArgument(args, 0, code, codeOffsets, instructions, offsets);
+        int first = addJump(jumpOpcode, offset, instructions, offsets);
+        copyArgument(args, 1, code, codeOffsets, instructions, offsets);
+        int second = addJump(jumpOpcode, offset, instructions, offsets);
+        instructions.add(CompiledExpression.instruction(CompiledExpression.OP_CONSTANT, indexOf(constants, truth(and))));
+        offsets.add(offset);
+        int endJump = addJump(CompiledExpression.OP_JUMP, offset, instructions, offsets);
+        patch(first, instructions);
+        patch(second, instructions);
+        instructions.add(CompiledExpression.instruction(CompiledExpression.OP_CONSTANT, indexOf(constants, truth(!and))));
+        offsets.add(offset);
+        patch(endJump, instructions);
+        return new Operand(start, maxDepth);
+    }
+
+    /**
+     * Appends the instructions of the argument at the index, taken from the code of all the arguments starting at
+     * {@code args[0].start}, and moves its jump targets by as much as the argument moved.
+     */
+    private static void copyArgument(Operand[] args, int index, int[] code, int[] codeOffsets, List<Integer> instructions, List<Integer> offsets) {
+        int from = args[index].start - args[0].start;
+        int to = index + 1 < args.length ? args[index + 1].start - args[0].start : code.length;
+        int shift = instructions.size() - args[index].start;
+        for (int i = from; i < to; i++) {
+            int instruction = code[i];
+            int opcode = CompiledExpression.opcode(instruction);
+            if (CompiledExpression.isJump(opcode)) {
+                instruction = CompiledExpression.instruction(opcode, CompiledExpression.operand(instruction) + shift);
+            }
+            instructions.add(instruction);
+            offsets.add(codeOffsets[i]);
+        }
+    }
+
+    /**
+     * Appends a jump to be patched later and returns its index.
+     */
+    private static int addJump(int opcode, int offset, List<Integer> instructions, List<Integer> offsets) {
+        instructions.add(CompiledExpression.instruction(opcode, 0));
+        offsets.add(offset);
+        return instructions.size() - 1;
+    }
+
+    /**
+     * Points the jump instruction at the index to the next instruction to be emitted.
+     */
+    private static void patch(int jump, List<Integer> instructions) {
+        instructions.set(jump, CompiledExpression.instruction(CompiledExpression.opcode(instructions.get(jump)), instructions.size()));
+    }
+
+    /**
+     * Returns the index of the value within the pool, appending it first if not already present.
+     * Decimals are pooled by {@link BigDecimal#equals(Object)}, so {@code 1.0} and {@code 1.00} keep their own scale.
+     */
+    private static <T> int indexOf(List<T> pool, T value) {
+        int index = pool.indexOf(value);
+        if (index < 0) {
+            index = pool.size();
+            pool.add(value);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the function table entry calling the exact function instance with the number of arguments,
+     * appending it first if not already present.
+     */
+    private static int indexOfCall(List<Function> functions, List<Integer> argumentCounts, Function function, int argumentCount) {
+        for (int i = 0; i < functions.size(); i++) {
+            if (functions.get(i) == function && argumentCounts.get(i) == argumentCount) {
+                return i;
+            }
+        }
+        functions.add(function);
+        argumentCounts.add(argumentCount);
+        return functions.size() - 1;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Returns an equivalent expression rounding to the specified context.
+     */
+    public DecimalExpression withMathContext(MathContext context) {
+        return new DecimalExpression(expression, context, instructions, offsets, constants, functions, argumentCounts, variables, maxStackDepth,
+                maxCost);
+    }
+
+    /**
+     * Evaluates and returns the value of this expression with each variable bound positionally:
+     * {@code variables[i]} is the value of the variable at slot {@code i} (see {@link #getVariableIndex(String)}).
+     * @throws ArithmeticException if a result cannot be represented, such as a division by zero
+     * @throws ExpressionLimitException if the evaluation would exceed the cost limit of the parser which compiled it
+     */
+    public BigDecimal evaluate(BigDecimal... variables) {
+        if (variables.length < this.variables.length) {
+            throw new IllegalArgumentException("Expected " + this.variables.length + " variable value(s) " + Arrays.toString(this.variables)
+                    + " but received " + variables.length);
+        }
+
+        BigDecimal[] stack = new BigDecimal[maxStackDepth];
+        int top = 0;
+        // Each instruction costs one step and runs at most once, since every jump is forward;
+        // the budget is checked before any built-in whose cost grows with its operands
+        long cost = instructions.length;
+        if (cost > maxCost) {
+            throw costExceeded(ExpressionLimitException.NO_OFFSET);
+        }
+
+        for (int pc = 0; pc < instructions.length; pc++) {
+            int instruction = instructions[pc];
+            int operand = CompiledExpression.operand(instruction);
+            switch (CompiledExpression.opcode(instruction)) {
+                case CompiledExpression.OP_CONSTANT:
+                    stack[top++] = constants[operand];
+                    break;
+                case CompiledExpression.OP_VARIABLE:
+                    stack[top++] = variables[operand];
+                    break;
+                case CompiledExpression.OP_FUNCTION:
+                    Function function = functions[operand];
+                    int numArgs = argumentCounts[operand];
+                    top -= numArgs;
+                    // Compared before adding, since a cost may be as large as Long.MAX_VALUE
+                    long steps = cost(intrinsics[operand], stack, top);
+                    if (steps > maxCost - cost) {
+                        throw costExceeded(offsets[pc]);
+                    }
+                    cost += steps;
+                    stack[top] = apply(intrinsics[operand], function, stack, top, numArgs);
+                    top++;
+                    break;
+                case CompiledExpression.OP_JUMP:
+                    pc = operand - 1;
+                    break;
+                case CompiledExpression.OP_JUMP_IF_FALSE:
+                    if (stack[--top].signum() == 0) {
+                        pc = operand - 1;
+                    }
+                    break;
+                case CompiledExpression.OP_JUMP_IF_TRUE:
+                    if (stack[--top].signum() != 0) {
+                        pc = operand - 1;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode in decimal expression: " + CompiledExpression.opcode(instruction));
+            }
+        }
+
+        return stack[0];
+    }
+
+    /**
+     * Returns the steps, beyond the one its instruction costs, of applying a built-in to the arguments starting at
+     * {@code stack[base]}: {@code n!} multiplies {@code n} times, and an integer power squares once per bit of its exponent,
+     * unless the context is unlimited and its result grows with the exponent.
+     */
+    private long cost(Intrinsic intrinsic, BigDecimal[] stack, int base) {
+        switch (intrinsic) {
+            case FACTORIAL:
+                return steps(stack[base]);
+            case POWER:
+                long exponent = steps(stack[base + 1].abs());
+                return context.getPrecision() == 0 ? exponent : 64 - Long.numberOfLeadingZeros(exponent);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the integer part of a non-negative value, saturating at Long.MAX_VALUE; anything else costs nothing.
+     */
+    private static long steps(BigDecimal value) {
+        if (value.signum() <= 0) {
+            return 0;
+        }
+        return value.compareTo(MAX_STEPS) >= 0 ? Long.MAX_VALUE : value.longValue();
+    }
+
+    private ExpressionLimitException costExceeded(int offset) {
+        return new ExpressionLimitException(ExpressionLimitException.Limit.COST, maxCost, offset,
+                "Evaluation cost exceeds the maximum of " + maxCost + " step(s)");
+    }
+
+    private BigDecimal apply(Intrinsic intrinsic, Function function, BigDecimal[] stack, int base, int numArgs) {
+        BigDecimal a = stack[base];
+        BigDecimal b = numArgs > 1 ? stack[base + 1] : null;
+        switch (intrinsic) {
+            case ADD:
+                return a.add(b, context);
+            case SUBTRACT:
+                return a.subtract(b, context);
+            case MULTIPLY:
+                return a.multiply(b, context);
+            case DIVIDE:
+                return a.divide(b, context);
+            case MODULUS:
+                return a.remainder(b, context);
+            case NEGATE:
+                return a.negate(context);
+            case POWER:
+                return power(a, b);
+            case FACTORIAL:
+                return factorial(a);
+            case MIN:
+                for (int i = 1; i < numArgs; i++) {
+                    a = a.min(stack[base + i]);
+                }
+                return a;
+            case MAX:
+                for (int i = 1; i < numArgs; i++) {
+                    a = a.max(stack[base + i]);
+                }
+                return a;
+            case SUM:
+            case AVERAGE:
+                for (int i = 1; i < numArgs; i++) {
+                    a = a.add(stack[base + i], context);
+                }
+                return intrinsic == Intrinsic.SUM ? a : a.divide(BigDecimal.valueOf(numArgs), context);
+            case ABS:
+                return a.abs(context);
+            case FLOOR:
+                return integral(a, RoundingMode.FLOOR);
+            case CEIL:
+                return integral(a, RoundingMode.CEILING);
+            case ROUND:
+                // Math.round rounds half up towards positive infinity, unlike RoundingMode.HALF_UP
+                return integral(a.add(HALF), RoundingMode.FLOOR);
+            case LESS:
+                return truth(a.compareTo(b) < 0);
+            case LESS_EQUAL:
+                return truth(a.compareTo(b) <= 0);
+            case GREATER:
+                return truth(a.compareTo(b) > 0);
+            case GREATER_EQUAL:
+                return truth(a.compareTo(b) >= 0);
+            case EQUAL:
+                return truth(a.compareTo(b) == 0);
+            case NOT_EQUAL:
+                return truth(a.compareTo(b) != 0);
+            default:
+                double[] args = new double[numArgs];
+                for (int i = 0; i < numArgs; i++) {
+                    args[i] = stack[base + i].doubleValue();
+                }
+                return toDecimal(function.apply(args));
+        }
+    }
+
+    private static BigDecimal truth(boolean value) {
+        return value ? BigDecimal.ONE : BigDecimal.ZERO;
+    }
+
+    private BigDecimal power(BigDecimal base, BigDecimal exponent) {
+        if (exponent.signum() == 0 || exponent.stripTrailingZeros().scale() <= 0) {
+            try {
+                // Accepts exponents up to 999999999 in magnitude; negative powers need a limited precision
+                return base.pow(exponent.intValueExact(), context);
+            }
+            catch (ArithmeticException e) {
+                // Exponent out of range, or a negative power with an unlimited context; fall through
+            }
+        }
+        return toDecimal(Math.pow(base.doubleValue(), exponent.doubleValue()));
+    }
+
+    /**
+     * The product 1 * 2 * ... * n of a non-negative integer; otherwise the gamma function of
+     * {@link com.logicalbias.parser.operators.FactorialOperator}, evaluated in {@code double} arithmetic.
+     */
+    private BigDecimal factorial(BigDecimal n) {
+        if (n.signum() < 0 || n.stripTrailingZeros().scale() > 0) {
+            return toDecimal(FactorialOperator.factorial(n.doubleValue()));
+        }
+        BigDecimal value = BigDecimal.ONE;
+        for (BigDecimal i = BigDecimal.valueOf(2); i.compareTo(n) <= 0; i = i.add(BigDecimal.ONE)) {
+            value = value.multiply(i, context);
+        }
+        return value;
+    }
+
+    private BigDecimal integral(BigDecimal value, RoundingMode mode) {
+        return value.scale() <= 0 ? value : value.setScale(0, mode).round(context);
+    }
+
+    private BigDecimal toDecimal(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new ArithmeticException("Result is not a finite decimal: " + value);
+        }
+        return BigDecimal.valueOf(value).round(context);
+    }
+
+    public MathContext getMathContext() {
+        return context;
+    }
+
+    /**
+     * Returns the number of distinct variables referenced by this expression.
+     */
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * Returns the variable names in slot order.
+     */
+    public String[] getVariableNames() {
+        return variables.clone();
+    }
+
+    /**
+     * Returns the slot index of the named variable or -1 if this expression does not reference it.
+     */
+    public int getVariableIndex(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the source text this expression was compiled from.
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return "DecimalExpression [expression=" + expression + ", context=" + context + "]";
+    }
+
+    /**
+     * A value on the RPN stack while compiling: the index of its first instruction and the stack depth its evaluation reaches.
+     */
+    private static final class Operand {
+
+        final int start;
+        final int maxDepth;
+
+        Operand(int start, int maxDepth) {
+            this.start = start;
+            this.maxDepth = maxDepth;
+        }
+
+    }
+
+}
@@ -0,0 +1,371 @@
+package com.logicalbias.parser;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bounded, thread-safe cache of {@link CompiledExpression}s keyed by expression text.<br />
+ * Keys are normalized the same way the {@link Tokenizer} reads an expression: they are lower-cased and
+ * whitespace is dropped wherever it cannot change how the expression tokenizes, so {@code "Max(a, B)"}
+ * and {@code "max(a,b)"} share an entry.<br />
+ * Entries are spread over independently locked segments, each holding its share of the maximum weight
+ * in access order, so concurrent lookups rarely contend. When a segment is full its least recently used
+ * entry is evicted ({@link Policy#LRU}), or, with {@link Policy#TINY_LFU}, a new expression is only admitted
+ * if a shared frequency sketch estimates it to be more popular than that eviction victim.<br />
+ * A cached expression keeps the settings of the parser it was compiled with: its limits, bytecode backend and
+ * optimization. The key is only the expression text, so the parser's settings must not change while the cache is
+ * in use; otherwise expressions compiled earlier are still served under the old settings. Use a cache per parser
+ * configuration, or {@link #invalidateAll()} after changing it.
+ */
+public final class ExpressionCache {
+
+    public enum Policy {
+        /** Always admit new expressions, evicting the least recently used */
+        LRU,
+        /** Admit a new expression only if it is used more often than the least recently used entry it would replace */
+        TINY_LFU;
+    }
+
+    private final ExpressionParser parser;
+    private final Policy policy;
+    private final ToIntFunction<CompiledExpression> weigher;
+    private final Segment[] segments;
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    private ExpressionCache(Builder builder) {
+        this.parser = builder.parser;
+        this.policy = builder.policy;
+        this.weigher = builder.weigher;
+
+        int segmentCount = Integer.highestOneBit(Math.max(1, (int) Math.min(builder.concurrencyLevel, builder.maximumWeight)));
+        this.segments = new Segment[segmentCount];
+        long segmentWeight = builder.maximumWeight / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            // Spread the remainder of the division over the first segments
+            segments[i] = new Segment(segmentWeight + (i < builder.maximumWeight % segmentCount ? 1 : 0));
+        }
+        this.sketch = policy == Policy.TINY_LFU ? new FrequencySketch(builder.maximumWeight) : null;
+    }
+
+    /**
+     * Returns a builder of a cache compiling with the parser, whose settings must stay fixed while the cache is in use.
+     */
+    public static Builder builder(ExpressionParser parser) {
+        return new Builder(parser);
+    }
+
+    /**
+     * Returns the compiled form of the expression, compiling and caching it first if necessary.
+     * @throws IllegalArgumentException if the weigher returns a weight of zero or less for it
+     */
+    public CompiledExpression compile(String expression) {
+        String key = normalize(expression);
+        int hash = spread(key.hashCode());
+        Segment segment = segments[hash & (segments.length - 1)];
+        if (sketch != null) {
+            sketch.increment(hash);
+        }
+
+        CompiledExpression compiled = segment.get(key);
+        if (compiled != null) {
+            hits.increment();
+            parser.getListener().onCacheHit(expression);
+            return compiled;
+        }
+
+        misses.increment();
+        parser.getListener().onCacheMiss(expression);
+
+        // Compile outside of the segment lock; a concurrent miss on the same key may compile it twice
+        compiled = parser.compile(expression);
+        int weight = weigher.applyAsInt(compiled);
+        if (weight < 1) {
+            // A weight of zero or less would let the segment grow without bound
+            throw new IllegalArgumentException("Weigher returned a non-positive weight " + weight + " for " + expression);
+        }
+        return segment.put(key, hash, compiled, weight);
+    }
+
+    /**
+     * Evaluates the expression, which must not reference any variables, through its cached compiled form.
+     */
+    public double evaluate(String expression) {
+        return compile(expression).evaluate();
+    }
+
+    /**
+     * Normalizes an expression into its cache key: lower-cased, with whitespace removed except where it
+     * separates two word characters (e.g. {@code "a b"}) or two symbols (e.g. {@code "* *"}), since
+     * joining those would change the tokens.
+     */
+    static String normalize(String expression) {
+        StringBuilder key = new StringBuilder(expression.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = key.length() > 0;
+                continue;
+            }
+            if (pendingSpace && characterClass(key.charAt(key.length() - 1)) == characterClass(c) && characterClass(c) != 0) {
+                key.append(' ');
+            }
+            pendingSpace = false;
+            key.append(Character.toLowerCase(c));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 1 for characters which may continue a number or identifier, 2 for operator symbols, 0 for grouping characters.
+     */
+    private static int characterClass(char c) {
+        if (Tokenizer.isIdentifierPart(c) || c == '.') {
+            return 1;
+        }
+        if (c == '(' || c == ')' || c == ',') {
+            return 0;
+        }
+        return 2;
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x45D9F3B;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries removed to make room for others.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of compiled expressions not admitted by the {@link Policy#TINY_LFU} policy, or because they outweigh a segment.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long requestCount = hitCount + getMissCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.getWeight();
+        }
+        return weight;
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache [policy=" + policy + ", size=" + size() + ", weight=" + getWeight() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ", rejections=" + getRejectionCount() + "]";
+    }
+
+    private static final class Entry {
+
+        final CompiledExpression compiled;
+        final int hash;
+        final int weight;
+
+        Entry(CompiledExpression compiled, int hash, int weight) {
+            this.compiled = compiled;
+            this.hash = hash;
+            this.weight = weight;
+        }
+
+    }
+
+    /**
+     * One lock-protected share of the cache, keeping its entries in access order.
+     */
+    private final class Segment extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maximumWeight;
+        private long weight;
+
+        Segment(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+
+        CompiledExpression get(String key) {
+            lock();
+            try {
+                Entry entry = entries.get(key);
+                return entry == null ? null : entry.compiled;
+            }
+            finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Inserts the compiled expression unless another thread already has, evicting as required.
+         * Returns the cached expression for the key, or the candidate itself if it was not admitted.
+         */
+        CompiledExpression put(String key, int hash, CompiledExpression compiled, int entryWeight) {
+            lock();
+            try {
+                Entry existing = entries.get(key);
+                if (existing != null) {
+                    return existing.compiled;
+                }
+                if (entryWeight > maximumWeight) {
+                    rejections.increment();
+                    return compiled;
+                }
+
+                if (sketch != null && weight + entryWeight > maximumWeight) {
+                    // Admission is decided against the first victim before anything is evicted, so a rejected
+                    // candidate never costs the segment entries
+                    Entry victim = entries.values().iterator().next();
+                    if (sketch.frequency(hash) <= sketch.frequency(victim.hash)) {
+                        rejections.increment();
+                        return compiled;
+                    }
+                }
+
+                Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                while (weight + entryWeight > maximumWeight) {
+                    Entry victim = eldest.next().getValue();
+                    eldest.remove();
+                    weight -= victim.weight;
+                    evictions.increment();
+                }
+
+                entries.put(key, new Entry(compiled, hash, entryWeight));
+                weight += entryWeight;
+                return compiled;
+            }
+            finally {
+                unlock();
+            }
+        }
+
+        int size() {
+            lock();
+            try {
+                return entries.size();
+            }
+            finally {
+                unlock();
+            }
+        }
+
+        long getWeight() {
+            lock();
+            try {
+                return weight;
+            }
+            finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                entries.clear();
+                weight = 0;
+            }
+            finally {
+                unlock();
+            }
+        }
+
+    }
+
+    public static final class Builder {
+
+        private final ExpressionParser parser;
+        private long maximumWeight = 1024;
+        private int concurrencyLevel = 16;
+        private Policy policy = Policy.LRU;
+        private ToIntFunction<CompiledExpression> weigher = compiled -> 1;
+
+        private Builder(ExpressionParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Sets the maximum total weight of cached expressions; with the default weigher this is the maximum number of entries.
+         */
+        public Builder maximumWeight(long maximumWeight) {
+            if (maximumWeight < 1) {
+                throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * Sets the number of independently locked segments (rounded down to a power of two).
+         */
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            if (concurrencyLevel < 1) {
+                throw new IllegalArgumentException("Concurrency level must be positive: " + concurrencyLevel);
+            }
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public Builder policy(Policy policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the function computing the weight of each compiled expression, e.g. its instruction count.
+         * Every weight must be positive; compiling an expression of any other weight fails.
+         */
+        public Builder weigher(ToIntFunction<CompiledExpression> weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        public ExpressionCache build() {
+            return new ExpressionCache(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,422 @@
+package com.logicalbias.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.logicalbias.parser.functions.Function;
+import com.logicalbias.parser.operators.Operator;
+
+/**
+ * Encodes {@link CompiledExpression}s into a compact, versioned binary form and decodes them back without
+ * tokenizing or parsing, so precompiled bundles of formulas can be shipped and loaded at startup.<br />
+ * An encoded expression is, in big-endian order:
+ * <pre>
+ * int    magic ('E' 'X' 'P' 'R')
+ * short  format version
+ * string source expression
+ * int    max stack depth, int temporary count
+ * int    instruction count, int[] instructions
+ * int    constant count, double[] constants
+ * int    function count, { byte kind, unsigned byte argument count, string name }[] functions
+ * int    variable count, string[] variable names
+ * </pre>
+ * where a string is an int byte length followed by UTF-8 bytes. Functions are stored by the name they are
+ * registered under in a {@link FunctionRegistry} (as a function, operator or prefix operator) and resolved
+ * against a registry again when decoded, so custom functions only need to be registered on both sides. Each entry
+ * records the number of arguments it is called with, which for a variadic function may be anything up to 255.<br />
+ * Encoded expressions are self-delimiting: a bundle is simply several of them concatenated. Decoded programs
+ * are verified before use, so a corrupt or hostile buffer is rejected rather than failing during evaluation.
+ */
+public final class ExpressionCodec {
+
+    /** The format version written by this class; older versions are still read */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x45585052;
+
+    private static final byte KIND_FUNCTION = 0;
+    private static final byte KIND_OPERATOR = 1;
+    private static final byte KIND_PREFIX_OPERATOR = 2;
+    private static final int MAX_ARGUMENTS = 0xFF;
+
+    private static final Token.Type[] KINDS = { Token.Type.FUNCTION, Token.Type.OPERATOR, Token.Type.PREFIX_OPERATOR };
+
+    private ExpressionCodec() {
+    }
+
+    /**
+     * Encodes the expression, resolving each of its functions to the name it is registered under in the registry.
+     * @throws IllegalArgumentException if the expression uses a function the registry does not contain
+     */
+    public static byte[] encode(CompiledExpression expression, FunctionRegistry registry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(expression, registry, new DataOutputStream(bytes));
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes the expressions one after another into a single bundle.
+     */
+    public static byte[] encode(List<CompiledExpression> expressions, FunctionRegistry registry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (CompiledExpression expression : expressions) {
+                write(expression, registry, out);
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(CompiledExpression expression, FunctionRegistry registry, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        writeString(out, expression.getExpression());
+        out.writeInt(expression.getMaxStackDepth());
+        out.writeInt(expression.getTemporaryCount());
+
+        int[] instructions = expression.instructions();
+        out.writeInt(instructions.length);
+        for (int instruction : instructions) {
+            out.writeInt(instruction);
+        }
+
+        double[] constants = expression.constants();
+        out.writeInt(constants.length);
+        for (double constant : constants) {
+            out.writeLong(Double.doubleToRawLongBits(constant));
+        }
+
+        Function[] functions = expression.functions();
+        int[] argumentCounts = expression.argumentCounts();
+        out.writeInt(functions.length);
+        for (int i = 0; i < functions.length; i++) {
+            writeFunction(out, functions[i], argumentCounts[i], registry);
+        }
+
+        String[] variables = expression.getVariableNames();
+        out.writeInt(variables.length);
+        for (String variable : variables) {
+            writeString(out, variable);
+        }
+    }
+
+    private static void writeFunction(DataOutputStream out, Function function, int argumentCount, FunctionRegistry registry)
+            throws IOException {
+        if (argumentCount > MAX_ARGUMENTS) {
+            throw new IllegalArgumentException("Function " + function.getToken() + " is called with " + argumentCount
+                    + " arguments but at most " + MAX_ARGUMENTS + " can be encoded");
+        }
+        for (byte kind = 0; kind < KINDS.length; kind++) {
+            String name = registry.nameOf(function, KINDS[kind]);
+            if (name != null) {
+                out.writeByte(kind);
+                out.writeByte(argumentCount);
+                writeString(out, name);
+                return;
+            }
+        }
+
+        // The optimizer introduces its own instances of built-in operators (e.g. x^2 becomes x*x)
+        Operator operator = registry.getOperator(function.getToken());
+        Intrinsic intrinsic = Intrinsic.of(function);
+        if (intrinsic != Intrinsic.NONE && operator != null && Intrinsic.of(operator) == intrinsic) {
+            out.writeByte(KIND_OPERATOR);
+            out.writeByte(argumentCount);
+            writeString(out, function.getToken());
+            return;
+        }
+
+        throw new IllegalArgumentException("Function " + function.getToken() + " is not registered in " + registry);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Decodes the expression starting at the buffer's position, resolving its functions against the registry,
+     * and advances the position past it. The buffer's byte order is ignored.
+     * @throws IllegalArgumentException if the buffer does not hold a valid encoded expression, or a function cannot be resolved
+     */
+    public static CompiledExpression decode(ByteBuffer buffer, FunctionRegistry registry) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        CompiledExpression expression;
+        try {
+            expression = read(in, registry);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Invalid compiled expression... Truncated at byte offset " + in.position(), e);
+        }
+        buffer.position(in.position());
+        return expression;
+    }
+
+    /**
+     * Decodes every expression from the buffer's position to its limit.
+     */
+    public static List<CompiledExpression> decodeAll(ByteBuffer buffer, FunctionRegistry registry) {
+        List<CompiledExpression> expressions = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            expressions.add(decode(buffer, registry));
+        }
+        return expressions;
+    }
+
+    private static CompiledExpression read(ByteBuffer in, FunctionRegistry registry) {
+        int start = in.position();
+        if (in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Invalid compiled expression... Bad magic number at byte offset " + start);
+        }
+        int version = in.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported compiled expression format version " + version + " at byte offset " + start);
+        }
+
+        String expression = readString(in);
+        int maxStackDepth = in.getInt();
+        int temporaryCount = in.getInt();
+
+        int[] instructions = new int[readCount(in, Integer.BYTES)];
+        for (int i = 0; i < instructions.length; i++) {
+            instructions[i] = in.getInt();
+        }
+
+        double[] constants = new double[readCount(in, Long.BYTES)];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = Double.longBitsToDouble(in.getLong());
+        }
+
+        Function[] functions = new Function[readCount(in, 6)];
+        int[] argumentCounts = new int[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            int kind = in.get();
+            argumentCounts[i] = in.get() & MAX_ARGUMENTS;
+            functions[i] = readFunction(in, kind, argumentCounts[i], registry);
+        }
+
+        String[] variables = new String[readCount(in, Integer.BYTES)];
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = readString(in);
+        }
+
+        verify(expression, instructions, constants.length, argumentCounts, variables.length, maxStackDepth, temporaryCount);
+        return new CompiledExpression(expression, instructions, constants, functions, argumentCounts, variables, maxStackDepth,
+                temporaryCount);
+    }
+
+    private static Function readFunction(ByteBuffer in, int kind, int arity, FunctionRegistry registry) {
+        String name = readString(in);
+        if (kind < 0 || kind >= KINDS.length) {
+            throw new IllegalArgumentException("Invalid compiled expression... Unknown function kind " + kind + " for " + name);
+        }
+
+        Function function;
+        switch (kind) {
+            case KIND_FUNCTION:
+                function = registry.getFunction(name);
+                break;
+            case KIND_OPERATOR:
+                function = registry.getOperator(name);
+                break;
+            default:
+                function = registry.getPrefixOperator(name);
+                break;
+        }
+        if (function == null) {
+            throw new IllegalArgumentException("Compiled expression references " + KINDS[kind] + " " + name + " which is not registered in " + registry);
+        }
+        if (!function.acceptsArguments(arity)) {
+            throw new IllegalArgumentException("Compiled expression calls " + name + " with " + arity + " argument(s) but the registered "
+                    + KINDS[kind] + " takes " + (function.isVariadic() ? "one or more" : function.getNumberOfArguments()));
+        }
+        return function;
+    }
+
+    /**
+     * Reads an element count, rejecting counts larger than the remaining bytes could possibly hold.
+     */
+    private static int readCount(ByteBuffer in, int minElementSize) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / minElementSize) {
+            throw new IllegalArgumentException("Invalid compiled expression... Bad element count " + count + " at byte offset " + (in.position() - 4));
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readCount(in, 1)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks that every operand is in range, that temporaries are stored before they are loaded, and that the
+     * program leaves exactly one value on the stack.<br />
+     * Jumps must be forward and every path reaching an instruction must arrive with the same stack depth; a
+     * temporary counts as stored only if it is stored on all of them.<br />
+     * The declared stack depth and temporary count size the evaluation frames, so they must be exactly those of the
+     * program: the deepest stack any instruction leaves, and one temporary per slot stored, numbered from zero.
+     */
+    private static void verify(String expression, int[] instructions, int constantCount, int[] argumentCounts, int variableCount,
+            int maxStackDepth, int temporaryCount) {
+        // Every temporary is stored by an instruction of its own, which bounds the count before anything is sized by it
+        if (maxStackDepth < 0 || temporaryCount < 0 || temporaryCount > instructions.length) {
+            throw invalid(expression, 0, "bad header: stack depth " + maxStackDepth + ", temporary count " + temporaryCount);
+        }
+
+        // The state on entry to each instruction (and the end) reached by a jump, or -1 if none reaches it yet
+        int[] targetDepths = new int[instructions.length + 1];
+        BitSet[] targetStored = new BitSet[instructions.length + 1];
+        Arrays.fill(targetDepths, -1);
+
+        int temporaries = temporaryCount;
+        BitSet stored = new BitSet();
+        BitSet storedAnywhere = new BitSet();
+        int depth = 0;
+        int deepest = 0;
+        boolean reachable = true;
+
+        for (int i = 0; i < instructions.length; i++) {
+            if (targetDepths[i] >= 0) {
+                if (reachable) {
+                    merge(expression, i, targetDepths, targetStored, i, depth, stored);
+                }
+                depth = targetDepths[i];
+                stored = (BitSet) targetStored[i].clone();
+                reachable = true;
+            }
+            if (!reachable) {
+                throw invalid(expression, i, "unreachable instruction");
+            }
+
+            int operand = CompiledExpression.operand(instructions[i]);
+            int opcode = CompiledExpression.opcode(instructions[i]);
+            int limit;
+            switch (opcode) {
+                case CompiledExpression.OP_CONSTANT:
+                    limit = constantCount;
+                    depth++;
+                    break;
+                case CompiledExpression.OP_VARIABLE:
+                    limit = variableCount;
+                    depth++;
+                    break;
+                case CompiledExpression.OP_FUNCTION:
+                    limit = argumentCounts.length;
+                    if (operand < limit) {
+                        int numArgs = argumentCounts[operand];
+                        if (depth < numArgs) {
+                            throw invalid(expression, i, "stack underflow");
+                        }
+                        depth += 1 - numArgs;
+                    }
+                    break;
+                case CompiledExpression.OP_STORE:
+                    limit = temporaries;
+                    if (depth < 1) {
+                        throw invalid(expression, i, "stack underflow");
+                    }
+                    if (operand < limit) {
+                        stored.set(operand);
+                        storedAnywhere.set(operand);
+                    }
+                    break;
+                case CompiledExpression.OP_LOAD:
+                    limit = temporaries;
+                    if (operand < limit && !stored.get(operand)) {
+                        throw invalid(expression, i, "temporary " + operand + " loaded before it is stored");
+                    }
+                    depth++;
+                    break;
+                case CompiledExpression.OP_JUMP:
+                case CompiledExpression.OP_JUMP_IF_FALSE:
+                case CompiledExpression.OP_JUMP_IF_TRUE:
+                    limit = instructions.length + 1;
+                    if (operand <= i) {
+                        throw invalid(expression, i, "backward jump to " + operand);
+                    }
+                    if (opcode != CompiledExpression.OP_JUMP) {
+                        if (depth < 1) {
+                            throw invalid(expression, i, "stack underflow");
+                        }
+                        depth--;
+                    }
+                    if (operand < limit) {
+                        merge(expression, i, targetDepths, targetStored, operand, depth, stored);
+                    }
+                    reachable = opcode != CompiledExpression.OP_JUMP;
+                    break;
+                default:
+                    throw invalid(expression, i, "unknown opcode " + opcode);
+            }
+            if (operand >= limit) {
+                throw invalid(expression, i, "operand " + operand + " out of range");
+            }
+            if (depth > maxStackDepth) {
+                throw invalid(expression, i, "stack deeper than the declared " + maxStackDepth);
+            }
+            deepest = Math.max(deepest, depth);
+        }
+
+        int end = instructions.length;
+        if (targetDepths[end] >= 0) {
+            if (reachable) {
+                merge(expression, end, targetDepths, targetStored, end, depth, stored);
+            }
+            depth = targetDepths[end];
+        }
+        if (depth != 1) {
+            throw invalid(expression, end, depth + " value(s) remain on the stack");
+        }
+        if (deepest != maxStackDepth) {
+            throw invalid(expression, end, "declared stack depth " + maxStackDepth + " differs from the actual " + deepest);
+        }
+        if (storedAnywhere.cardinality() != temporaryCount) {
+            throw invalid(expression, end, "declared temporary count " + temporaryCount + " differs from the " + storedAnywhere.cardinality()
+                    + " temporaries stored");
+        }
+    }
+
+    /**
+     * Records the state with which the instruction at the index reaches the target.
+     */
+    private static void merge(String expression, int instruction, int[] targetDepths, BitSet[] targetStored, int target,
+            int depth, BitSet stored) {
+        if (targetDepths[target] < 0) {
+            targetDepths[target] = depth;
+            targetStored[target] = (BitSet) stored.clone();
+        }
+        else if (targetDepths[target] != depth) {
+            throw invalid(expression, instruction, "stack depth " + depth + " differs from " + targetDepths[target]
+                    + " on another path to instruction " + target);
+        }
+        else {
+            targetStored[target].and(stored);
+        }
+    }
+
+    private static IllegalArgumentException invalid(String expression, int instruction, String reason) {
+        return new IllegalArgumentException("Invalid compiled expression " + expression + "... " + reason + " at instruction " + instruction);
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.logicalbias.parser;
+
+/**
+ * Thrown when an expression exceeds one of the {@link ExpressionLimits} of its parser, identifying which limit was
+ * exceeded, its configured maximum and where in the expression text it was exceeded.
+ */
+public class ExpressionLimitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The offset of a limit exceeded by the expression as a whole rather than at a position within its text */
+    public static final int NO_OFFSET = -1;
+
+    public enum Limit {
+        LENGTH, TOKENS, NESTING_DEPTH, FUNCTION_CALLS, COST;
+    }
+
+    private final Limit limit;
+    private final long maximum;
+    private final int offset;
+
+    public ExpressionLimitException(Limit limit, long maximum, int offset, String message) {
+        super(message + (offset != NO_OFFSET ? " at offset " + offset : ""));
+        this.limit = limit;
+        this.maximum = maximum;
+        this.offset = offset;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the configured maximum which was exceeded.
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the offset within the expression text at which the limit was exceeded, such as that of the first character
+     * beyond the maximum length or of the first token beyond the maximum number, or {@link #NO_OFFSET} (-1) if there is no
+     * such position because the limit applies to the expression as a whole (as the compiled cost of an evaluation does).
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+}
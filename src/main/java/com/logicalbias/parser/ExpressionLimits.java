@@ -0,0 +1,157 @@
+package com.logicalbias.parser;
+
+/**
+ * The immutable complexity limits an {@link ExpressionParser} enforces on every expression it compiles, protecting
+ * the latency of a shared evaluation tier from pathological (or malicious) input. Every limit is unlimited unless set
+ * through a {@link Builder}, and an expression exceeding one is rejected with an {@link ExpressionLimitException}.
+ * <ul>
+ * <li>The <b>length</b> of the expression text, checked before it is tokenized.</li>
+ * <li>The number of <b>tokens</b>, including parentheses and separators.</li>
+ * <li>The <b>nesting depth</b> of the expression tree: a number, constant or variable has depth 1, and a function or
+ * operator one more than its deepest argument, so {@code (1 + 2) * 3} has depth 3. Parentheses themselves add no depth.</li>
+ * <li>The number of <b>function calls</b>, counting every function and operator in the expression text.</li>
+ * <li>The <b>cost</b> of one evaluation, in steps. Every instruction executed costs one step. A compiled expression
+ * executes each of its instructions at most once, since its jumps only go forward, and every built-in runs in
+ * constant time, so its cost is bounded by its program length and is checked once when it is compiled rather
+ * than on every evaluation. A {@link DecimalExpression} is charged as it evaluates, since some of its built-ins take
+ * time growing with their operands: {@code n!} costs a further {@code n} steps, and {@code x^n} the bit length of
+ * {@code n}, or {@code |n|} steps with an unlimited {@link java.math.MathContext} (whose results grow with {@code n}).
+ * The evaluation is stopped before such a built-in would exceed the budget. A custom function costs one step.</li>
+ * </ul>
+ */
+public final class ExpressionLimits {
+
+    /** No limits at all, which is the default of every parser */
+    public static final ExpressionLimits NONE = builder().build();
+
+    private final int maxLength;
+    private final int maxTokens;
+    private final int maxNestingDepth;
+    private final int maxFunctionCalls;
+    private final long maxCost;
+
+    private ExpressionLimits(Builder builder) {
+        this.maxLength = builder.maxLength;
+        this.maxTokens = builder.maxTokens;
+        this.maxNestingDepth = builder.maxNestingDepth;
+        this.maxFunctionCalls = builder.maxFunctionCalls;
+        this.maxCost = builder.maxCost;
+    }
+
+    /**
+     * Returns a builder with every limit unlimited.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a builder initialized with these limits.
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .maxLength(maxLength)
+                .maxTokens(maxTokens)
+                .maxNestingDepth(maxNestingDepth)
+                .maxFunctionCalls(maxFunctionCalls)
+                .maxCost(maxCost);
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public int getMaxNestingDepth() {
+        return maxNestingDepth;
+    }
+
+    public int getMaxFunctionCalls() {
+        return maxFunctionCalls;
+    }
+
+    public long getMaxCost() {
+        return maxCost;
+    }
+
+    /**
+     * Returns true if the nesting depth or number of function calls is limited, which takes a pass over the parsed expression.
+     */
+    boolean limitsComplexity() {
+        return maxNestingDepth != Integer.MAX_VALUE || maxFunctionCalls != Integer.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionLimits [maxLength=" + maxLength + ", maxTokens=" + maxTokens + ", maxNestingDepth=" + maxNestingDepth
+                + ", maxFunctionCalls=" + maxFunctionCalls + ", maxCost=" + maxCost + "]";
+    }
+
+    /**
+     * Collects the limits of a new {@link ExpressionLimits}. A limit that is never set is unlimited.
+     */
+    public static final class Builder {
+
+        private int maxLength = Integer.MAX_VALUE;
+        private int maxTokens = Integer.MAX_VALUE;
+        private int maxNestingDepth = Integer.MAX_VALUE;
+        private int maxFunctionCalls = Integer.MAX_VALUE;
+        private long maxCost = Long.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * Limits the number of characters of the expression text.
+         */
+        public Builder maxLength(int maxLength) {
+            this.maxLength = positive("length", maxLength);
+            return this;
+        }
+
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = positive("tokens", maxTokens);
+            return this;
+        }
+
+        public Builder maxNestingDepth(int maxNestingDepth) {
+            this.maxNestingDepth = positive("nesting depth", maxNestingDepth);
+            return this;
+        }
+
+        public Builder maxFunctionCalls(int maxFunctionCalls) {
+            if (maxFunctionCalls < 0) {
+                throw new IllegalArgumentException("Maximum function calls must not be negative: " + maxFunctionCalls);
+            }
+            this.maxFunctionCalls = maxFunctionCalls;
+            return this;
+        }
+
+        /**
+         * Limits the number of steps of a single evaluation.
+         */
+        public Builder maxCost(long maxCost) {
+            if (maxCost < 1) {
+                throw new IllegalArgumentException("Maximum cost must be positive: " + maxCost);
+            }
+            this.maxCost = maxCost;
+            return this;
+        }
+
+        public ExpressionLimits build() {
+            return new ExpressionLimits(this);
+        }
+
+        private static int positive(String limit, int maximum) {
+            if (maximum < 1) {
+                throw new IllegalArgumentException("Maximum " + limit + " must be positive: " + maximum);
+            }
+            return maximum;
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.logicalbias.parser;
+
+import java.util.List;
+
+/**
+ * Instrumentation hook notified by {@link ExpressionParser} as expressions are parsed, compiled and evaluated.
+ * Every method has an empty default so implementations only override the events they care about.<br />
+ * The parser skips all timing work while its listener is {@link #NONE}, so instrumentation costs nothing unless installed.
+ * Listeners may be invoked concurrently from multiple threads.
+ */
+public interface ExpressionListener {
+
+    /** The default listener, which ignores every event */
+    ExpressionListener NONE = new ExpressionListener() {
+    };
+
+    /**
+     * Called once an expression has been tokenized and converted into RPN order.
+     */
+    default void onParse(String expression, List<Token> rpnTokens, int tokenCount, long parseNanos) {
+    }
+
+    /**
+     * Called once the expression tree has been simplified, with its node count before and after simplification.
+     */
+    default void onOptimize(String expression, int nodesBefore, int nodesAfter) {
+    }
+
+    /**
+     * Called once the RPN tokens of an expression have been compiled (including bytecode generation, if enabled).
+     */
+    default void onCompile(CompiledExpression compiled, long compileNanos) {
+    }
+
+    /**
+     * Called after {@link ExpressionParser#evaluate(String)} evaluates a compiled expression.
+     */
+    default void onEvaluate(CompiledExpression compiled, double value, long evaluateNanos) {
+    }
+
+    /**
+     * Called when a compiled expression is served from a cache.
+     */
+    default void onCacheHit(String expression) {
+    }
+
+    /**
+     * Called when an expression is not found in a cache and has to be compiled.
+     */
+    default void onCacheMiss(String expression) {
+    }
+
+}
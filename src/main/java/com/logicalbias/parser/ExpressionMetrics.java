@@ -0,0 +1,111 @@
+package com.logicalbias.parser;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An {@link ExpressionListener} accumulating counters and total times, safe to share between threads.
+ */
+public class ExpressionMetrics implements ExpressionListener {
+
+    private final LongAdder parseCount = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder tokenCount = new LongAdder();
+    private final LongAdder nodesBeforeOptimization = new LongAdder();
+    private final LongAdder nodesAfterOptimization = new LongAdder();
+    private final LongAdder compileCount = new LongAdder();
+    private final LongAdder compileNanos = new LongAdder();
+    private final LongAdder evaluateCount = new LongAdder();
+    private final LongAdder evaluateNanos = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    @Override
+    public void onParse(String expression, List<Token> rpnTokens, int tokenCount, long parseNanos) {
+        this.parseCount.increment();
+        this.parseNanos.add(parseNanos);
+        this.tokenCount.add(tokenCount);
+    }
+
+    @Override
+    public void onOptimize(String expression, int nodesBefore, int nodesAfter) {
+        this.nodesBeforeOptimization.add(nodesBefore);
+        this.nodesAfterOptimization.add(nodesAfter);
+    }
+
+    @Override
+    public void onCompile(CompiledExpression compiled, long compileNanos) {
+        this.compileCount.increment();
+        this.compileNanos.add(compileNanos);
+    }
+
+    @Override
+    public void onEvaluate(CompiledExpression compiled, double value, long evaluateNanos) {
+        this.evaluateCount.increment();
+        this.evaluateNanos.add(evaluateNanos);
+    }
+
+    @Override
+    public void onCacheHit(String expression) {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void onCacheMiss(String expression) {
+        cacheMisses.increment();
+    }
+
+    public long getParseCount() {
+        return parseCount.sum();
+    }
+
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    public long getTokenCount() {
+        return tokenCount.sum();
+    }
+
+    public long getNodesBeforeOptimization() {
+        return nodesBeforeOptimization.sum();
+    }
+
+    public long getNodesAfterOptimization() {
+        return nodesAfterOptimization.sum();
+    }
+
+    public long getCompileCount() {
+        return compileCount.sum();
+    }
+
+    public long getCompileNanos() {
+        return compileNanos.sum();
+    }
+
+    public long getEvaluateCount() {
+        return evaluateCount.sum();
+    }
+
+    public long getEvaluateNanos() {
+        return evaluateNanos.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionMetrics [parseCount=" + getParseCount() + ", parseNanos=" + getParseNanos() + ", tokenCount=" + getTokenCount()
+                + ", nodesBeforeOptimization=" + getNodesBeforeOptimization() + ", nodesAfterOptimization=" + getNodesAfterOptimization()
+                + ", compileCount=" + getCompileCount() + ", compileNanos=" + getCompileNanos()
+                + ", evaluateCount=" + getEvaluateCount() + ", evaluateNanos=" + getEvaluateNanos()
+                + ", cacheHits=" + getCacheHits() + ", cacheMisses=" + getCacheMisses() + "]";
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.logicalbias.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.logicalbias.parser.functions.Function;
+import com.logicalbias.parser.operators.MultiplicationOperator;
+import com.logicalbias.parser.operators.Operator;
+import com.logicalbias.parser.operators.PowerOfTwoDivisionOperator;
+import com.logicalbias.parser.operators.PowerOfTwoModulusOperator;
+
+/**
+ * Simplifies expression tree nodes as they are built, bottom-up, from the RPN queue:
+ * <ul>
+ * <li>A {@link Function#isPure() pure} function whose arguments are all constant is folded into a constant,
+ * using the function's own implementation.</li>
+ * <li>Identities of the built-in operators are removed: {@code x*1}, {@code 1*x}, {@code x/1}, {@code x+0},
+ * {@code 0+x}, {@code x-0}, {@code x^1} and {@code --x} all become {@code x}. Note that {@code -0 + 0}
+ * evaluates to {@code 0} rather than {@code -0}; the two compare equal.</li>
+ * <li>{@code x^n} for a constant integer {@code n} from 2 to {@value #MAX_SQUARING_EXPONENT} becomes a chain of
+ * multiplications by repeated squaring: {@code x^2} is {@code x*x} and {@code x^5} is {@code (x*x)*(x*x)*x}. Equal
+ * operands are the same node, so a compound {@code x} and each square are evaluated once and reused as common
+ * subexpressions. Each multiplication rounds, so the result may differ from {@link Math#pow(double, double)} in the
+ * last few bits (by at most about {@code n} half ulps).</li>
+ * <li>{@code x/c} and {@code x%c} for a constant {@code c} that is a power of two (with a normal reciprocal) become
+ * {@link PowerOfTwoDivisionOperator} and {@link PowerOfTwoModulusOperator}, which multiply by the reciprocal rather
+ * than divide. Both are exact, so the results are unchanged.</li>
+ * <li>A lazy function whose outcome is decided by a constant condition drops its untaken arguments:
+ * {@code if(c, a, b)} becomes {@code a} or {@code b}, {@code 0 && x} becomes {@code 0} and a non-zero
+ * {@code c || x} becomes {@code 1}.</li>
+ * </ul>
+ */
+final class ExpressionOptimizer {
+
+    private static final Function MULTIPLY = new MultiplicationOperator("*", 3);
+
+    private static final int MAX_SQUARING_EXPONENT = 16;
+
+    // Specializations are shared so equal subexpressions remain equal nodes; keyed by the operation, token and divisor
+    private static final Map<String, Function> specializations = new ConcurrentHashMap<>();
+
+    private ExpressionOptimizer() {
+    }
+
+    /**
+     * Returns the simplest node equivalent to the function applied to the (already simplified) children.
+     */
+    static Node simplify(Function function, Node[] children) {
+        if (function.isPure() && allConstant(children)) {
+            return Node.constant(fold(function, children));
+        }
+
+        switch (Intrinsic.of(function)) {
+            case ADD:
+                if (children[1].isConstant(0.0)) {
+                    return children[0];
+                }
+                if (children[0].isConstant(0.0)) {
+                    return children[1];
+                }
+                break;
+            case SUBTRACT:
+                if (children[1].isConstant(0.0)) {
+                    return children[0];
+                }
+                break;
+            case MULTIPLY:
+                if (children[1].isConstant(1.0)) {
+                    return children[0];
+                }
+                if (children[0].isConstant(1.0)) {
+                    return children[1];
+                }
+                break;
+            case DIVIDE:
+                if (children[1].isConstant(1.0)) {
+                    return children[0];
+                }
+                if (isPowerOfTwo(children[1]) && function instanceof Operator) {
+                    return Node.function(specialize((Operator) function, children[1].value), children);
+                }
+                break;
+            case MODULUS:
+                if (isPowerOfTwo(children[1]) && function instanceof Operator) {
+                    return Node.function(specialize((Operator) function, children[1].value), children);
+                }
+                break;
+            case POWER:
+                if (children[1].isConstant(1.0)) {
+                    return children[0];
+                }
+                if (children[1].isConstant() && children[1].value == Math.rint(children[1].value)
+                        && children[1].value >= 2 && children[1].value <= MAX_SQUARING_EXPONENT) {
+                    return power(children[0], (int) children[1].value);
+                }
+                break;
+            case NEGATE:
+                if (children[0].kind == Node.FUNCTION && Intrinsic.of(children[0].function) == Intrinsic.NEGATE) {
+                    return children[0].children[0];
+                }
+                break;
+            case IF:
+                if (children[0].isConstant()) {
+                    return children[0].value != 0 ? children[1] : children[2];
+                }
+                break;
+            case AND:
+                if (children[0].isConstant() && children[0].value == 0) {
+                    return Node.constant(0.0);
+                }
+                break;
+            case OR:
+                if (children[0].isConstant() && children[0].value != 0) {
+                    return Node.constant(1.0);
+                }
+                break;
+            default:
+                break;
+        }
+
+        return Node.function(function, children);
+    }
+
+    /**
+     * Exponentiation by squaring, from the most significant bit of the exponent down.
+     */
+    private static Node power(Node base, int exponent) {
+        Node result = base;
+        for (int bit = Integer.highestOneBit(exponent) >> 1; bit > 0; bit >>= 1) {
+            result = Node.function(MULTIPLY, result, result);
+            if ((exponent & bit) != 0) {
+                result = Node.function(MULTIPLY, result, base);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the node is a constant power of two whose reciprocal is a normal double, i.e. 2^k for k in [-1022, 1022].
+     */
+    private static boolean isPowerOfTwo(Node node) {
+        if (!node.isConstant()) {
+            return false;
+        }
+        int exponent = Math.getExponent(node.value);
+        return (Double.doubleToRawLongBits(node.value) & 0x000FFFFFFFFFFFFFL) == 0 && exponent >= -1022 && exponent <= 1022;
+    }
+
+    private static Function specialize(Operator operator, double divisor) {
+        boolean division = Intrinsic.of(operator) == Intrinsic.DIVIDE;
+        String key = (division ? "/" : "%") + operator.getToken() + ':' + Double.doubleToRawLongBits(divisor);
+        return specializations.computeIfAbsent(key, k -> division
+                ? new PowerOfTwoDivisionOperator(operator.getToken(), operator.getPrecedence(), divisor)
+                : new PowerOfTwoModulusOperator(operator.getToken(), operator.getPrecedence(), divisor));
+    }
+
+    private static boolean allConstant(Node[] children) {
+        for (Node child : children) {
+            if (!child.isConstant()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double fold(Function function, Node[] children) {
+        switch (children.length) {
+            case 1:
+                return function.apply1(children[0].value);
+            case 2:
+                return function.apply2(children[0].value, children[1].value);
+            default:
+                double[] args = new double[children.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = children[i].value;
+                }
+                return function.apply(args);
+        }
+    }
+
+}
@@ -1,239 +1,549 @@
 package com.logicalbias.parser;
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
-import com.logicalbias.parser.functions.AbsoluteValueFunction;
-import com.logicalbias.parser.functions.CeilingFunction;
-import com.logicalbias.parser.functions.FloorFunction;
+import com.logicalbias.parser.ExpressionLimitException.Limit;
+import com.logicalbias.parser.Token.Type;
 import com.logicalbias.parser.functions.Function;
-import com.logicalbias.parser.functions.MaxFunction;
-import com.logicalbias.parser.functions.MinFunction;
-import com.logicalbias.parser.functions.RoundFunction;
-import com.logicalbias.parser.operators.AdditionOperator;
-import com.logicalbias.parser.operators.DivisionOperator;
-import com.logicalbias.parser.operators.FactorialOperator;
-import com.logicalbias.parser.operators.ModulusOperator;
-import com.logicalbias.parser.operators.MultiplicationOperator;
 import com.logicalbias.parser.operators.Operator;
-import com.logicalbias.parser.operators.PowerOperator;
-import com.logicalbias.parser.operators.SubtractionOperator;
 
 public class ExpressionParser {
 
-    private static final String FUNCTION_ARGUMENT_SEPARATOR = ",";
-    private static final String LEFT_PAREN = "(";
-    private static final String RIGHT_PAREN = ")";
+    protected final FunctionRegistry registry;
+    protected Tokenizer tokenizer;
 
-    private static final Map<String, Function> supportedFunctions = new HashMap<>();
-    private static final Map<String, Operator> supportedOperators = new HashMap<>();
-    private static final Map<String, Double> supportedConstants = new HashMap<>();
+    private boolean bytecodeEnabled;
+    private boolean optimizationEnabled = true;
+    private ExpressionListener listener = ExpressionListener.NONE;
+    private ExpressionLimits limits = ExpressionLimits.NONE;
 
-    static {
-        supportedFunctions.put("abs", new AbsoluteValueFunction("abs"));
-        supportedFunctions.put("min", new MinFunction("min"));
-        supportedFunctions.put("max", new MaxFunction("max"));
-        supportedFunctions.put("floor", new FloorFunction("floor"));
-        supportedFunctions.put("ceil", new CeilingFunction("ceil"));
-        supportedFunctions.put("round", new RoundFunction("round"));
+    /**
+     * Creates a parser supporting the built-in functions, operators and constants.
+     */
+    public ExpressionParser() {
+        this(FunctionRegistry.defaults());
+    }
+
+    /**
+     * Creates a parser supporting the functions, operators and constants of the specified registry.
+     */
+    public ExpressionParser(FunctionRegistry registry) {
+        this.registry = registry;
+        this.tokenizer = new Tokenizer(registry);
+    }
 
-        supportedOperators.put("+", new AdditionOperator("+", 1));
-        supportedOperators.put("-", new SubtractionOperator("-", 1));
-        supportedOperators.put("*", new MultiplicationOperator("*", 3));
-        supportedOperators.put("/", new DivisionOperator("/", 3));
-        supportedOperators.put("%", new ModulusOperator("%", 3));
-        supportedOperators.put("^", new PowerOperator("^", 5));
-        supportedOperators.put("!", new FactorialOperator("!", 7));
+    public FunctionRegistry getRegistry() {
+        return registry;
+    }
 
-        supportedConstants.put("pi", Math.PI);
-        supportedConstants.put("e", Math.E);
+    /**
+     * Returns true if {@link #compile(String)} generates JVM bytecode for each expression.
+     */
+    public boolean isBytecodeEnabled() {
+        return bytecodeEnabled;
     }
 
-    protected Tokenizer tokenizer = new Tokenizer();
+    /**
+     * Enables or disables bytecode generation in {@link #compile(String)}.
+     * @see CompiledExpression#toBytecode()
+     */
+    public void setBytecodeEnabled(boolean bytecodeEnabled) {
+        this.bytecodeEnabled = bytecodeEnabled;
+    }
 
-    public ExpressionParser() {
+    /**
+     * Returns true if expressions are simplified while compiling (enabled by default).
+     */
+    public boolean isOptimizationEnabled() {
+        return optimizationEnabled;
+    }
+
+    /**
+     * Enables or disables constant folding and algebraic simplification while compiling.
+     */
+    public void setOptimizationEnabled(boolean optimizationEnabled) {
+        this.optimizationEnabled = optimizationEnabled;
+    }
+
+    /**
+     * Returns the listener notified of parse, compile and evaluation events.
+     */
+    public ExpressionListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Installs a listener notified of parse, compile and evaluation events, or {@link ExpressionListener#NONE} to disable instrumentation.
+     */
+    public void setListener(ExpressionListener listener) {
+        this.listener = listener == null ? ExpressionListener.NONE : listener;
+    }
+
+    /**
+     * Returns the complexity limits enforced on every expression compiled ({@link ExpressionLimits#NONE} by default).
+     */
+    public ExpressionLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Installs the complexity limits enforced on every expression compiled, such as one supplied by an untrusted user.
+     * An expression exceeding a limit is rejected with an {@link ExpressionLimitException}.
+     */
+    public void setLimits(ExpressionLimits limits) {
+        this.limits = limits == null ? ExpressionLimits.NONE : limits;
     }
 
     public double evaluate(String expression) {
+        CompiledExpression compiled = compile(expression);
+        if (listener == ExpressionListener.NONE) {
+            return compiled.evaluate();
+        }
+
+        long start = System.nanoTime();
+        double value = compiled.evaluate();
+        listener.onEvaluate(compiled, value, System.nanoTime() - start);
+        return value;
+    }
+
+    /**
+     * Parses the specified expression into an immutable {@link CompiledExpression} which
+     * may be evaluated repeatedly (and concurrently) without re-parsing the expression.
+     */
+    public CompiledExpression compile(String expression) {
+        boolean instrumented = listener != ExpressionListener.NONE;
+        long start = instrumented ? System.nanoTime() : 0L;
+
         // First we need to tokenize the expression
-        List<String> tokens = tokenize(expression);
+        List<Token> tokens = tokenize(expression);
 
         // Now we will run the shunting-yard algorithm to generate an RPN list of the expression tree
-        List<String> outputQueue = shuntingYard(tokens);
-        System.out.println(outputQueue);
+        List<Token> outputQueue = shuntingYard(tokens);
+        checkComplexity(outputQueue);
 
-        // Finally we will scan through and evaluate the expression
-        double value = evaluate(outputQueue);
-        return value;
+        long parsed = 0L;
+        if (instrumented) {
+            parsed = System.nanoTime();
+            listener.onParse(expression, outputQueue, tokens.size(), parsed - start);
+        }
+
+        // Finally we will resolve the RPN list into a compiled instruction stream
+        CompiledExpression compiled = compile(expression, outputQueue);
+        if (bytecodeEnabled) {
+            compiled = compiled.toBytecode();
+        }
+
+        if (instrumented) {
+            listener.onCompile(compiled, System.nanoTime() - parsed);
+        }
+        return compiled;
+    }
+
+    /**
+     * Parses the specified expression into a {@link DecimalExpression} evaluated in {@link BigDecimal} arithmetic,
+     * rounding every operation to the specified context. Numeric literals are converted from their exact text.
+     */
+    public DecimalExpression compileDecimal(String expression, MathContext context) {
+        List<Token> outputQueue = shuntingYard(tokenize(expression));
+        checkComplexity(outputQueue);
+        return DecimalExpression.compile(expression, outputQueue, context, limits.getMaxCost());
     }
 
     /**
      * Evaluates and returns the value of a mathematical expression configured as a 
      * valid list of tokens in reverse polish notation order. 
      */
-    protected double evaluate(List<String> rpnTokens) {
-        LinkedList<Double> arguments = new LinkedList<>();
-
-        // Iterate through the list of tokens looking for functions
-        for (String token : rpnTokens) {
-            // Try and locate a function for this token
-            Function function = null;
-            if (isFunction(token)) {
-                function = getFunction(token);
-            }
-            else if (isOperator(token)) {
-                function = getOperator(token);
-            }
+    protected double evaluate(List<Token> rpnTokens) {
+        return compile(String.valueOf(rpnTokens), rpnTokens).evaluate();
+    }
 
-            // If token is a numeric value then push it to the front of the arguments stack
-            else if (isNumber(token)) {
-                arguments.push(getNumber(token));
-            }
-            else if (isConstant(token)) {
-                arguments.push(getConstant(token));
-            }
-            else {
-                throw new RuntimeException("Invalid token detected in expression... " + token);
-            }
+    /**
+     * Resolves a valid list of tokens in reverse polish notation order into a {@link CompiledExpression}.
+     * The tokens are first assembled into an expression tree, simplified as it is built if optimization is enabled
+     * (which also merges common subexpressions so they are evaluated once), and the tree is then emitted as an instruction stream of primitive constants and direct function references,
+     * so evaluation never has to consult a token again.
+     */
+    protected CompiledExpression compile(String expression, List<Token> rpnTokens) {
+        List<String> variables = new ArrayList<>();
+        Node tree = buildTree(rpnTokens, variables);
 
-            if (function != null) {
-                // Retrieve the argument(s) for this operator
-                // Take care here to retrieve the arguments in the *reverse order* from the stack
-                int numArgs = function.getNumberOfArguments();
-                double[] args = new double[numArgs];
-                for (int i = numArgs - 1; i >= 0; i--) {
-                    args[i] = arguments.pop();
-                }
+        if (optimizationEnabled && listener != ExpressionListener.NONE) {
+            // Every RPN token is one node of the unoptimized tree
+            listener.onOptimize(expression, rpnTokens.size(), tree.size());
+        }
 
-                // Apply the operator to these values and retrieve the new value
-                double value = function.apply(args);
+        CompiledExpression compiled = new ProgramBuilder(expression, variables).emit(tree).build();
+        // Each instruction is executed at most once per evaluation, so the program length bounds its cost
+        int cost = compiled.instructions().length;
+        if (cost > limits.getMaxCost()) {
+            throw new ExpressionLimitException(Limit.COST, limits.getMaxCost(), ExpressionLimitException.NO_OFFSET, "Invalid expression... Evaluation cost of " + cost
+                    + " step(s) exceeds the maximum of " + limits.getMaxCost());
+        }
+        return compiled;
+    }
 
-                // Push the calculated to the front of the stack
-                arguments.push(value);
+    /**
+     * Assembles the expression tree of a valid list of tokens in reverse polish notation order, collecting
+     * variable names into the list in order of first appearance (which determines their slots).
+     * When optimization is enabled every node is interned as it is built, so structurally equal subexpressions
+     * become a single shared node and the result is a DAG.
+     */
+    Node buildTree(List<Token> rpnTokens, List<String> variables) {
+        Stack<Node> arguments = new Stack<>();
+        Map<Node, Node> interned = new HashMap<>();
+
+        for (Token token : rpnTokens) {
+            switch (token.getType()) {
+                // Numeric values and constants will be pushed to the front of the arguments stack
+                case NUMBER:
+                case CONSTANT:
+                    arguments.push(intern(interned, Node.constant(token.getValue())));
+                    break;
+
+                case VARIABLE:
+                    if (!variables.contains(token.getText())) {
+                        variables.add(token.getText());
+                    }
+                    arguments.push(intern(interned, Node.variable(token.getText())));
+                    break;
+
+                case FUNCTION:
+                case OPERATOR:
+                case PREFIX_OPERATOR:
+                    // Retrieve the argument(s) for this function
+                    // Take care here to retrieve the arguments in the *reverse order* from the stack
+                    Function function = token.getFunction();
+                    int numArgs = token.getArgumentCount();
+                    checkArguments(token);
+                    if (arguments.size() < numArgs) {
+                        throw new RuntimeException("Invalid expression... Missing argument(s) for " + token + " at offset " + token.getOffset());
+                    }
+                    Node[] children = new Node[numArgs];
+                    for (int i = numArgs - 1; i >= 0; i--) {
+                        children[i] = arguments.pop();
+                    }
+
+                    Node node = optimizationEnabled ? ExpressionOptimizer.simplify(function, children) : Node.function(function, children);
+                    arguments.push(intern(interned, node));
+                    break;
+
+                default:
+                    throw new RuntimeException("Invalid token detected in expression... " + token + " at offset " + token.getOffset());
             }
         }
 
         // The arguments stack should now only contain one value -- the value of the expression
         if (arguments.size() > 1) {
-            throw new RuntimeException("Invalid expression... Multiple values remained after evaluation: " + arguments);
+            throw new RuntimeException("Invalid expression... Multiple values remained after evaluation: " + rpnTokens);
+        }
+        if (arguments.isEmpty()) {
+            throw new RuntimeException("Invalid expression... No value to evaluate: " + rpnTokens);
         }
 
         return arguments.pop();
     }
 
     /**
-     * Tokenizes the specified expression and performs rudimentary sanity checks prior to returning;
+     * Enforces the nesting depth and function call limits on a list of tokens in reverse polish notation order,
+     * tracking the depth of the subexpression each pending argument holds.
      */
-    protected List<String> tokenize(String expression) {
-        List<String> tokens = tokenizer.tokenize(expression);
+    private void checkComplexity(List<Token> rpnTokens) {
+        if (!limits.limitsComplexity()) {
+            return;
+        }
 
-        System.out.println("Tokens: " + tokens);
+        int[] depths = new int[rpnTokens.size()];
+        int top = 0;
+        int calls = 0;
+        for (Token token : rpnTokens) {
+            int depth = 1;
+            switch (token.getType()) {
+                case FUNCTION:
+                case OPERATOR:
+                case PREFIX_OPERATOR:
+                    if (++calls > limits.getMaxFunctionCalls()) {
+                        throw new ExpressionLimitException(Limit.FUNCTION_CALLS, limits.getMaxFunctionCalls(), token.getOffset(),
+                                "Invalid expression... More than " + limits.getMaxFunctionCalls() + " function call(s)");
+                    }
+                    // Missing arguments are reported when the expression is compiled
+                    int numArgs = Math.min(Math.max(token.getArgumentCount(), 0), top);
+                    for (int i = 0; i < numArgs; i++) {
+                        depth = Math.max(depth, depths[--top] + 1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (depth > limits.getMaxNestingDepth()) {
+                throw new ExpressionLimitException(Limit.NESTING_DEPTH, limits.getMaxNestingDepth(), token.getOffset(),
+                        "Invalid expression... Nesting depth exceeds the maximum of " + limits.getMaxNestingDepth());
+            }
+            depths[top++] = depth;
+        }
+    }
+
+    /**
+     * Ensures the function token is called with a number of arguments the function accepts.
+     */
+    static void checkArguments(Token token) {
+        Function function = token.getFunction();
+        if (!function.acceptsArguments(token.getArgumentCount())) {
+            String expected = function.isVariadic() ? "one or more" : String.valueOf(function.getNumberOfArguments());
+            throw new RuntimeException("Invalid expression... " + token + " expects " + expected + " argument(s) but received "
+                    + Math.max(0, token.getArgumentCount()) + " at offset " + token.getOffset());
+        }
+    }
+
+    /**
+     * Returns the previously built node equal to the specified one, or the node itself if it is the first of its kind.
+     */
+    private Node intern(Map<Node, Node> interned, Node node) {
+        if (!optimizationEnabled) {
+            return node;
+        }
+        Node existing = interned.putIfAbsent(node, node);
+        return existing != null ? existing : node;
+    }
+
+    /**
+     * Tokenizes and classifies the specified expression, enforcing the length and token limits, and performs rudimentary sanity checks prior to returning;
+     */
+    protected List<Token> tokenize(String expression) {
+        if (expression.length() > limits.getMaxLength()) {
+            // The first character beyond the limit, which the expression is known to have
+            int offset = limits.getMaxLength();
+            throw new ExpressionLimitException(Limit.LENGTH, limits.getMaxLength(), offset,
+                    "Invalid expression... Longer than " + limits.getMaxLength() + " character(s)");
+        }
+        List<Token> tokens = classify(tokenizer.tokenize(expression));
+        if (tokens.size() > limits.getMaxTokens()) {
+            throw new ExpressionLimitException(Limit.TOKENS, limits.getMaxTokens(), tokens.get(limits.getMaxTokens()).getOffset(),
+                    "Invalid expression... More than " + limits.getMaxTokens() + " token(s)");
+        }
 
         // Preliminary fast sanity check of tokens
         for (int i = 0; i < tokens.size() - 1; i++) {
-            String leftToken = tokens.get(i);
-            String rightToken = tokens.get(i + 1);
+            Token leftToken = tokens.get(i);
+            Token rightToken = tokens.get(i + 1);
 
-            // There should never be two adjacent numbers or operators in the mathematical expression...
-            if (isNumber(leftToken) && isNumber(rightToken)) {
-                throw new RuntimeException("Invalid expression detected! Operator expected between " + leftToken + " " + rightToken);
+            // There should never be two adjacent numbers in the mathematical expression...
+            if (leftToken.getType() == Type.NUMBER && rightToken.getType() == Type.NUMBER) {
+                throw new RuntimeException("Invalid expression detected! Operator expected between " + leftToken + " " + rightToken
+                        + " at offset " + rightToken.getOffset());
             }
-
-            // TODO: How to perform this validation AND handle factorial operators?
-            /*if (isOperator(leftToken) && isOperator(rightToken)) {
-                throw new RuntimeException("Invalid expression detected! Numeric value expected " + leftToken + " " + rightToken);
-            }*/
         }
 
         return tokens;
     }
 
     /**
-     * Executes Djikstra's Shunting-yard algorithm against the specified list of tokens.
-     * Returns the RPN (Reverse Polish Notation) queue of the set expression.<br />
-     * @see <a href="http://en.wikipedia.org/wiki/Shunting-yard_algorithm">http://en.wikipedia.org/wiki/Shunting-yard_algorithm</a>
-     * 
+     * Classifies every lexical token exactly once, with a single registry lookup per identifier or operator:
+     * identifiers become FUNCTION, CONSTANT or VARIABLE tokens (or operators, for word operators)
+     * and operator symbols are resolved to their {@link Operator}.<br />
+     * Where an operand is expected (at the start of the expression, or after an operator, function name,
+     * left parenthesis or argument separator) a symbol is resolved as a prefix operator, such as unary negation.
+     * A minus sign is never part of a number, so negation binds the same however it is spaced and looser than
+     * {@code ^}: {@code -2^2} is {@code -(2^2)}, like {@code -x^2}.
      */
-    protected List<String> shuntingYard(List<String> tokens) {
-        List<String> outputQueue = new LinkedList<>();
-        Stack<String> stack = new Stack<>();
+    protected List<Token> classify(List<Token> tokens) {
+        List<Token> classified = new ArrayList<>(tokens.size());
 
-        for (String token : tokens) {
-            if (isFunction(token)) {
-                stack.push(token);
-            }
-            else if (isNumber(token) || isConstant(token)) {
-                outputQueue.add(token);
-            }
-            else if (isOperator(token)) {
-                Operator o1 = getOperator(token);
-
-                // while there is an operator token, o2, at the top of the stack, and
-                //      either token is left-associative and token precedence <= o2
-                //      OR token has less precedence than o2 
-                //      THEN pop o2 off stack, onto output queue
-                while (!stack.isEmpty() && isOperator(stack.peek())) {
-                    Operator o2 = getOperator(stack.peek());
-                    if (o1.getPrecedence() < o2.getPrecedence() ||
-                            (o1.isLeftAssociative() && o1.getPrecedence() <= o2.getPrecedence())) {
-                        String o2Token = stack.pop();
-                        outputQueue.add(o2Token);
+        // True whenever the next token must begin an operand rather than continue one
+        boolean expectOperand = true;
+
+        for (Token token : tokens) {
+            String text = token.getText();
+
+            switch (token.getType()) {
+                case IDENTIFIER:
+                    Function function = registry.getFunction(text);
+                    if (function != null) {
+                        classified.add(new Token(Type.FUNCTION, text, Double.NaN, token.getOffset(), function));
+                        expectOperand = true;
+                        break;
                     }
-                    else {
+
+                    Token operator = classifyOperator(token, expectOperand);
+                    if (operator != null) {
+                        classified.add(operator);
+                        expectOperand = expectsOperand(operator);
                         break;
                     }
-                }
 
-                stack.push(token);
-            }
-            else if (token.equals(FUNCTION_ARGUMENT_SEPARATOR)) {
-                // Until the token at the top of the stack is a left parenthesis, 
-                // pop operators off the stack onto the output queue. If no left parentheses are encountered, 
-                // either the separator was misplaced or parentheses were mismatched.
-                while (!stack.peek().equals(LEFT_PAREN)) {
-                    String stackToken = stack.pop();
-                    outputQueue.add(stackToken);
+                    Double constant = registry.getConstant(text);
+                    if (constant != null) {
+                        classified.add(new Token(Type.CONSTANT, text, constant, token.getOffset(), null));
+                    }
+                    else {
+                        classified.add(new Token(Type.VARIABLE, text, Double.NaN, token.getOffset(), null));
+                    }
+                    expectOperand = false;
+                    break;
 
-                    if (stack.isEmpty()) {
-                        throw new RuntimeException("Mismatched parentheses or comma detected in expression... ");
+                case OPERATOR:
+                    operator = classifyOperator(token, expectOperand);
+                    if (operator == null) {
+                        throw new RuntimeException("Invalid token detected in expression... " + text + " at offset " + token.getOffset());
                     }
-                }
+                    classified.add(operator);
+                    expectOperand = expectsOperand(operator);
+                    break;
+
+                case NUMBER:
+                case RIGHT_PAREN:
+                    classified.add(token);
+                    expectOperand = false;
+                    break;
+
+                default:
+                    classified.add(token);
+                    expectOperand = true;
+                    break;
+            }
+        }
+
+        return classified;
+    }
+
+    /**
+     * Resolves the token as a prefix operator when an operand is expected, otherwise as an infix/postfix operator.
+     * Returns null if the registry has no such operator.
+     */
+    private Token classifyOperator(Token token, boolean expectOperand) {
+        String text = token.getText();
+        if (expectOperand) {
+            Operator prefix = registry.getPrefixOperator(text);
+            if (prefix != null) {
+                return new Token(Type.PREFIX_OPERATOR, text, Double.NaN, token.getOffset(), prefix);
             }
-            else if (token.equals(LEFT_PAREN)) {
-                stack.push(token);
+        }
+
+        Operator operator = registry.getOperator(text);
+        if (operator != null) {
+            return new Token(Type.OPERATOR, text, Double.NaN, token.getOffset(), operator);
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if an operand must follow the operator token: only a postfix (unary) operator such as factorial completes one.
+     */
+    private static boolean expectsOperand(Token operator) {
+        return operator.getType() == Type.PREFIX_OPERATOR || operator.getFunction().getNumberOfArguments() > 1;
+    }
+
+    /**
+     * Executes Djikstra's Shunting-yard algorithm against the specified list of classified tokens.
+     * Returns the RPN (Reverse Polish Notation) queue of the set expression.<br />
+     * The arguments within each pair of parentheses are counted, and a function token popped by the closing
+     * parenthesis is emitted with that count (see {@link Token#getArgumentCount()}), so functions may be variadic.<br />
+     * @see <a href="http://en.wikipedia.org/wiki/Shunting-yard_algorithm">http://en.wikipedia.org/wiki/Shunting-yard_algorithm</a>
+     * 
+     */
+    protected List<Token> shuntingYard(List<Token> tokens) {
+        List<Token> outputQueue = new ArrayList<>(tokens.size());
+        Stack<Token> stack = new Stack<>();
+        // For each open parenthesis: the number of separators within it, and whether it contains anything at all
+        Stack<int[]> argumentCounts = new Stack<>();
+
+        for (Token token : tokens) {
+            Type type = token.getType();
+            if (type != Type.SEPARATOR && type != Type.RIGHT_PAREN && !argumentCounts.isEmpty()) {
+                argumentCounts.peek()[1] = 1;
             }
-            else if (token.equals(RIGHT_PAREN)) {
-                // 1. Until the token at the top of the stack is a left parenthesis, pop operators off the stack onto the output queue.
-                // 2. Pop the left parenthesis from the stack, but not onto the output queue.
-                // 3. If the token at the top of the stack is a function token, pop it onto the output queue.
-                // 4. If the stack runs out without finding a left parenthesis, then there are mismatched parentheses.
-                while (!stack.peek().equals(LEFT_PAREN)) {
-                    String stackToken = stack.pop();
-                    outputQueue.add(stackToken);
 
+            switch (type) {
+                case FUNCTION:
+                    stack.push(token);
+                    break;
+
+                case NUMBER:
+                case CONSTANT:
+                case VARIABLE:
+                    outputQueue.add(token);
+                    break;
+
+                case PREFIX_OPERATOR:
+                    // A prefix operator has no left operand, so nothing can be popped on its behalf
+                    stack.push(token);
+                    break;
+
+                case OPERATOR:
+                    Operator o1 = (Operator) token.getFunction();
+
+                    // while there is an operator token, o2, at the top of the stack, and
+                    //      either token is left-associative and token precedence <= o2
+                    //      OR token has less precedence than o2 
+                    //      THEN pop o2 off stack, onto output queue
+                    while (!stack.isEmpty() && isOperator(stack.peek())) {
+                        Operator o2 = (Operator) stack.peek().getFunction();
+                        if (o1.getPrecedence() < o2.getPrecedence() ||
+                                (o1.isLeftAssociative() && o1.getPrecedence() <= o2.getPrecedence())) {
+                            outputQueue.add(stack.pop());
+                        }
+                        else {
+                            break;
+                        }
+                    }
+
+                    stack.push(token);
+                    break;
+
+                case SEPARATOR:
+                    // Until the token at the top of the stack is a left parenthesis, 
+                    // pop operators off the stack onto the output queue. If no left parentheses are encountered, 
+                    // either the separator was misplaced or parentheses were mismatched.
+                    while (!stack.isEmpty() && stack.peek().getType() != Type.LEFT_PAREN) {
+                        outputQueue.add(stack.pop());
+                    }
+                    if (stack.isEmpty()) {
+                        throw new RuntimeException("Mismatched parentheses or comma detected in expression at offset " + token.getOffset());
+                    }
+                    argumentCounts.peek()[0]++;
+                    break;
+
+                case LEFT_PAREN:
+                    stack.push(token);
+                    argumentCounts.push(new int[2]);
+                    break;
+
+                case RIGHT_PAREN:
+                    // 1. Until the token at the top of the stack is a left parenthesis, pop operators off the stack onto the output queue.
+                    // 2. Pop the left parenthesis from the stack, but not onto the output queue.
+                    // 3. If the token at the top of the stack is a function token, pop it onto the output queue.
+                    // 4. If the stack runs out without finding a left parenthesis, then there are mismatched parentheses.
+                    while (!stack.isEmpty() && stack.peek().getType() != Type.LEFT_PAREN) {
+                        outputQueue.add(stack.pop());
+                    }
                     if (stack.isEmpty()) {
-                        throw new RuntimeException("Mismatched parentheses detected in expression... ");
+                        throw new RuntimeException("Mismatched parentheses detected in expression at offset " + token.getOffset());
                     }
-                }
 
-                // Pop the top element off the stack -- It should be a LEFT_PAREN due to while check above
-                stack.pop();
+                    // Pop the top element off the stack -- It should be a LEFT_PAREN due to while check above
+                    stack.pop();
+                    int[] count = argumentCounts.pop();
+
+                    if (!stack.isEmpty() && stack.peek().getType() == Type.FUNCTION) {
+                        outputQueue.add(stack.pop().withArgumentCount(count[1] == 0 ? 0 : count[0] + 1));
+                    }
+                    break;
 
-                if (!stack.isEmpty() && isFunction(stack.peek())) {
-                    String stackToken = stack.pop();
-                    outputQueue.add(stackToken);
-                }
+                default:
+                    throw new RuntimeException("Unclassified token detected in expression... " + token + " at offset " + token.getOffset());
             }
         }
 
         while (!stack.isEmpty()) {
-            String stackToken = stack.pop();
+            Token stackToken = stack.pop();
 
-            if (isGroupingOperator(stackToken)) {
-                throw new RuntimeException("Mismatched parentheses detected in expression... ");
+            if (stackToken.getType() == Type.LEFT_PAREN) {
+                throw new RuntimeException("Mismatched parentheses detected in expression at offset " + stackToken.getOffset());
             }
 
             outputQueue.add(stackToken);
@@ -242,47 +552,32 @@ public class ExpressionParser {
         return outputQueue;
     }
 
+    private static boolean isOperator(Token token) {
+        return token.getType() == Type.OPERATOR || token.getType() == Type.PREFIX_OPERATOR;
+    }
+
     protected boolean isFunction(String token) {
-        return supportedFunctions.containsKey(token);
+        return registry.getFunction(token) != null;
     }
 
     public Function getFunction(String token) {
-        return supportedFunctions.get(token);
+        return registry.getFunction(token);
     }
 
     protected boolean isOperator(String token) {
-        return supportedOperators.containsKey(token);
+        return registry.getOperator(token) != null;
     }
 
     protected Operator getOperator(String token) {
-        return supportedOperators.get(token);
+        return registry.getOperator(token);
     }
 
     protected boolean isConstant(String token) {
-        return supportedConstants.containsKey(token);
+        return registry.getConstant(token) != null;
     }
 
     protected Double getConstant(String token) {
-        return supportedConstants.get(token);
-    }
-
-    protected boolean isNumber(String token) {
-        try {
-            Double.parseDouble(token);
-        }
-        catch (NumberFormatException e) {
-            return false;
-        }
-
-        return true;
-    }
-
-    protected Double getNumber(String token) {
-        return Double.parseDouble(token);
-    }
-
-    protected boolean isGroupingOperator(String token) {
-        return token.matches("[()]");
+        return registry.getConstant(token);
     }
 
 }
@@ -0,0 +1,437 @@
+package com.logicalbias.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A spreadsheet-like graph of named formulas which may reference each other, and named inputs, by name:
+ * <pre>
+ * graph.define("margin", "revenue - cost");
+ * graph.define("ratio", "margin / revenue");
+ * graph.set("revenue", 120).set("cost", 80);
+ * graph.get("ratio"); // 0.333...
+ * </pre>
+ * A variable of a formula that names another formula is a dependency on it; any other variable is an input,
+ * which is zero until set. Defining a formula that would make the graph cyclic is rejected.<br />
+ * Names are case-insensitive, as variables within formulas are: every name is lower-cased on the way in, so
+ * {@code "Revenue"} and {@code "revenue"} are the same cell. The name of a registered function or constant cannot
+ * be a cell, since a formula referencing it would never see the cell.<br />
+ * Every cell is assigned a level: inputs are level zero and a formula is one level above its deepest dependency (or level one),
+ * so the cells of a level never depend on each other. Recalculation is lazy and incremental: changing an input
+ * or redefining a formula marks only its direct dependents dirty, levels are recalculated in ascending order,
+ * and the dependents of a formula are only marked in turn if its value actually changed. Levels with many dirty
+ * formulas are recalculated in parallel on a {@link ForkJoinPool}.<br />
+ * A graph is not thread-safe for any access, including reads: {@link #get(String)} recalculates dirty formulas,
+ * so every call must be synchronized externally if the graph is shared between threads. The parallel recalculation
+ * of a level is internal and needs no synchronization.
+ */
+public final class FormulaGraph {
+
+    /** Default minimum number of dirty formulas in a level before it is recalculated in parallel */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 256;
+
+    private static final int FORMULAS_PER_TASK = 64;
+
+    private final ExpressionParser parser;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    private final Map<String, Cell> cells = new LinkedHashMap<>();
+
+    // Dirty formulas bucketed by level; a cell is queued at most once
+    private final List<List<Cell>> dirtyLevels = new ArrayList<>();
+    private int dirtyCount;
+
+    /**
+     * Creates a graph compiling formulas with a default parser and recalculating on the common fork/join pool.
+     */
+    public FormulaGraph() {
+        this(new ExpressionParser());
+    }
+
+    public FormulaGraph(ExpressionParser parser) {
+        this(parser, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * @param parallelThreshold dirty formulas in a level below which it is recalculated on the calling thread
+     */
+    public FormulaGraph(ExpressionParser parser, ForkJoinPool pool, int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be positive: " + parallelThreshold);
+        }
+        this.parser = parser;
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Defines, or redefines, the named formula. Names referenced by the formula which are not yet
+     * defined become inputs.
+     * @throws RuntimeException if the formula is invalid, or references itself directly or indirectly
+     * @throws IllegalArgumentException if the name is that of a registered function or constant
+     */
+    public FormulaGraph define(String name, String formula) {
+        name = cellName(name);
+        CompiledExpression expression = parser.compile(formula);
+        String[] names = expression.getVariableNames();
+
+        Cell cell = cells.get(name);
+        Cell[] dependencies = new Cell[names.length];
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                throw new RuntimeException("Circular reference detected... " + name + " references itself");
+            }
+            dependencies[i] = cells.get(names[i]);
+            if (cell != null && dependencies[i] != null && dependsOn(dependencies[i], cell)) {
+                throw new RuntimeException("Circular reference detected... " + name + " is referenced by its dependency " + names[i]);
+            }
+        }
+
+        if (cell == null) {
+            cell = new Cell(name);
+            cells.put(name, cell);
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (dependencies[i] == null) {
+                dependencies[i] = new Cell(names[i]);
+                cells.put(names[i], dependencies[i]);
+            }
+        }
+
+        unlink(cell);
+        cell.expression = expression;
+        cell.dependencies = dependencies;
+        cell.arguments = new double[dependencies.length];
+        for (Cell dependency : dependencies) {
+            dependency.dependents.add(cell);
+        }
+
+        updateLevels(cell);
+        markDirty(cell);
+        return this;
+    }
+
+    /**
+     * Sets the value of the named input, defining it if necessary.
+     * @throws IllegalArgumentException if the name is defined as a formula, or is that of a registered function or constant
+     */
+    public FormulaGraph set(String name, double value) {
+        name = cellName(name);
+        Cell cell = cells.get(name);
+        if (cell == null) {
+            cell = new Cell(name);
+            cells.put(name, cell);
+        }
+        else if (cell.expression != null) {
+            throw new IllegalArgumentException("Cannot set the value of formula " + name);
+        }
+
+        if (Double.doubleToRawLongBits(cell.value) != Double.doubleToRawLongBits(value)) {
+            cell.value = value;
+            markDependentsDirty(cell);
+        }
+        return this;
+    }
+
+    /**
+     * Removes the named formula or input. If other formulas still reference it, it remains as an input with value zero.
+     */
+    public FormulaGraph remove(String name) {
+        name = normalize(name);
+        Cell cell = cells.get(name);
+        if (cell == null) {
+            return this;
+        }
+
+        unlink(cell);
+        cell.expression = null;
+        cell.dependencies = Cell.NONE;
+        if (cell.dependents.isEmpty()) {
+            cells.remove(name);
+        }
+        else {
+            updateLevels(cell);
+            cell.value = 0.0;
+            markDependentsDirty(cell);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the current value of the named formula or input, recalculating any dirty formulas first.
+     * Since it may modify the graph, it must not be called concurrently with any other method.
+     * @throws IllegalArgumentException if the name is not defined
+     */
+    public double get(String name) {
+        Cell cell = cells.get(normalize(name));
+        if (cell == null) {
+            throw new IllegalArgumentException("Unknown formula or input: " + name);
+        }
+        recalculate();
+        return cell.value;
+    }
+
+    public boolean contains(String name) {
+        return cells.containsKey(normalize(name));
+    }
+
+    /**
+     * Returns true if the name is defined as a formula rather than an input.
+     */
+    public boolean isFormula(String name) {
+        Cell cell = cells.get(normalize(name));
+        return cell != null && cell.expression != null;
+    }
+
+    /**
+     * Returns the level of the named formula or input: zero for inputs, otherwise one more than its deepest dependency, or one if it has none.
+     */
+    public int getLevel(String name) {
+        Cell cell = cells.get(normalize(name));
+        if (cell == null) {
+            throw new IllegalArgumentException("Unknown formula or input: " + name);
+        }
+        return cell.level;
+    }
+
+    /**
+     * Returns the (lower-cased) names of all formulas and inputs in definition order.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(cells.keySet());
+    }
+
+    /**
+     * Recalculates every dirty formula, level by level, and returns the number of formulas recalculated.
+     */
+    public int recalculate() {
+        int recalculated = 0;
+        List<Cell> changed = new ArrayList<>();
+
+        for (int level = 1; level < dirtyLevels.size() && dirtyCount > 0; level++) {
+            List<Cell> dirty = dirtyLevels.get(level);
+            if (dirty.isEmpty()) {
+                continue;
+            }
+
+            if (dirty.size() >= parallelThreshold) {
+                pool.invoke(new RecalculationTask(dirty, 0, dirty.size()));
+            }
+            else {
+                for (Cell cell : dirty) {
+                    cell.recalculate();
+                }
+            }
+
+            // Dependents are marked on this thread, after the level completes, since they live in later levels
+            for (Cell cell : dirty) {
+                cell.dirty = false;
+                if (cell.changed) {
+                    changed.add(cell);
+                }
+            }
+            recalculated += dirty.size();
+            dirtyCount -= dirty.size();
+            dirty.clear();
+
+            for (Cell cell : changed) {
+                markDependentsDirty(cell);
+            }
+            changed.clear();
+        }
+        return recalculated;
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the normalized name of a cell being defined or set.
+     * @throws IllegalArgumentException if the name is that of a registered function or constant
+     */
+    private String cellName(String name) {
+        String normalized = normalize(name);
+        FunctionRegistry registry = parser.getRegistry();
+        if (registry.getFunction(normalized) != null || registry.getConstant(normalized) != null) {
+            throw new IllegalArgumentException("Cannot define " + name + ", which is a registered function or constant");
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns true if the target is reachable from the cell by following dependencies.
+     */
+    private static boolean dependsOn(Cell cell, Cell target) {
+        Set<Cell> visited = new HashSet<>();
+        Deque<Cell> pending = new ArrayDeque<>();
+        pending.push(cell);
+        while (!pending.isEmpty()) {
+            Cell next = pending.pop();
+            if (next == target) {
+                return true;
+            }
+            if (visited.add(next)) {
+                for (Cell dependency : next.dependencies) {
+                    pending.push(dependency);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void unlink(Cell cell) {
+        for (Cell dependency : cell.dependencies) {
+            dependency.dependents.remove(cell);
+        }
+        if (cell.dirty) {
+            // Requeued below at its new level, if still a formula
+            dirtyLevels.get(cell.level).remove(cell);
+            dirtyCount--;
+            cell.dirty = false;
+        }
+    }
+
+    /**
+     * Recomputes the level of the cell, propagating any change to its dependents.
+     */
+    private void updateLevels(Cell cell) {
+        Deque<Cell> pending = new ArrayDeque<>();
+        pending.add(cell);
+        Set<Cell> queued = new HashSet<>();
+
+        while (!pending.isEmpty()) {
+            Cell next = pending.poll();
+            queued.remove(next);
+
+            int level = 0;
+            if (next.expression != null) {
+                level = 1;
+                for (Cell dependency : next.dependencies) {
+                    level = Math.max(level, dependency.level + 1);
+                }
+            }
+            if (level == next.level && next != cell) {
+                continue;
+            }
+
+            if (next.dirty) {
+                dirtyLevels.get(next.level).remove(next);
+                dirtyLevel(level).add(next);
+            }
+            next.level = level;
+            for (Cell dependent : next.dependents) {
+                if (queued.add(dependent)) {
+                    pending.add(dependent);
+                }
+            }
+        }
+    }
+
+    private void markDependentsDirty(Cell cell) {
+        for (Cell dependent : cell.dependents) {
+            markDirty(dependent);
+        }
+    }
+
+    private void markDirty(Cell cell) {
+        if (!cell.dirty && cell.expression != null) {
+            cell.dirty = true;
+            dirtyLevel(cell.level).add(cell);
+            dirtyCount++;
+        }
+    }
+
+    private List<Cell> dirtyLevel(int level) {
+        while (dirtyLevels.size() <= level) {
+            dirtyLevels.add(new ArrayList<>());
+        }
+        return dirtyLevels.get(level);
+    }
+
+    @Override
+    public String toString() {
+        return "FormulaGraph [cells=" + cells.size() + ", dirty=" + dirtyCount + "]";
+    }
+
+    private static final class Cell {
+
+        static final Cell[] NONE = new Cell[0];
+
+        final String name;
+        final Set<Cell> dependents = new HashSet<>();
+
+        // Null for inputs
+        CompiledExpression expression;
+        Cell[] dependencies = NONE;
+        double[] arguments;
+
+        int level;
+        double value;
+        boolean dirty;
+        boolean changed;
+
+        Cell(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Evaluates the formula from the values of its dependencies, which are all in lower levels.
+         */
+        void recalculate() {
+            for (int i = 0; i < dependencies.length; i++) {
+                arguments[i] = dependencies[i].value;
+            }
+            double previous = value;
+            value = expression.evaluate(arguments);
+            changed = Double.doubleToRawLongBits(previous) != Double.doubleToRawLongBits(value);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    private static final class RecalculationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Cell> cells;
+        private final int from;
+        private final int to;
+
+        RecalculationTask(List<Cell> cells, int from, int to) {
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FORMULAS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    cells.get(i).recalculate();
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new RecalculationTask(cells, from, middle), new RecalculationTask(cells, middle, to));
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.logicalbias.parser;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free count-min sketch of 4-bit counters estimating how often each key has been seen recently.
+ * Each key maps to one counter in each of four rows packed into longs; its estimate is the minimum of those
+ * counters. Once the number of increments reaches the sample size every counter is halved, so that
+ * the sketch ages out keys which are no longer popular. Used as the TinyLFU admission filter of {@link ExpressionCache}.
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+final class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = { 0x97CB3127, 0xB2E4A1D3, 0xC3A5C85C, 0x8CB92BA7 };
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    FrequencySketch(long expectedEntries) {
+        int size = (int) Math.min(1 << 24, Math.max(16, Long.highestOneBit(Math.max(1, expectedEntries) - 1) << 1));
+        this.table = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE / 2, 10L * Math.max(16, expectedEntries));
+    }
+
+    int frequency(int hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int h = rehash(hash, row);
+            long word = table.get(h & mask);
+            int shift = counterShift(h, row);
+            frequency = Math.min(frequency, (int) ((word >>> shift) & 0xF));
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int h = rehash(hash, row);
+            added |= incrementAt(h & mask, counterShift(h, row));
+        }
+
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int shift) {
+        while (true) {
+            long word = table.get(index);
+            if (((word >>> shift) & 0xF) == 0xF) {
+                return false;
+            }
+            if (table.compareAndSet(index, word, word + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Halves every counter. Concurrent increments racing with a reset may be lost, which only affects the estimate.
+     */
+    private void reset() {
+        additions.set(0);
+        for (int i = 0; i < table.length(); i++) {
+            long word = table.get(i);
+            table.compareAndSet(i, word, (word >>> 1) & RESET_MASK);
+        }
+    }
+
+    private static int rehash(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Selects one of the sixteen 4-bit counters of a word, using hash bits not consumed by the index.
+     */
+    private int counterShift(int h, int row) {
+        return ((h >>> 24) + row * 4 & 0xF) << 2;
+    }
+
+}
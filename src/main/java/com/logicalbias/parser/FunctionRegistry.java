@@ -0,0 +1,275 @@
+package com.logicalbias.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.logicalbias.parser.functions.AbsoluteValueFunction;
+import com.logicalbias.parser.functions.AverageFunction;
+import com.logicalbias.parser.functions.CeilingFunction;
+import com.logicalbias.parser.functions.FloorFunction;
+import com.logicalbias.parser.functions.Function;
+import com.logicalbias.parser.functions.IfFunction;
+import com.logicalbias.parser.functions.MaxFunction;
+import com.logicalbias.parser.functions.MinFunction;
+import com.logicalbias.parser.functions.RoundFunction;
+import com.logicalbias.parser.functions.SumFunction;
+import com.logicalbias.parser.operators.AdditionOperator;
+import com.logicalbias.parser.operators.DivisionOperator;
+import com.logicalbias.parser.operators.EqualOperator;
+import com.logicalbias.parser.operators.FactorialOperator;
+import com.logicalbias.parser.operators.GreaterThanOperator;
+import com.logicalbias.parser.operators.GreaterThanOrEqualOperator;
+import com.logicalbias.parser.operators.LessThanOperator;
+import com.logicalbias.parser.operators.LessThanOrEqualOperator;
+import com.logicalbias.parser.operators.LogicalAndOperator;
+import com.logicalbias.parser.operators.LogicalOrOperator;
+import com.logicalbias.parser.operators.ModulusOperator;
+import com.logicalbias.parser.operators.MultiplicationOperator;
+import com.logicalbias.parser.operators.NegationOperator;
+import com.logicalbias.parser.operators.NotEqualOperator;
+import com.logicalbias.parser.operators.Operator;
+import com.logicalbias.parser.operators.PowerOperator;
+import com.logicalbias.parser.operators.SubtractionOperator;
+
+/**
+ * The immutable set of functions, operators and constants known to an {@link ExpressionParser}.<br />
+ * Registries are created through a {@link Builder}, either from scratch or by extending {@link #defaults()},
+ * which allows domain specific {@link Function} and {@link Operator} implementations to be plugged in.
+ * Every name is resolved through a perfect-hash {@link SymbolTable}, so a registry may be shared by any
+ * number of parsers and threads without locking.<br />
+ * Names are case-insensitive: they are lower-cased on registration, as the {@link Tokenizer} does for identifiers.
+ */
+public final class FunctionRegistry {
+
+    private static final FunctionRegistry DEFAULTS = builder()
+            .function(new AbsoluteValueFunction("abs"))
+            .function(new MinFunction("min"))
+            .function(new MaxFunction("max"))
+            .function(new SumFunction("sum"))
+            .function(new AverageFunction("avg"))
+            .function(new FloorFunction("floor"))
+            .function(new CeilingFunction("ceil"))
+            .function(new RoundFunction("round"))
+            .function(new IfFunction("if"))
+            .operator(new AdditionOperator("+", 1))
+            .operator(new SubtractionOperator("-", 1))
+            .operator(new MultiplicationOperator("*", 3))
+            .operator(new DivisionOperator("/", 3))
+            .operator(new ModulusOperator("%", 3))
+            .operator(new PowerOperator("^", 5))
+            .operator(new FactorialOperator("!", 7))
+            .operator(new LessThanOperator("<", 0))
+            .operator(new LessThanOrEqualOperator("<=", 0))
+            .operator(new GreaterThanOperator(">", 0))
+            .operator(new GreaterThanOrEqualOperator(">=", 0))
+            .operator(new EqualOperator("==", -1))
+            .operator(new NotEqualOperator("!=", -1))
+            .operator(new LogicalAndOperator("&&", -2))
+            .operator(new LogicalOrOperator("||", -3))
+            .prefixOperator(new NegationOperator("-", 4))
+            .constant("pi", Math.PI)
+            .constant("e", Math.E)
+            .build();
+
+    private final Map<String, Function> functions;
+    private final Map<String, Operator> operators;
+    private final Map<String, Operator> prefixOperators;
+    private final Map<String, Double> constants;
+
+    private final SymbolTable<Function> functionTable;
+    private final SymbolTable<Operator> operatorTable;
+    private final SymbolTable<Operator> prefixOperatorTable;
+    private final SymbolTable<Double> constantTable;
+    private final int maxOperatorLength;
+
+    private FunctionRegistry(Builder builder) {
+        this.functions = new LinkedHashMap<>(builder.functions);
+        this.operators = new LinkedHashMap<>(builder.operators);
+        this.prefixOperators = new LinkedHashMap<>(builder.prefixOperators);
+        this.constants = new LinkedHashMap<>(builder.constants);
+
+        this.functionTable = new SymbolTable<>(functions);
+        this.operatorTable = new SymbolTable<>(operators);
+        this.prefixOperatorTable = new SymbolTable<>(prefixOperators);
+        this.constantTable = new SymbolTable<>(constants);
+        this.maxOperatorLength = Math.max(operatorTable.getMaxKeyLength(), prefixOperatorTable.getMaxKeyLength());
+    }
+
+    /**
+     * Returns the shared registry of built-in functions, operators and constants.
+     */
+    public static FunctionRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns a builder for an empty registry.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a builder initialized with the contents of this registry.
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.functions.putAll(functions);
+        builder.operators.putAll(operators);
+        builder.prefixOperators.putAll(prefixOperators);
+        builder.constants.putAll(constants);
+        return builder;
+    }
+
+    public Function getFunction(CharSequence name) {
+        return functionTable.get(name);
+    }
+
+    /**
+     * Returns the infix or postfix operator registered for the symbol, or null.
+     */
+    public Operator getOperator(CharSequence symbol) {
+        return operatorTable.get(symbol);
+    }
+
+    /**
+     * Returns the prefix (unary) operator registered for the symbol, or null.
+     */
+    public Operator getPrefixOperator(CharSequence symbol) {
+        return prefixOperatorTable.get(symbol);
+    }
+
+    /**
+     * Returns the value of the named constant, or null.
+     */
+    public Double getConstant(CharSequence name) {
+        return constantTable.get(name);
+    }
+
+    /**
+     * Returns the name under which the exact function instance is registered as the specified kind of
+     * symbol ({@link Token.Type#FUNCTION}, {@link Token.Type#OPERATOR} or {@link Token.Type#PREFIX_OPERATOR}), or null.
+     */
+    String nameOf(Function function, Token.Type kind) {
+        Map<String, ? extends Function> table;
+        switch (kind) {
+            case FUNCTION:
+                table = functions;
+                break;
+            case OPERATOR:
+                table = operators;
+                break;
+            case PREFIX_OPERATOR:
+                table = prefixOperators;
+                break;
+            default:
+                throw new IllegalArgumentException("Not a function kind: " + kind);
+        }
+
+        // Functions are almost always registered under their own token
+        String token = function.getToken().toLowerCase(Locale.ROOT);
+        if (table.get(token) == function) {
+            return token;
+        }
+        for (Map.Entry<String, ? extends Function> entry : table.entrySet()) {
+            if (entry.getValue() == function) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the length of the longest operator symbol found at the specified offset of the
+     * expression, or 0 if no registered operator starts there.
+     */
+    public int matchOperator(CharSequence expression, int start) {
+        int limit = Math.min(maxOperatorLength, expression.length() - start);
+        for (int length = limit; length > 0; length--) {
+            if (operatorTable.get(expression, start, start + length) != null
+                    || prefixOperatorTable.get(expression, start, start + length) != null) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FunctionRegistry [functions=" + functions.keySet() + ", operators=" + operators.keySet()
+                + ", prefixOperators=" + prefixOperators.keySet() + ", constants=" + constants.keySet() + "]";
+    }
+
+    /**
+     * Collects registrations for a new {@link FunctionRegistry}. Registering a name a second time replaces the earlier entry.
+     */
+    public static final class Builder {
+
+        private final Map<String, Function> functions = new LinkedHashMap<>();
+        private final Map<String, Operator> operators = new LinkedHashMap<>();
+        private final Map<String, Operator> prefixOperators = new LinkedHashMap<>();
+        private final Map<String, Double> constants = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Registers a function under its own token.
+         */
+        public Builder function(Function function) {
+            return function(function.getToken(), function);
+        }
+
+        public Builder function(String name, Function function) {
+            functions.put(normalize(name), function);
+            return this;
+        }
+
+        /**
+         * Registers an infix (binary) or postfix (unary) operator under its own token.
+         */
+        public Builder operator(Operator operator) {
+            return operator(operator.getToken(), operator);
+        }
+
+        public Builder operator(String symbol, Operator operator) {
+            operators.put(normalize(symbol), operator);
+            return this;
+        }
+
+        /**
+         * Registers a prefix (unary) operator under its own token. A symbol may be registered both as
+         * a prefix and as an infix operator, as '-' is; the parser chooses based on its position.
+         */
+        public Builder prefixOperator(Operator operator) {
+            return prefixOperator(operator.getToken(), operator);
+        }
+
+        public Builder prefixOperator(String symbol, Operator operator) {
+            if (operator.getNumberOfArguments() != 1) {
+                throw new IllegalArgumentException("Prefix operator " + symbol + " must take exactly one argument");
+            }
+            prefixOperators.put(normalize(symbol), operator);
+            return this;
+        }
+
+        public Builder constant(String name, double value) {
+            constants.put(normalize(name), value);
+            return this;
+        }
+
+        public FunctionRegistry build() {
+            return new FunctionRegistry(this);
+        }
+
+        private static String normalize(String name) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("Registered names must not be empty");
+            }
+            return name.toLowerCase(Locale.ROOT);
+        }
+
+    }
+
+}
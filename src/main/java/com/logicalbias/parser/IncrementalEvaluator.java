@@ -0,0 +1,297 @@
+package com.logicalbias.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * A stateful evaluator of a {@link CompiledExpression} which remembers the value of every intermediate
+ * result and, when only some variables change, recomputes just the results depending on them.<br />
+ * The instruction stream is resolved once into a dependency graph whose nodes are numbered in evaluation
+ * order (shared subexpressions are a single node). For each variable the nodes on the paths from its
+ * references to the root are precomputed, so changing a single variable of a wide expression costs work
+ * proportional to the depth of the expression rather than its size.<br />
+ * Results depending on an {@link Function#isPure() impure} function are recomputed on every evaluation.
+ * The branches of {@code &&}, {@code ||} and {@code if} have no fixed dependencies, so each of these functions is
+ * a single node (a {@link JumpRegion}) depending on its first argument and on every variable and shared result its
+ * branches read, and it is recomputed by interpreting just its own instructions, taking only the branches needed.
+ * An evaluator holds the current variable values, so it is not thread-safe; use one evaluator per thread.
+ */
+public final class IncrementalEvaluator {
+
+    private final CompiledExpression expression;
+    private final double[] constants;
+    private final Function[] functions;
+    private final int[] argumentCounts;
+
+    // Nodes are indexed by the position of the instruction that produces them
+    private final int[] instructions;
+    private final int[][] arguments;
+    private final int root;
+    private final JumpRegion[] regions;
+
+    // The nodes to recompute, in ascending order, when a variable changes and on every evaluation
+    private final int[][] affected;
+    private final int[] volatileNodes;
+
+    private final double[] inputs;
+    private final double[] values;
+    private final double[] argumentValues;
+    private final double[] frame;
+
+    private final boolean[] queued;
+    private final int[] pending;
+    private int pendingCount;
+    private int recomputedCount;
+
+    IncrementalEvaluator(CompiledExpression expression) {
+        this.expression = expression;
+        this.constants = expression.constants();
+        this.functions = expression.functions();
+        this.argumentCounts = expression.argumentCounts();
+        this.instructions = expression.instructions();
+
+        int size = instructions.length;
+        this.arguments = new int[size][];
+        this.values = new double[size];
+        this.queued = new boolean[size];
+        this.pending = new int[size];
+        this.inputs = new double[expression.getVariableCount()];
+        this.regions = JumpRegion.find(expression);
+        this.frame = new double[expression.getFrameSize()];
+
+        List<List<Integer>> parents = new ArrayList<>(size);
+        List<List<Integer>> references = new ArrayList<>(inputs.length);
+        for (int i = 0; i < size; i++) {
+            parents.add(new ArrayList<>(1));
+        }
+        for (int slot = 0; slot < inputs.length; slot++) {
+            references.add(new ArrayList<>());
+        }
+
+        // Simulate the operand stack with node indexes in place of values to discover each node's arguments
+        int[] stack = new int[Math.max(1, expression.getMaxStackDepth())];
+        int[] temporaries = new int[expression.getTemporaryCount()];
+        List<Integer> impure = new ArrayList<>();
+        int maxArity = 0;
+        int top = 0;
+
+        for (int i = 0; i < size; i++) {
+            JumpRegion region = regions[i];
+            if (region != null) {
+                // The region replaces its first argument on top of the stack, reading the temporaries stored before it
+                arguments[i] = new int[1 + region.temporaries.length];
+                arguments[i][0] = stack[top - 1];
+                for (int t = 0; t < region.temporaries.length; t++) {
+                    arguments[i][1 + t] = temporaries[region.temporaries[t]];
+                }
+                for (int argument : arguments[i]) {
+                    parents.get(argument).add(i);
+                }
+                for (int slot : region.variables) {
+                    references.get(slot).add(i);
+                }
+                if (!region.pure) {
+                    impure.add(i);
+                }
+                stack[top - 1] = i;
+                i = region.end - 1;
+                continue;
+            }
+
+            int operand = CompiledExpression.operand(instructions[i]);
+            switch (CompiledExpression.opcode(instructions[i])) {
+                case CompiledExpression.OP_VARIABLE:
+                    references.get(operand).add(i);
+                    stack[top++] = i;
+                    break;
+                case CompiledExpression.OP_CONSTANT:
+                    stack[top++] = i;
+                    break;
+                case CompiledExpression.OP_FUNCTION:
+                    Function function = functions[operand];
+                    int numArgs = argumentCounts[operand];
+                    maxArity = Math.max(maxArity, numArgs);
+                    top -= numArgs;
+                    arguments[i] = Arrays.copyOfRange(stack, top, top + numArgs);
+                    for (int argument : arguments[i]) {
+                        parents.get(argument).add(i);
+                    }
+                    if (!function.isPure()) {
+                        impure.add(i);
+                    }
+                    stack[top++] = i;
+                    break;
+                case CompiledExpression.OP_STORE:
+                    temporaries[operand] = stack[top - 1];
+                    break;
+                case CompiledExpression.OP_LOAD:
+                    stack[top++] = temporaries[operand];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode in compiled expression: " + CompiledExpression.opcode(instructions[i]));
+            }
+        }
+        this.root = stack[0];
+        this.argumentValues = new double[maxArity];
+
+        this.affected = new int[inputs.length][];
+        for (int slot = 0; slot < inputs.length; slot++) {
+            affected[slot] = ancestors(references.get(slot), parents);
+        }
+        this.volatileNodes = ancestors(impure, parents);
+
+        // The first evaluation computes every node once, so that later evaluations only need to propagate changes.
+        // Nothing is computed before then, since no variable has been set and a function may fail for the defaults.
+        for (int i = 0; i < size; i++) {
+            if (producesValue(i)) {
+                queued[i] = true;
+                pending[pendingCount++] = i;
+            }
+            if (regions[i] != null) {
+                i = regions[i].end - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the specified nodes together with every node depending on them, in ascending (evaluation) order.
+     */
+    private static int[] ancestors(List<Integer> nodes, List<List<Integer>> parents) {
+        boolean[] seen = new boolean[parents.size()];
+        int[] pending = new int[parents.size()];
+        int count = 0;
+        for (int node : nodes) {
+            if (!seen[node]) {
+                seen[node] = true;
+                pending[count++] = node;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            for (int parent : parents.get(pending[i])) {
+                if (!seen[parent]) {
+                    seen[parent] = true;
+                    pending[count++] = parent;
+                }
+            }
+        }
+
+        int[] ancestors = Arrays.copyOf(pending, count);
+        Arrays.sort(ancestors);
+        return ancestors;
+    }
+
+    private boolean producesValue(int node) {
+        int opcode = CompiledExpression.opcode(instructions[node]);
+        return opcode != CompiledExpression.OP_STORE && opcode != CompiledExpression.OP_LOAD;
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Sets the value of the variable at the slot, marking the results depending on it for recomputation
+     * if the value differs from the current one.
+     */
+    public IncrementalEvaluator set(int slot, double value) {
+        if (Double.doubleToRawLongBits(inputs[slot]) == Double.doubleToRawLongBits(value)) {
+            return this;
+        }
+        inputs[slot] = value;
+        enqueue(affected[slot]);
+        return this;
+    }
+
+    public IncrementalEvaluator set(String name, double value) {
+        int slot = expression.getVariableIndex(name);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Unknown variable: " + name);
+        }
+        return set(slot, value);
+    }
+
+    public double get(int slot) {
+        return inputs[slot];
+    }
+
+    /**
+     * Returns the value of the expression for the current variable values, recomputing only the
+     * results affected by variables changed since the previous evaluation.
+     */
+    public double evaluate() {
+        enqueue(volatileNodes);
+        if (pendingCount > 1) {
+            Arrays.sort(pending, 0, pendingCount);
+        }
+
+        for (int i = 0; i < pendingCount; i++) {
+            int node = pending[i];
+            queued[node] = false;
+            recompute(node);
+        }
+        recomputedCount = pendingCount;
+        pendingCount = 0;
+
+        return values[root];
+    }
+
+    /**
+     * Returns the number of intermediate results recomputed by the most recent evaluation.
+     */
+    public int getRecomputedCount() {
+        return recomputedCount;
+    }
+
+    private void enqueue(int[] nodes) {
+        for (int node : nodes) {
+            if (!queued[node]) {
+                queued[node] = true;
+                pending[pendingCount++] = node;
+            }
+        }
+    }
+
+    private void recompute(int node) {
+        JumpRegion region = regions[node];
+        if (region != null) {
+            // Interpret the region alone: its first argument is the only operand on the stack
+            int[] args = arguments[node];
+            frame[0] = values[args[0]];
+            for (int t = 0; t < region.temporaries.length; t++) {
+                frame[expression.getMaxStackDepth() + region.temporaries[t]] = values[args[1 + t]];
+            }
+            values[node] = expression.interpret(inputs, frame, region.start, region.end, 1);
+            return;
+        }
+
+        int operand = CompiledExpression.operand(instructions[node]);
+        switch (CompiledExpression.opcode(instructions[node])) {
+            case CompiledExpression.OP_CONSTANT:
+                values[node] = constants[operand];
+                break;
+            case CompiledExpression.OP_VARIABLE:
+                values[node] = inputs[operand];
+                break;
+            default:
+                Function function = functions[operand];
+                int[] args = arguments[node];
+                if (args.length == 1) {
+                    values[node] = function.apply1(values[args[0]]);
+                }
+                else if (args.length == 2) {
+                    values[node] = function.apply2(values[args[0]], values[args[1]]);
+                }
+                else {
+                    for (int i = 0; i < args.length; i++) {
+                        argumentValues[i] = values[args[i]];
+                    }
+                    values[node] = function.apply(argumentValues, 0, args.length);
+                }
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.logicalbias.parser;
+
+import com.logicalbias.parser.functions.AbsoluteValueFunction;
+import com.logicalbias.parser.functions.AverageFunction;
+import com.logicalbias.parser.functions.CeilingFunction;
+import com.logicalbias.parser.functions.FloorFunction;
+import com.logicalbias.parser.functions.Function;
+import com.logicalbias.parser.functions.IfFunction;
+import com.logicalbias.parser.functions.MaxFunction;
+import com.logicalbias.parser.functions.MinFunction;
+import com.logicalbias.parser.functions.RoundFunction;
+import com.logicalbias.parser.functions.SumFunction;
+import com.logicalbias.parser.operators.AdditionOperator;
+import com.logicalbias.parser.operators.DivisionOperator;
+import com.logicalbias.parser.operators.EqualOperator;
+import com.logicalbias.parser.operators.FactorialOperator;
+import com.logicalbias.parser.operators.GreaterThanOperator;
+import com.logicalbias.parser.operators.GreaterThanOrEqualOperator;
+import com.logicalbias.parser.operators.LessThanOperator;
+import com.logicalbias.parser.operators.LessThanOrEqualOperator;
+import com.logicalbias.parser.operators.LogicalAndOperator;
+import com.logicalbias.parser.operators.LogicalOrOperator;
+import com.logicalbias.parser.operators.ModulusOperator;
+import com.logicalbias.parser.operators.MultiplicationOperator;
+import com.logicalbias.parser.operators.NegationOperator;
+import com.logicalbias.parser.operators.NotEqualOperator;
+import com.logicalbias.parser.operators.PowerOfTwoDivisionOperator;
+import com.logicalbias.parser.operators.PowerOfTwoModulusOperator;
+import com.logicalbias.parser.operators.PowerOperator;
+import com.logicalbias.parser.operators.SubtractionOperator;
+
+/**
+ * The built-in functions whose semantics the evaluation backends know and may implement inline,
+ * rather than calling through {@link Function#apply(double...)}.<br />
+ * Only the exact built-in classes are recognized since a subclass may override their behaviour.
+ */
+enum Intrinsic {
+
+    ADD, SUBTRACT, MULTIPLY, DIVIDE, MODULUS, POWER, NEGATE, FACTORIAL, ABS, FLOOR, CEIL, ROUND,
+    // Variadic
+    MIN, MAX, SUM, AVERAGE,
+    LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL,
+    // Lazily evaluated: compiled into jump instructions rather than called
+    AND, OR, IF,
+    NONE;
+
+    /**
+     * Returns true if this function's arguments, other than the first, are only evaluated when needed.
+     */
+    boolean isLazy() {
+        return this == AND || this == OR || this == IF;
+    }
+
+    static Intrinsic of(Function function) {
+        Class<?> type = function.getClass();
+        if (type == AdditionOperator.class) {
+            return ADD;
+        }
+        if (type == SubtractionOperator.class) {
+            return SUBTRACT;
+        }
+        if (type == MultiplicationOperator.class) {
+            return MULTIPLY;
+        }
+        // The optimizer's specializations keep the semantics of the operator they specialize
+        if (type == DivisionOperator.class || type == PowerOfTwoDivisionOperator.class) {
+            return DIVIDE;
+        }
+        if (type == ModulusOperator.class || type == PowerOfTwoModulusOperator.class) {
+            return MODULUS;
+        }
+        if (type == PowerOperator.class) {
+            return POWER;
+        }
+        if (type == NegationOperator.class) {
+            return NEGATE;
+        }
+        if (type == FactorialOperator.class) {
+            return FACTORIAL;
+        }
+        if (type == MinFunction.class) {
+            return MIN;
+        }
+        if (type == MaxFunction.class) {
+            return MAX;
+        }
+        if (type == SumFunction.class) {
+            return SUM;
+        }
+        if (type == AverageFunction.class) {
+            return AVERAGE;
+        }
+        if (type == AbsoluteValueFunction.class) {
+            return ABS;
+        }
+        if (type == FloorFunction.class) {
+            return FLOOR;
+        }
+        if (type == CeilingFunction.class) {
+            return CEIL;
+        }
+        if (type == RoundFunction.class) {
+            return ROUND;
+        }
+        if (type == LessThanOperator.class) {
+            return LESS;
+        }
+        if (type == LessThanOrEqualOperator.class) {
+            return LESS_EQUAL;
+        }
+        if (type == GreaterThanOperator.class) {
+            return GREATER;
+        }
+        if (type == GreaterThanOrEqualOperator.class) {
+            return GREATER_EQUAL;
+        }
+        if (type == EqualOperator.class) {
+            return EQUAL;
+        }
+        if (type == NotEqualOperator.class) {
+            return NOT_EQUAL;
+        }
+        if (type == LogicalAndOperator.class) {
+            return AND;
+        }
+        if (type == LogicalOrOperator.class) {
+            return OR;
+        }
+        if (type == IfFunction.class) {
+            return IF;
+        }
+        return NONE;
+    }
+
+}
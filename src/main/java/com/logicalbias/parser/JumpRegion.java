@@ -0,0 +1,84 @@
+package com.logicalbias.parser;
+
+import java.util.BitSet;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * A run of instructions of a {@link CompiledExpression} holding the control flow of a lazy function
+ * ({@code &&}, {@code ||} or {@code if}), which the straight-line evaluators treat as a single function.<br />
+ * A region starts at the jump consuming the lazy function's first argument and ends where its value is complete,
+ * so it replaces the operand on top of the stack with another, like a unary function. Everything within it is
+ * conditionally evaluated, including any nested lazy function, and a temporary stored within it is never loaded
+ * after it (see {@link ProgramBuilder}). Its other inputs are the variables it reads and the temporaries stored
+ * before it which it loads, and it is {@link Function#isPure() pure} if every function it calls is.
+ */
+final class JumpRegion {
+
+    private static final int[] NONE = new int[0];
+
+    final int start;
+    final int end;
+    final int[] variables;
+    final int[] temporaries;
+    final boolean pure;
+
+    private JumpRegion(int start, int end, int[] variables, int[] temporaries, boolean pure) {
+        this.start = start;
+        this.end = end;
+        this.variables = variables;
+        this.temporaries = temporaries;
+        this.pure = pure;
+    }
+
+    /**
+     * Returns the region starting at each instruction of the expression, or null for an instruction starting none.
+     * Regions do not overlap, and an instruction within one starts none, even if it is a jump.
+     */
+    static JumpRegion[] find(CompiledExpression expression) {
+        int[] instructions = expression.instructions();
+        Function[] functions = expression.functions();
+        JumpRegion[] regions = new JumpRegion[instructions.length];
+
+        for (int start = 0; start < instructions.length; start++) {
+            if (!CompiledExpression.isJump(CompiledExpression.opcode(instructions[start]))) {
+                continue;
+            }
+
+            // Every jump is forward, and the region extends to the furthest target of the jumps within it
+            int end = start + 1;
+            BitSet variables = new BitSet();
+            BitSet stored = new BitSet();
+            BitSet loaded = new BitSet();
+            boolean pure = true;
+            for (int pc = start; pc < end; pc++) {
+                int opcode = CompiledExpression.opcode(instructions[pc]);
+                int operand = CompiledExpression.operand(instructions[pc]);
+                if (CompiledExpression.isJump(opcode)) {
+                    end = Math.max(end, operand);
+                }
+                else if (opcode == CompiledExpression.OP_VARIABLE) {
+                    variables.set(operand);
+                }
+                else if (opcode == CompiledExpression.OP_STORE) {
+                    stored.set(operand);
+                }
+                else if (opcode == CompiledExpression.OP_LOAD && !stored.get(operand)) {
+                    loaded.set(operand);
+                }
+                else if (opcode == CompiledExpression.OP_FUNCTION) {
+                    pure &= functions[operand].isPure();
+                }
+            }
+
+            regions[start] = new JumpRegion(start, end, toArray(variables), toArray(loaded), pure);
+            start = end - 1;
+        }
+        return regions;
+    }
+
+    private static int[] toArray(BitSet bits) {
+        return bits.isEmpty() ? NONE : bits.stream().toArray();
+    }
+
+}
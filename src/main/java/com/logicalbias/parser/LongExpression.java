@@ -0,0 +1,324 @@
+package com.logicalbias.parser;
+
+import java.util.Arrays;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * An integral {@link CompiledExpression} evaluated on a primitive {@code long} operand stack, obtained from
+ * {@link CompiledExpression#toLongExpression()}.<br />
+ * An expression is integral when every constant is an integer within the range of a {@code long} and every
+ * function is a built-in with integer semantics: {@code + - * / % ^ !}, unary minus, {@code abs}, {@code min},
+ * {@code max}, {@code sum}, {@code avg}, {@code floor}, {@code ceil} and {@code round} (the last three are the identity on integers),
+ * the comparisons and the lazily evaluated {@code &&}, {@code ||} and {@code if}.
+ * Results are exact beyond 2^53, and {@code !} and {@code %} are computed in integer arithmetic.<br />
+ * An operation whose result is not a {@code long} is detected rather than silently wrapped or rounded:
+ * overflow (as by {@link Math#multiplyExact(long, long)}), division (or an average) with a remainder, a negative power,
+ * the factorial of a negative number, and modulus or division by zero. {@link #evaluateExact(long...)} reports these by throwing an
+ * {@link ArithmeticException}, while {@link #evaluate(long...)} falls back to evaluating the expression in
+ * {@code double} arithmetic. Instances are immutable and thread-safe.<br />
+ * Note that the optimizer folds constant subexpressions in {@code double} arithmetic at compile time; compile with
+ * optimization disabled if constant subexpressions (such as {@code 3^39}) may exceed 2^53.
+ */
+public final class LongExpression {
+
+    private static final long[] FACTORIALS = new long[21];
+
+    static {
+        FACTORIALS[0] = 1;
+        for (int i = 1; i < FACTORIALS.length; i++) {
+            FACTORIALS[i] = FACTORIALS[i - 1] * i;
+        }
+    }
+
+    // Per-thread scratch stack used when evaluating; grown on demand
+    private static final ThreadLocal<Scratch> scratchStacks = ThreadLocal.withInitial(Scratch::new);
+
+    private final CompiledExpression expression;
+    private final int[] instructions;
+    private final long[] constants;
+    private final Intrinsic[] intrinsics;
+    private final int[] argumentCounts;
+    private final int maxStackDepth;
+
+    private LongExpression(CompiledExpression expression, long[] constants, Intrinsic[] intrinsics) {
+        this.expression = expression;
+        this.instructions = expression.instructions();
+        this.constants = constants;
+        this.intrinsics = intrinsics;
+        this.argumentCounts = expression.argumentCounts();
+        this.maxStackDepth = expression.getMaxStackDepth();
+    }
+
+    /**
+     * Returns the integral form of the expression, or null if it is not integral.
+     */
+    static LongExpression of(CompiledExpression expression) {
+        double[] values = expression.constants();
+        long[] constants = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            // 2^63 itself rounds to Long.MAX_VALUE when cast, so compare against it exclusively
+            if (values[i] != Math.rint(values[i]) || values[i] < -0x1p63 || values[i] >= 0x1p63) {
+                return null;
+            }
+            constants[i] = (long) values[i];
+        }
+
+        Function[] functions = expression.functions();
+        Intrinsic[] intrinsics = new Intrinsic[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            intrinsics[i] = Intrinsic.of(functions[i]);
+            // Lazy functions are compiled into jumps and only reach the function table when called eagerly
+            if (intrinsics[i] == Intrinsic.NONE || intrinsics[i].isLazy()) {
+                return null;
+            }
+        }
+        return new LongExpression(expression, constants, intrinsics);
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluates the expression exactly with each variable bound positionally.
+     * @throws ArithmeticException if an intermediate result is not a {@code long}
+     */
+    public long evaluateExact(long... variables) {
+        if (variables.length < expression.getVariableCount()) {
+            throw new IllegalArgumentException("Expected " + expression.getVariableCount() + " variable value(s) "
+                    + Arrays.toString(expression.getVariableNames()) + " but received " + variables.length);
+        }
+
+        // A nested evaluation on the same thread finds the scratch stack in use and allocates its own
+        Scratch scratch = scratchStacks.get();
+        if (scratch.inUse) {
+            return execute(variables, new long[expression.getFrameSize()]);
+        }
+        if (scratch.stack.length < expression.getFrameSize()) {
+            scratch.stack = new long[expression.getFrameSize()];
+        }
+
+        scratch.inUse = true;
+        try {
+            return execute(variables, scratch.stack);
+        }
+        finally {
+            scratch.inUse = false;
+        }
+    }
+
+    private long execute(long[] variables, long[] stack) {
+        int top = 0;
+        for (int pc = 0; pc < instructions.length; pc++) {
+            int instruction = instructions[pc];
+            int operand = CompiledExpression.operand(instruction);
+            switch (CompiledExpression.opcode(instruction)) {
+                case CompiledExpression.OP_CONSTANT:
+                    stack[top++] = constants[operand];
+                    break;
+                case CompiledExpression.OP_VARIABLE:
+                    stack[top++] = variables[operand];
+                    break;
+                case CompiledExpression.OP_FUNCTION:
+                    Intrinsic intrinsic = intrinsics[operand];
+                    int numArgs = argumentCounts[operand];
+                    if (numArgs == 1) {
+                        stack[top - 1] = apply1(intrinsic, stack[top - 1]);
+                    }
+                    else if (numArgs == 2) {
+                        top--;
+                        stack[top - 1] = apply2(intrinsic, stack[top - 1], stack[top]);
+                    }
+                    else {
+                        top -= numArgs;
+                        stack[top] = apply(intrinsic, stack, top, numArgs);
+                        top++;
+                    }
+                    break;
+                case CompiledExpression.OP_STORE:
+                    stack[maxStackDepth + operand] = stack[top - 1];
+                    break;
+                case CompiledExpression.OP_LOAD:
+                    stack[top++] = stack[maxStackDepth + operand];
+                    break;
+                case CompiledExpression.OP_JUMP:
+                    pc = operand - 1;
+                    break;
+                case CompiledExpression.OP_JUMP_IF_FALSE:
+                    if (stack[--top] == 0) {
+                        pc = operand - 1;
+                    }
+                    break;
+                case CompiledExpression.OP_JUMP_IF_TRUE:
+                    if (stack[--top] != 0) {
+                        pc = operand - 1;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode in compiled expression: " + CompiledExpression.opcode(instruction));
+            }
+        }
+
+        return stack[0];
+    }
+
+    /**
+     * Evaluates the expression with each variable bound positionally, exactly if possible, and otherwise
+     * (see {@link #evaluateExact(long...)}) by the equivalent {@code double} evaluation.
+     */
+    public double evaluate(long... variables) {
+        try {
+            return evaluateExact(variables);
+        }
+        catch (ArithmeticException e) {
+            double[] values = new double[variables.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = variables[i];
+            }
+            return expression.evaluate(values);
+        }
+    }
+
+    private static long apply1(Intrinsic intrinsic, long a) {
+        switch (intrinsic) {
+            case NEGATE:
+                return Math.negateExact(a);
+            case FACTORIAL:
+                return factorial(a);
+            case ABS:
+                if (a == Long.MIN_VALUE) {
+                    throw new ArithmeticException("long overflow");
+                }
+                return Math.abs(a);
+            default:
+                // floor, ceil and round of an integer, and the variadic functions of a single argument
+                return a;
+        }
+    }
+
+    private static long apply2(Intrinsic intrinsic, long a, long b) {
+        switch (intrinsic) {
+            case ADD:
+                return Math.addExact(a, b);
+            case SUBTRACT:
+                return Math.subtractExact(a, b);
+            case MULTIPLY:
+                return Math.multiplyExact(a, b);
+            case DIVIDE:
+                if (b == 0 || a % b != 0 || (a == Long.MIN_VALUE && b == -1)) {
+                    throw new ArithmeticException("Inexact integer division: " + a + " / " + b);
+                }
+                return a / b;
+            case MODULUS:
+                if (b == 0) {
+                    throw new ArithmeticException("Integer modulus by zero");
+                }
+                return a % b;
+            case POWER:
+                return power(a, b);
+            case MIN:
+                return Math.min(a, b);
+            case MAX:
+                return Math.max(a, b);
+            case SUM:
+                return Math.addExact(a, b);
+            case AVERAGE:
+                return average(Math.addExact(a, b), 2);
+            case LESS:
+                return a < b ? 1 : 0;
+            case LESS_EQUAL:
+                return a <= b ? 1 : 0;
+            case GREATER:
+                return a > b ? 1 : 0;
+            case GREATER_EQUAL:
+                return a >= b ? 1 : 0;
+            case EQUAL:
+                return a == b ? 1 : 0;
+            case NOT_EQUAL:
+                return a != b ? 1 : 0;
+            default:
+                throw new IllegalStateException("Not a binary integer operation: " + intrinsic);
+        }
+    }
+
+    /**
+     * Applies a variadic function to the arguments starting at {@code stack[base]}.
+     */
+    private static long apply(Intrinsic intrinsic, long[] stack, int base, int numArgs) {
+        long value = stack[base];
+        for (int i = base + 1; i < base + numArgs; i++) {
+            switch (intrinsic) {
+                case MIN:
+                    value = Math.min(value, stack[i]);
+                    break;
+                case MAX:
+                    value = Math.max(value, stack[i]);
+                    break;
+                case SUM:
+                case AVERAGE:
+                    value = Math.addExact(value, stack[i]);
+                    break;
+                default:
+                    throw new IllegalStateException("Not a variadic integer operation: " + intrinsic);
+            }
+        }
+        return intrinsic == Intrinsic.AVERAGE ? average(value, numArgs) : value;
+    }
+
+    private static long average(long sum, int count) {
+        if (sum % count != 0) {
+            throw new ArithmeticException("Inexact integer average: " + sum + " / " + count);
+        }
+        return sum / count;
+    }
+
+    /**
+     * Looks up n! from a table of every factorial within the range of a {@code long} (0! through 20!).
+     */
+    private static long factorial(long n) {
+        if (n < 0) {
+            throw new ArithmeticException("Factorial of a negative integer: " + n);
+        }
+        if (n >= FACTORIALS.length) {
+            throw new ArithmeticException("long overflow");
+        }
+        return FACTORIALS[(int) n];
+    }
+
+    /**
+     * Exponentiation by squaring.
+     */
+    private static long power(long base, long exponent) {
+        if (exponent < 0) {
+            throw new ArithmeticException("Negative integer power: " + base + " ^ " + exponent);
+        }
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = Math.multiplyExact(result, base);
+            }
+            exponent >>= 1;
+            if (exponent > 0) {
+                base = Math.multiplyExact(base, base);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "LongExpression [expression=" + expression.getExpression() + "]";
+    }
+
+    /**
+     * The scratch stack of a thread, and whether an evaluation on that thread is using it.
+     */
+    private static final class Scratch {
+
+        long[] stack = new long[32];
+        boolean inUse;
+
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.logicalbias.parser;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * A node of the expression tree built from the RPN token queue: a constant, a variable, or a function
+ * (or operator) applied to child nodes. Nodes are immutable.<br />
+ * Nodes compare equal structurally, by value, variable name, function instance and child <em>identity</em>, so that
+ * interning each node as it is built turns the tree into a DAG in which equal subexpressions are shared.
+ * Applications of impure functions are only ever equal to themselves and are never shared.<br />
+ * Traversals are iterative so that very long operator chains, which produce deep trees, cannot overflow the call stack.
+ */
+final class Node {
+
+    static final int CONSTANT = CompiledExpression.OP_CONSTANT;
+    static final int VARIABLE = CompiledExpression.OP_VARIABLE;
+    static final int FUNCTION = CompiledExpression.OP_FUNCTION;
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    final int kind;
+    final double value;
+    final String variable;
+    final Function function;
+    final Node[] children;
+
+    private Node(int kind, double value, String variable, Function function, Node[] children) {
+        this.kind = kind;
+        this.value = value;
+        this.variable = variable;
+        this.function = function;
+        this.children = children;
+    }
+
+    static Node constant(double value) {
+        return new Node(CONSTANT, value, null, null, NO_CHILDREN);
+    }
+
+    static Node variable(String name) {
+        return new Node(VARIABLE, Double.NaN, name, null, NO_CHILDREN);
+    }
+
+    static Node function(Function function, Node... children) {
+        return new Node(FUNCTION, Double.NaN, null, function, children);
+    }
+
+    boolean isConstant() {
+        return kind == CONSTANT;
+    }
+
+    /**
+     * Returns true if this is a constant node holding exactly the specified value.
+     */
+    boolean isConstant(double expected) {
+        return kind == CONSTANT && Double.compare(value, expected) == 0;
+    }
+
+    /**
+     * Returns the number of parents referencing each distinct node reachable from this one (this node maps to zero).
+     * A node referenced more than once is a common subexpression.
+     */
+    Map<Node, Integer> references() {
+        Map<Node, Integer> references = new IdentityHashMap<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        references.put(this, 0);
+        pending.push(this);
+
+        while (!pending.isEmpty()) {
+            for (Node child : pending.pop().children) {
+                Integer count = references.get(child);
+                if (count == null) {
+                    pending.push(child);
+                    count = 0;
+                }
+                references.put(child, count + 1);
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Returns the number of distinct nodes reachable from this one.
+     */
+    int size() {
+        return references().size();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Node)) {
+            return false;
+        }
+
+        Node other = (Node) obj;
+        if (kind != other.kind) {
+            return false;
+        }
+        switch (kind) {
+            case CONSTANT:
+                return Double.doubleToRawLongBits(value) == Double.doubleToRawLongBits(other.value);
+            case VARIABLE:
+                return variable.equals(other.variable);
+            default:
+                if (function != other.function || !function.isPure() || children.length != other.children.length) {
+                    return false;
+                }
+                for (int i = 0; i < children.length; i++) {
+                    if (children[i] != other.children[i]) {
+                        return false;
+                    }
+                }
+                return true;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        switch (kind) {
+            case CONSTANT:
+                return Long.hashCode(Double.doubleToRawLongBits(value));
+            case VARIABLE:
+                return variable.hashCode();
+            default:
+                int hash = System.identityHashCode(function);
+                for (Node child : children) {
+                    hash = hash * 31 + System.identityHashCode(child);
+                }
+                return hash;
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case CONSTANT:
+                return String.valueOf(value);
+            case VARIABLE:
+                return variable;
+            default:
+                StringBuilder builder = new StringBuilder(function.getToken()).append('(');
+                for (int i = 0; i < children.length; i++) {
+                    builder.append(i > 0 ? ", " : "").append(children[i]);
+                }
+                return builder.append(')').toString();
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.logicalbias.parser;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates a {@link CompiledExpression} over large column batches in parallel on a {@link ForkJoinPool}.<br />
+ * The row range is split recursively on {@link BatchEvaluator#CHUNK_SIZE} boundaries. Each task writes a
+ * disjoint, chunk-aligned range of the output, so workers never write the same region of the array.
+ * Every worker thread evaluates with its own {@link BatchEvaluator}, whose scratch buffers are kept and
+ * reused for the lifetime of this object.<br />
+ * Instances are thread-safe and intended to be reused for repeated batches of the same expression.
+ */
+public final class ParallelEvaluator {
+
+    /** Default minimum number of rows handled by a single task */
+    public static final int DEFAULT_MIN_ROWS_PER_TASK = BatchEvaluator.CHUNK_SIZE * 16;
+
+    private final CompiledExpression expression;
+    private final ForkJoinPool pool;
+    private final int minRowsPerTask;
+    private final ThreadLocal<BatchEvaluator> evaluators;
+
+    /**
+     * Creates an evaluator running on the common fork/join pool.
+     */
+    public ParallelEvaluator(CompiledExpression expression) {
+        this(expression, ForkJoinPool.commonPool());
+    }
+
+    public ParallelEvaluator(CompiledExpression expression, ForkJoinPool pool) {
+        this(expression, pool, DEFAULT_MIN_ROWS_PER_TASK);
+    }
+
+    /**
+     * @param minRowsPerTask rows below which a range is evaluated by a single task (rounded up to a whole chunk)
+     */
+    public ParallelEvaluator(CompiledExpression expression, ForkJoinPool pool, int minRowsPerTask) {
+        if (minRowsPerTask < 1) {
+            throw new IllegalArgumentException("Minimum rows per task must be positive: " + minRowsPerTask);
+        }
+        this.expression = expression;
+        this.pool = pool;
+        this.minRowsPerTask = roundUpToChunk(minRowsPerTask);
+        this.evaluators = ThreadLocal.withInitial(expression::newBatchEvaluator);
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluates every row in parallel: {@code output[row]} is the value of the expression with the
+     * variable at slot {@code i} bound to {@code columns[i][row]}. Blocks until all rows are written.
+     */
+    public void evaluate(double[][] columns, double[] output) {
+        evaluate(columns, output, 0, output.length);
+    }
+
+    /**
+     * Evaluates the rows {@code [from, to)} in parallel, blocking until all of them are written.
+     */
+    public void evaluate(double[][] columns, double[] output, int from, int to) {
+        if (to - from <= minRowsPerTask) {
+            // Not worth forking; evaluate on the calling thread
+            evaluators.get().evaluate(columns, output, from, to);
+            return;
+        }
+
+        // Aim for several tasks per worker so that uneven progress can be balanced by work stealing
+        int rowsPerTask = Math.max(minRowsPerTask, roundUpToChunk((to - from) / (pool.getParallelism() * 4)));
+        pool.invoke(new EvaluationTask(columns, output, from, to, rowsPerTask));
+    }
+
+    private static int roundUpToChunk(int rows) {
+        int chunks = (rows + BatchEvaluator.CHUNK_SIZE - 1) / BatchEvaluator.CHUNK_SIZE;
+        return Math.max(1, chunks) * BatchEvaluator.CHUNK_SIZE;
+    }
+
+    private final class EvaluationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] columns;
+        private final double[] output;
+        private final int from;
+        private final int to;
+        private final int rowsPerTask;
+
+        EvaluationTask(double[][] columns, double[] output, int from, int to, int rowsPerTask) {
+            this.columns = columns;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.rowsPerTask = rowsPerTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rowsPerTask) {
+                evaluators.get().evaluate(columns, output, from, to);
+                return;
+            }
+
+            // Split on a chunk boundary (relative to the start of the range) so neither half straddles a chunk
+            int chunks = (to - from) / BatchEvaluator.CHUNK_SIZE;
+            int middle = from + Math.max(1, chunks / 2) * BatchEvaluator.CHUNK_SIZE;
+            invokeAll(new EvaluationTask(columns, output, from, middle, rowsPerTask),
+                    new EvaluationTask(columns, output, middle, to, rowsPerTask));
+        }
+
+    }
+
+}
@@ -0,0 +1,262 @@
+package com.logicalbias.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * Emits the instruction stream of a {@link CompiledExpression} from an expression tree, pooling constants
+ * and functions, computing the maximum operand stack depth and allocating temporary slots for common subexpressions.
+ */
+final class ProgramBuilder {
+
+    private final String expression;
+    private final List<String> variables;
+
+    private int[] instructions = new int[16];
+    private int size;
+    private final List<Double> constants = new ArrayList<>();
+    private final List<Function> functions = new ArrayList<>();
+    private final List<Integer> argumentCounts = new ArrayList<>();
+    private int depth;
+    private int maxDepth;
+    private int temporaryCount;
+
+    private Map<Node, Integer> references;
+    private Map<Node, Integer> temporaries;
+    // The nodes stored into temporaries within each enclosing conditional branch
+    private Deque<List<Node>> scopes;
+
+    /**
+     * @param variables the variable names in slot order
+     */
+    ProgramBuilder(String expression, List<String> variables) {
+        this.expression = expression;
+        this.variables = variables;
+    }
+
+    /**
+     * Emits the instructions evaluating the tree in post-order, leaving its value on the stack.<br />
+     * A function node shared by several parents (see {@link Node#references()}) is evaluated only the first time
+     * it is reached and its value stored into a temporary slot; every later reference loads that slot instead.<br />
+     * Lazy functions ({@code &&}, {@code ||}, {@code if}) are emitted as forward jumps around their conditionally
+     * evaluated arguments. A temporary stored within such a branch is forgotten when the branch ends, since
+     * the branch may not have been taken, so a later reference evaluates the subexpression again.
+     */
+    ProgramBuilder emit(Node tree) {
+        references = tree.references();
+        temporaries = new IdentityHashMap<>();
+        scopes = new ArrayDeque<>();
+        scopes.push(new ArrayList<>());
+
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(tree));
+
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            Node node = frame.node;
+            if (frame.nextChild < node.children.length) {
+                int index = frame.nextChild++;
+                if (isConditional(node, index)) {
+                    scopes.push(new ArrayList<>());
+                }
+
+                Integer temporary = temporaries.get(node.children[index]);
+                if (temporary != null) {
+                    add(CompiledExpression.OP_LOAD, temporary, 1);
+                    completeChild(frame, index);
+                }
+                else {
+                    frames.push(new Frame(node.children[index]));
+                }
+                continue;
+            }
+
+            frames.pop();
+            if (!isLazy(node)) {
+                emitNode(node);
+            }
+            if (node.kind == Node.FUNCTION && references.get(node) > 1) {
+                temporaries.put(node, temporaryCount);
+                scopes.peek().add(node);
+                add(CompiledExpression.OP_STORE, temporaryCount++, 0);
+            }
+            if (!frames.isEmpty()) {
+                completeChild(frames.peek(), frames.peek().nextChild - 1);
+            }
+        }
+        return this;
+    }
+
+    private static boolean isLazy(Node node) {
+        return node.kind == Node.FUNCTION && Intrinsic.of(node.function).isLazy();
+    }
+
+    /**
+     * Returns true if the child at the index is only evaluated depending on the preceding ones.
+     */
+    private static boolean isConditional(Node node, int index) {
+        return index > 0 && isLazy(node);
+    }
+
+    /**
+     * Called once the value of the child at the index has been emitted: closes its branch scope and
+     * emits the control flow of a lazy parent.
+     */
+    private void completeChild(Frame frame, int index) {
+        Node node = frame.node;
+        if (!isConditional(node, index) && !isLazy(node)) {
+            return;
+        }
+        if (isConditional(node, index)) {
+            for (Node stored : scopes.pop()) {
+                temporaries.remove(stored);
+            }
+        }
+
+        switch (Intrinsic.of(node.function)) {
+            case IF:
+                // condition; JUMP_IF_FALSE else; a; JUMP end; else: b; end:
+                if (index == 0) {
+                    frame.jump = add(CompiledExpression.OP_JUMP_IF_FALSE, 0, -1);
+                }
+                else if (index == 1) {
+                    frame.otherJump = add(CompiledExpression.OP_JUMP, 0, 0);
+                    patch(frame.jump);
+                    depth--;
+                }
+                else {
+                    patch(frame.otherJump);
+                }
+                break;
+            case AND:
+                // a; JUMP_IF_FALSE false; b; JUMP_IF_FALSE false; 1; JUMP end; false: 0; end:
+                writeShortCircuit(frame, index, CompiledExpression.OP_JUMP_IF_FALSE, 1.0, 0.0);
+                break;
+            default:
+                // a; JUMP_IF_TRUE true; b; JUMP_IF_TRUE true; 0; JUMP end; true: 1; end:
+                writeShortCircuit(frame, index, CompiledExpression.OP_JUMP_IF_TRUE, 0.0, 1.0);
+                break;
+        }
+    }
+
+    private void writeShortCircuit(Frame frame, int index, int jumpOpcode, double fallThrough, double jumped) {
+        if (index == 0) {
+            frame.jump = add(jumpOpcode, 0, -1);
+            return;
+        }
+
+        int second = add(jumpOpcode, 0, -1);
+        add(CompiledExpression.OP_CONSTANT, indexOf(constants, fallThrough), 1);
+        int end = add(CompiledExpression.OP_JUMP, 0, 0);
+        patch(frame.jump);
+        patch(second);
+        depth--;
+        add(CompiledExpression.OP_CONSTANT, indexOf(constants, jumped), 1);
+        patch(end);
+    }
+
+    /**
+     * Points the jump instruction at the index to the next instruction to be emitted.
+     */
+    private void patch(int jump) {
+        instructions[jump] = CompiledExpression.instruction(CompiledExpression.opcode(instructions[jump]), size);
+    }
+
+    private void emitNode(Node node) {
+        switch (node.kind) {
+            case Node.CONSTANT:
+                add(CompiledExpression.OP_CONSTANT, indexOf(constants, node.value), 1);
+                break;
+            case Node.VARIABLE:
+                int slot = variables.indexOf(node.variable);
+                if (slot < 0) {
+                    throw new IllegalStateException("Variable " + node.variable + " has no slot in " + variables);
+                }
+                add(CompiledExpression.OP_VARIABLE, slot, 1);
+                break;
+            default:
+                add(CompiledExpression.OP_FUNCTION, indexOfCall(node.function, node.children.length), 1 - node.children.length);
+                break;
+        }
+    }
+
+    /**
+     * Appends the instruction and returns its index.
+     */
+    private int add(int opcode, int operand, int stackEffect) {
+        if (size == instructions.length) {
+            instructions = Arrays.copyOf(instructions, size * 2);
+        }
+        instructions[size] = CompiledExpression.instruction(opcode, operand);
+        depth += stackEffect;
+        maxDepth = Math.max(maxDepth, depth);
+        return size++;
+    }
+
+    CompiledExpression build() {
+        double[] constantPool = new double[constants.size()];
+        for (int i = 0; i < constantPool.length; i++) {
+            constantPool[i] = constants.get(i);
+        }
+
+        int[] argumentCountPool = new int[argumentCounts.size()];
+        for (int i = 0; i < argumentCountPool.length; i++) {
+            argumentCountPool[i] = argumentCounts.get(i);
+        }
+
+        return new CompiledExpression(expression, Arrays.copyOf(instructions, size), constantPool,
+                functions.toArray(new Function[functions.size()]), argumentCountPool, variables.toArray(new String[variables.size()]), maxDepth, temporaryCount);
+    }
+
+    /**
+     * Returns the index of the value within the pool, appending it first if not already present.
+     */
+    private static <T> int indexOf(List<T> pool, T value) {
+        int index = pool.indexOf(value);
+        if (index < 0) {
+            index = pool.size();
+            pool.add(value);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the function table entry calling the exact function instance with the number of arguments,
+     * appending it first if not already present. Functions compare equal by token, which would conflate e.g.
+     * binary subtraction and unary negation, and a variadic function has an entry per number of arguments.
+     */
+    private int indexOfCall(Function function, int argumentCount) {
+        for (int i = 0; i < functions.size(); i++) {
+            if (functions.get(i) == function && argumentCounts.get(i) == argumentCount) {
+                return i;
+            }
+        }
+        functions.add(function);
+        argumentCounts.add(argumentCount);
+        return functions.size() - 1;
+    }
+
+    /**
+     * A node whose children are being emitted, with the pending jumps of a lazy function.
+     */
+    private static final class Frame {
+
+        final Node node;
+        int nextChild;
+        int jump;
+        int otherJump;
+
+        Frame(Node node) {
+            this.node = node;
+        }
+
+    }
+
+}
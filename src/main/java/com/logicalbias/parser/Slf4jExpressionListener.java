@@ -0,0 +1,62 @@
+package com.logicalbias.parser;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ExpressionListener} writing each event to an SLF4J logger at debug level (evaluations at trace level).
+ * Messages are only formatted when the corresponding level is enabled.
+ */
+public class Slf4jExpressionListener implements ExpressionListener {
+
+    private final Logger logger;
+
+    public Slf4jExpressionListener() {
+        this(LoggerFactory.getLogger(ExpressionParser.class));
+    }
+
+    public Slf4jExpressionListener(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void onParse(String expression, List<Token> rpnTokens, int tokenCount, long parseNanos) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Parsed [{}] into {} tokens in {} ns, RPN: {}", expression, tokenCount, parseNanos, rpnTokens);
+        }
+    }
+
+    @Override
+    public void onOptimize(String expression, int nodesBefore, int nodesAfter) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Simplified [{}] from {} to {} nodes", expression, nodesBefore, nodesAfter);
+        }
+    }
+
+    @Override
+    public void onCompile(CompiledExpression compiled, long compileNanos) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compiled [{}] in {} ns (bytecode: {})", compiled.getExpression(), compileNanos, compiled.isBytecode());
+        }
+    }
+
+    @Override
+    public void onEvaluate(CompiledExpression compiled, double value, long evaluateNanos) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("Evaluated [{}] = {} in {} ns", compiled.getExpression(), value, evaluateNanos);
+        }
+    }
+
+    @Override
+    public void onCacheHit(String expression) {
+        logger.trace("Cache hit for [{}]", expression);
+    }
+
+    @Override
+    public void onCacheMiss(String expression) {
+        logger.debug("Cache miss for [{}]", expression);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.logicalbias.parser;
+
+import java.util.Map;
+
+/**
+ * An immutable name to value table backed by a perfect hash: the table size and hash seed are chosen
+ * when the table is built so that no two names share a slot. A lookup therefore costs one hash over the
+ * characters, one array read and one comparison, and works on any character range without creating a String.
+ * Instances are safe to share between threads.
+ */
+final class SymbolTable<T> {
+
+    private static final int MAX_SEED_ATTEMPTS = 256;
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final int seed;
+    private final int maxKeyLength;
+
+    SymbolTable(Map<String, ? extends T> entries) {
+        int maxLength = 0;
+        for (String key : entries.keySet()) {
+            maxLength = Math.max(maxLength, key.length());
+        }
+        this.maxKeyLength = maxLength;
+
+        // Grow the table until some seed places every key into a distinct slot
+        int size = Integer.highestOneBit(Math.max(1, entries.size()) * 2 - 1) << 1;
+        int candidate = 1;
+        String[] slots = place(entries, size, candidate);
+        while (slots == null) {
+            if (++candidate > MAX_SEED_ATTEMPTS) {
+                candidate = 1;
+                size <<= 1;
+            }
+            slots = place(entries, size, candidate);
+        }
+
+        this.keys = slots;
+        this.values = new Object[size];
+        this.mask = size - 1;
+        this.seed = candidate;
+        for (int i = 0; i < size; i++) {
+            if (slots[i] != null) {
+                values[i] = entries.get(slots[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the keys placed into their slots for the specified table size and seed, or null on any collision.
+     */
+    private static String[] place(Map<String, ?> entries, int size, int seed) {
+        String[] slots = new String[size];
+        for (String key : entries.keySet()) {
+            int slot = hash(key, 0, key.length(), seed) & (size - 1);
+            if (slots[slot] != null) {
+                return null;
+            }
+            slots[slot] = key;
+        }
+        return slots;
+    }
+
+    private static int hash(CharSequence chars, int start, int end, int seed) {
+        int h = seed * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            h = (h ^ chars.charAt(i)) * 0x01000193;
+        }
+        return h ^ (h >>> 15);
+    }
+
+    T get(CharSequence name) {
+        return get(name, 0, name.length());
+    }
+
+    /**
+     * Returns the value stored for the characters {@code chars[start, end)} or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    T get(CharSequence chars, int start, int end) {
+        int slot = hash(chars, start, end, seed) & mask;
+        String key = keys[slot];
+        if (key == null || key.length() != end - start) {
+            return null;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != chars.charAt(start + i)) {
+                return null;
+            }
+        }
+        return (T) values[slot];
+    }
+
+    int getMaxKeyLength() {
+        return maxKeyLength;
+    }
+
+}
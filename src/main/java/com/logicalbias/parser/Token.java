@@ -0,0 +1,93 @@
+package com.logicalbias.parser;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * A single token of an expression: its kind, source text, numeric value (for numbers and constants)
+ * and the offset of its first character within the source expression.<br />
+ * The {@link Tokenizer} only produces the lexical kinds ({@code NUMBER}, {@code IDENTIFIER}, {@code OPERATOR},
+ * parentheses and separators). The parser then classifies each token exactly once, turning identifiers into
+ * {@code FUNCTION}, {@code CONSTANT} or {@code VARIABLE} tokens, distinguishing prefix from infix/postfix
+ * operators and attaching the resolved {@link Function}.
+ */
+public final class Token {
+
+    public enum Type {
+        NUMBER, IDENTIFIER, OPERATOR, LEFT_PAREN, RIGHT_PAREN, SEPARATOR,
+        FUNCTION, CONSTANT, VARIABLE, PREFIX_OPERATOR;
+    }
+
+    private final Type type;
+    private final String text;
+    private final double value;
+    private final int offset;
+    private final Function function;
+    private final int argumentCount;
+
+    public Token(Type type, String text, double value, int offset) {
+        this(type, text, value, offset, null);
+    }
+
+    public Token(Type type, String text, double value, int offset, Function function) {
+        this(type, text, value, offset, function, function != null ? function.getNumberOfArguments() : 0);
+    }
+
+    private Token(Type type, String text, double value, int offset, Function function, int argumentCount) {
+        this.type = type;
+        this.text = text;
+        this.value = value;
+        this.offset = offset;
+        this.function = function;
+        this.argumentCount = argumentCount;
+    }
+
+    /**
+     * Returns a copy of this function token called with the specified number of arguments.
+     */
+    public Token withArgumentCount(int argumentCount) {
+        return new Token(type, text, value, offset, function, argumentCount);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the numeric value of a {@link Type#NUMBER} or {@link Type#CONSTANT} token.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the offset of the first character of this token within the source expression.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the function or operator this token was resolved to by the parser, if any.
+     */
+    public Function getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the number of arguments this function or operator token is applied to: the number written
+     * within the parentheses of a function call, and otherwise the function's own number of arguments.
+     */
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
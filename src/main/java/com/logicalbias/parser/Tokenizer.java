@@ -1,81 +1,126 @@
 package com.logicalbias.parser;
 
-import java.io.IOException;
-import java.io.StreamTokenizer;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
+import com.logicalbias.parser.Token.Type;
+
+/**
+ * Single pass, hand-written lexer. Numbers are scanned and converted exactly once, identifiers
+ * are lower-cased, and any other symbol is emitted as an operator token using the longest operator
+ * symbol registered in the {@link FunctionRegistry} (or a single character if none matches).
+ * A minus sign is always emitted as an operator; whether it is unary or binary is decided by the
+ * parser from its position in the grammar.
+ */
 public class Tokenizer {
 
-    public List<String> tokenize(String expression) {
-        List<String> tokens = new ArrayList<String>();
-
-        try {
-            StreamTokenizer tokenizer = new StreamTokenizer(new StringReader(expression));
-            tokenizer.ordinaryChar('/');
-            tokenizer.lowerCaseMode(true);
-
-            while (tokenizer.nextToken() != StreamTokenizer.TT_EOF) {
-                switch (tokenizer.ttype) {
-                    case StreamTokenizer.TT_NUMBER:
-                        tokens.add(String.valueOf(tokenizer.nval));
-                        break;
-                    case StreamTokenizer.TT_WORD:
-                        tokens.add(tokenizer.sval);
-                        break;
-                    default:
-                        // For a single character token, ttype value is the single character, converted to an integer 
-                        tokens.add(String.valueOf((char) tokenizer.ttype));
+    private final FunctionRegistry registry;
+
+    public Tokenizer() {
+        this(FunctionRegistry.defaults());
+    }
+
+    public Tokenizer(FunctionRegistry registry) {
+        this.registry = registry;
+    }
+
+    public List<Token> tokenize(CharSequence expression) {
+        List<Token> tokens = new ArrayList<>();
+        int length = expression.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = expression.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            }
+            else if (isDigit(c) || (c == '.' && i + 1 < length && isDigit(expression.charAt(i + 1)))) {
+                int end = scanNumber(expression, i);
+                String text = expression.subSequence(i, end).toString();
+                tokens.add(new Token(Type.NUMBER, text, Double.parseDouble(text), i));
+                i = end;
+            }
+            else if (isIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < length && isIdentifierPart(expression.charAt(end))) {
+                    end++;
                 }
+                String text = expression.subSequence(i, end).toString().toLowerCase(Locale.ROOT);
+                tokens.add(new Token(Type.IDENTIFIER, text, Double.NaN, i));
+                i = end;
+            }
+            else {
+                Type type = symbolType(c);
+                int end = i + 1;
+                if (type == Type.OPERATOR) {
+                    end = i + Math.max(1, registry.matchOperator(expression, i));
+                }
+                tokens.add(new Token(type, expression.subSequence(i, end).toString(), Double.NaN, i));
+                i = end;
             }
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
         }
 
-        tokens = fixNegativeOperators(tokens);
         return tokens;
     }
 
     /**
-     * This method will cycle through the list of tokens and look for two
-     * <i>adjacent</i> numeric tokens. If the second number is negative
-     * then this method will change the number to a positive value and
-     * insert a minus operator '-' between the two numeric tokens.
+     * Returns the end offset (exclusive) of the number starting at the specified offset:
+     * digits, an optional fraction and an optional exponent which must contain at least one digit.
      */
-    protected List<String> fixNegativeOperators(List<String> tokens) {
-        for (int i = 0; i < tokens.size() - 1; i++) {
-            String leftToken = tokens.get(i);
-            String rightToken = tokens.get(i + 1);
-
-            if (isNumber(leftToken) && isNumber(rightToken)) {
-                // This value is negative!
-                if (rightToken.startsWith("-")) {
-                    // Strip the minus sign
-                    rightToken = rightToken.substring(1);
-
-                    // Replace current right side token with the positive equivalent
-                    tokens.set(i + 1, rightToken);
-
-                    // Add the minus sign between the tokens
-                    tokens.add(i + 1, "-");
+    protected int scanNumber(CharSequence expression, int start) {
+        int length = expression.length();
+        int i = start;
+
+        while (i < length && isDigit(expression.charAt(i))) {
+            i++;
+        }
+        if (i < length && expression.charAt(i) == '.') {
+            i++;
+            while (i < length && isDigit(expression.charAt(i))) {
+                i++;
+            }
+        }
+        if (i < length && (expression.charAt(i) == 'e' || expression.charAt(i) == 'E')) {
+            int exponent = i + 1;
+            if (exponent < length && (expression.charAt(exponent) == '+' || expression.charAt(exponent) == '-')) {
+                exponent++;
+            }
+            if (exponent < length && isDigit(expression.charAt(exponent))) {
+                i = exponent;
+                while (i < length && isDigit(expression.charAt(i))) {
+                    i++;
                 }
             }
         }
 
-        return tokens;
+        return i;
     }
 
-    protected boolean isNumber(String token) {
-        try {
-            Double.parseDouble(token);
-        }
-        catch (NumberFormatException e) {
-            return false;
+    protected Type symbolType(char c) {
+        switch (c) {
+            case '(':
+                return Type.LEFT_PAREN;
+            case ')':
+                return Type.RIGHT_PAREN;
+            case ',':
+                return Type.SEPARATOR;
+            default:
+                return Type.OPERATOR;
         }
+    }
+
+    protected static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    protected static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
 
-        return true;
+    protected static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
     }
 
 }
@@ -8,8 +8,17 @@ public class AbsoluteValueFunction extends Function {
 
     @Override
     public double apply(double... args) {
-        double a = args[0];
+        return apply1(args[0]);
+    }
+
+    @Override
+    public double apply1(double a) {
         return Math.abs(a);
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
 }
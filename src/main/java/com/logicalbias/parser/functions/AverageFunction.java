@@ -0,0 +1,36 @@
+package com.logicalbias.parser.functions;
+
+/**
+ * avg(a, b, ...) returns the arithmetic mean of one or more arguments: their sum, added from left to right, divided by their count.
+ */
+public class AverageFunction extends Function {
+
+    public AverageFunction(String token) {
+        super(token, VARIADIC);
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply(args, 0, args.length);
+    }
+
+    @Override
+    public double apply(double[] args, int offset, int length) {
+        double sum = args[offset];
+        for (int i = offset + 1; i < offset + length; i++) {
+            sum += args[i];
+        }
+        return sum / length;
+    }
+
+    @Override
+    public double apply2(double a, double b) {
+        return (a + b) / 2;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
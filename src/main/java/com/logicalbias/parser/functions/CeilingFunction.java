@@ -8,7 +8,16 @@ public class CeilingFunction extends Function {
 
     @Override
     public double apply(double... args) {
-        double a = args[0];
+        return apply1(args[0]);
+    }
+
+    @Override
+    public double apply1(double a) {
         return Math.ceil(a);
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
 }
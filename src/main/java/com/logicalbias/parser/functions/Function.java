@@ -1,7 +1,15 @@
 package com.logicalbias.parser.functions;
 
+import java.util.Arrays;
+
 public abstract class Function {
 
+    /**
+     * The number of arguments of a variadic function, which accepts one or more arguments.
+     * The number of arguments of each call is then determined by the expression.
+     */
+    public static final int VARIADIC = -1;
+
     private final String token;
     private final int numberOfArguments;
 
@@ -14,12 +22,77 @@ public abstract class Function {
         return token;
     }
 
+    /**
+     * Returns the fixed number of arguments of this function, or {@link #VARIADIC}.
+     */
     public int getNumberOfArguments() {
         return numberOfArguments;
     }
 
+    public boolean isVariadic() {
+        return numberOfArguments == VARIADIC;
+    }
+
+    /**
+     * Returns true if this function may be called with the specified number of arguments.
+     */
+    public boolean acceptsArguments(int count) {
+        return isVariadic() ? count >= 1 : count == numberOfArguments;
+    }
+
     public abstract double apply(double... args);
 
+    /**
+     * Applies this function to the {@code length} arguments starting at {@code args[offset]}.
+     * The array is a view of the caller's operand stack and must not be modified or retained.<br />
+     * Functions of three or more (or a variable number of) arguments should override this to avoid copying;
+     * the default delegates to {@link #apply1(double)}, {@link #apply2(double, double)} or a copy passed to {@link #apply(double...)}.
+     */
+    public double apply(double[] args, int offset, int length) {
+        switch (length) {
+            case 1:
+                return apply1(args[offset]);
+            case 2:
+                return apply2(args[offset], args[offset + 1]);
+            default:
+                return apply(Arrays.copyOfRange(args, offset, offset + length));
+        }
+    }
+
+    /**
+     * Returns true if this function is pure: its result depends only on its arguments and calling it has no side effects.
+     * Only pure functions may be evaluated ahead of time by the compiler when all of their arguments are constant.
+     */
+    public boolean isPure() {
+        return false;
+    }
+
+    /**
+     * Returns this pure function wrapped in a cache remembering up to the specified number of its most recent results.
+     * Register the returned function in place of this one; it also reports the cache's hit rate.
+     * @throws IllegalArgumentException if this function is not {@link #isPure() pure}
+     * @see MemoizedFunction
+     */
+    public MemoizedFunction memoize(int maximumSize) {
+        return new MemoizedFunction(this, maximumSize);
+    }
+
+    /**
+     * Applies this function to a single argument without allocating an argument array.
+     * Unary functions should override this; the default delegates to {@link #apply(double...)}.
+     */
+    public double apply1(double a) {
+        return apply(a);
+    }
+
+    /**
+     * Applies this function to two arguments without allocating an argument array.
+     * Binary functions should override this; the default delegates to {@link #apply(double...)}.
+     */
+    public double apply2(double a, double b) {
+        return apply(a, b);
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -0,0 +1,28 @@
+package com.logicalbias.parser.functions;
+
+/**
+ * if(condition, a, b) returns a if the condition is true (non-zero), otherwise b.<br />
+ * The parser compiles this function into jump instructions so only the selected branch is evaluated.
+ */
+public class IfFunction extends Function {
+
+    public IfFunction(String token) {
+        super(token, 3);
+    }
+
+    @Override
+    public double apply(double... args) {
+        return args[0] != 0 ? args[1] : args[2];
+    }
+
+    @Override
+    public double apply(double[] args, int offset, int length) {
+        return args[offset] != 0 ? args[offset + 1] : args[offset + 2];
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
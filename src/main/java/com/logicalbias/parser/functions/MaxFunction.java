@@ -1,15 +1,36 @@
 package com.logicalbias.parser.functions;
 
+/**
+ * max(a, b, ...) returns the largest of one or more arguments, or NaN if any argument is NaN.
+ */
 public class MaxFunction extends Function {
 
     public MaxFunction(String token) {
-        super(token, 2);
+        super(token, VARIADIC);
     }
 
     @Override
     public double apply(double... args) {
-        double a = args[0];
-        double b = args[1];
+        return apply(args, 0, args.length);
+    }
+
+    @Override
+    public double apply(double[] args, int offset, int length) {
+        double max = args[offset];
+        for (int i = offset + 1; i < offset + length; i++) {
+            max = Math.max(max, args[i]);
+        }
+        return max;
+    }
+
+    @Override
+    public double apply2(double a, double b) {
         return Math.max(a, b);
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
 }
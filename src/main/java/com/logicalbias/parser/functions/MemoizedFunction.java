@@ -0,0 +1,234 @@
+package com.logicalbias.parser.functions;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Function#isPure() pure} function whose results are remembered in a bounded cache keyed on the
+ * exact bits of its arguments, so repeated calls with the same arguments (within or across evaluations)
+ * skip the delegate. Created by {@link Function#memoize(int)} and registered in place of the delegate.<br />
+ * The cache is a two-way set associative table of immutable entries: arguments hash to a set of two slots,
+ * a new result displaces the older entry of its set, and lookups are lock-free. Arguments are compared
+ * with {@link Double#doubleToLongBits(double)}, so every NaN matches every other NaN while {@code 0.0}
+ * and {@code -0.0} are distinct keys. Calls of one or two arguments never allocate on a hit.<br />
+ * Instances are thread-safe. Concurrent callers racing on the same set may occasionally lose an entry,
+ * which only costs a later recomputation.
+ */
+public final class MemoizedFunction extends Function {
+
+    private final Function delegate;
+    private final int maximumSize;
+    private final int mask;
+
+    // Entries are immutable and published through their final fields; a racy read sees either a whole entry or none
+    private final Entry[] entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    MemoizedFunction(Function delegate, int maximumSize) {
+        super(delegate.getToken(), delegate.getNumberOfArguments());
+        if (!delegate.isPure()) {
+            throw new IllegalArgumentException("Only pure functions may be memoized: " + delegate.getToken());
+        }
+        if (maximumSize < 2) {
+            throw new IllegalArgumentException("Maximum size must be at least 2: " + maximumSize);
+        }
+        this.delegate = delegate;
+        // The table holds a power of two number of entries no larger than the maximum size
+        this.entries = new Entry[Integer.highestOneBit(maximumSize)];
+        this.maximumSize = maximumSize;
+        this.mask = entries.length - 2;
+    }
+
+    public Function getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply(args, 0, args.length);
+    }
+
+    @Override
+    public double apply1(double a) {
+        long bits = Double.doubleToLongBits(a);
+        int set = index(mix(0, bits));
+        for (int slot = set; slot < set + 2; slot++) {
+            Entry entry = entries[slot];
+            if (entry != null && entry.arguments.length == 1 && entry.arguments[0] == bits) {
+                hits.increment();
+                return entry.value;
+            }
+        }
+
+        misses.increment();
+        double value = delegate.apply1(a);
+        insert(set, new Entry(new long[] { bits }, value));
+        return value;
+    }
+
+    @Override
+    public double apply2(double a, double b) {
+        long bitsA = Double.doubleToLongBits(a);
+        long bitsB = Double.doubleToLongBits(b);
+        int set = index(mix(mix(0, bitsA), bitsB));
+        for (int slot = set; slot < set + 2; slot++) {
+            Entry entry = entries[slot];
+            if (entry != null && entry.arguments.length == 2 && entry.arguments[0] == bitsA && entry.arguments[1] == bitsB) {
+                hits.increment();
+                return entry.value;
+            }
+        }
+
+        misses.increment();
+        double value = delegate.apply2(a, b);
+        insert(set, new Entry(new long[] { bitsA, bitsB }, value));
+        return value;
+    }
+
+    @Override
+    public double apply(double[] args, int offset, int length) {
+        if (length == 1) {
+            return apply1(args[offset]);
+        }
+        if (length == 2) {
+            return apply2(args[offset], args[offset + 1]);
+        }
+
+        long hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = mix(hash, Double.doubleToLongBits(args[i]));
+        }
+        int set = index(hash);
+        for (int slot = set; slot < set + 2; slot++) {
+            Entry entry = entries[slot];
+            if (entry != null && entry.matches(args, offset, length)) {
+                hits.increment();
+                return entry.value;
+            }
+        }
+
+        misses.increment();
+        // The key is copied before calling the delegate, which may (incorrectly) modify its arguments
+        long[] key = new long[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = Double.doubleToLongBits(args[offset + i]);
+        }
+        double value = delegate.apply(args, offset, length);
+        insert(set, new Entry(key, value));
+        return value;
+    }
+
+    private static long mix(long hash, long bits) {
+        return (hash + bits) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Returns the first slot of the set the hash belongs to. The low mantissa bits of typical arguments (such as
+     * small integers) are all zero, so the hash is finalized (as by MurmurHash3's fmix64) before taking its low bits.
+     */
+    private int index(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    /**
+     * Makes the entry the newest of its set, displacing the older entry.
+     */
+    private void insert(int set, Entry entry) {
+        Entry newest = entries[set];
+        if (entries[set + 1] != null) {
+            evictions.increment();
+        }
+        entries[set + 1] = newest;
+        entries[set] = entry;
+    }
+
+    /**
+     * Returns the maximum number of results held, as requested when memoizing.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of results discarded to make room for others.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long requestCount = hitCount + getMissCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * Returns the number of results currently held; this scans the table.
+     */
+    public int size() {
+        int size = 0;
+        for (Entry entry : entries) {
+            if (entry != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MemoizedFunction [token=" + getToken() + ", size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    private static final class Entry {
+
+        final long[] arguments;
+        final double value;
+
+        Entry(long[] arguments, double value) {
+            this.arguments = arguments;
+            this.value = value;
+        }
+
+        boolean matches(double[] args, int offset, int length) {
+            if (arguments.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (arguments[i] != Double.doubleToLongBits(args[offset + i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -1,15 +1,36 @@
 package com.logicalbias.parser.functions;
 
+/**
+ * min(a, b, ...) returns the smallest of one or more arguments, or NaN if any argument is NaN.
+ */
 public class MinFunction extends Function {
 
     public MinFunction(String token) {
-        super(token, 2);
+        super(token, VARIADIC);
     }
 
     @Override
     public double apply(double... args) {
-        double a = args[0];
-        double b = args[1];
+        return apply(args, 0, args.length);
+    }
+
+    @Override
+    public double apply(double[] args, int offset, int length) {
+        double min = args[offset];
+        for (int i = offset + 1; i < offset + length; i++) {
+            min = Math.min(min, args[i]);
+        }
+        return min;
+    }
+
+    @Override
+    public double apply2(double a, double b) {
         return Math.min(a, b);
     }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
 }
@@ -0,0 +1,36 @@
+package com.logicalbias.parser.functions;
+
+/**
+ * sum(a, b, ...) returns the sum of one or more arguments, added from left to right.
+ */
+public class SumFunction extends Function {
+
+    public SumFunction(String token) {
+        super(token, VARIADIC);
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply(args, 0, args.length);
+    }
+
+    @Override
+    public double apply(double[] args, int offset, int length) {
+        double sum = args[offset];
+        for (int i = offset + 1; i < offset + length; i++) {
+            sum += args[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double apply2(double a, double b) {
+        return a + b;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.logicalbias.parser.operators;
+
+/**
+ * Returns 1 if the operands are equal, otherwise 0. NaN is not equal to anything, including itself.
+ */
+public class EqualOperator extends Operator {
+
+    public EqualOperator(String token, int precedence) {
+        super(token, precedence, 2, Associativity.LEFT);
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply2(args[0], args[1]);
+    }
+
+    @Override
+    public double apply2(double a, double b) {
+        return a == b ? 1.0 : 0.0;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
@@ -1,19 +1,90 @@
 package com.logicalbias.parser.operators;
 
+import java.math.BigInteger;
+
+/**
+ * n! of a non-negative integer n. Every factorial representable as a finite double (0! through 170!) is looked up
+ * from a table of correctly rounded values, and larger integers overflow to infinity. Negative integers, the poles
+ * of the gamma function, give NaN, and any other n gives the gamma function of n + 1, which overflows to infinity
+ * beyond about 170.62.
+ */
 public class FactorialOperator extends Operator {
 
+    private static final int MAX_FACTORIAL = 170;
+    private static final double[] FACTORIALS = new double[MAX_FACTORIAL + 1];
+
+    static {
+        BigInteger factorial = BigInteger.ONE;
+        FACTORIALS[0] = 1.0;
+        for (int i = 1; i <= MAX_FACTORIAL; i++) {
+            factorial = factorial.multiply(BigInteger.valueOf(i));
+            FACTORIALS[i] = factorial.doubleValue();
+        }
+    }
+
+    // Lanczos approximation coefficients for g = 7, n = 9
+    private static final double LANCZOS_G = 7;
+    private static final double[] LANCZOS_COEFFICIENTS = {
+            0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313, -176.61502916214059,
+            12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7 };
+    private static final double SQRT_TWO_PI = Math.sqrt(2 * Math.PI);
+    // The largest argument whose gamma function is finite
+    private static final double MAX_GAMMA_ARGUMENT = 171.62437695630272;
+
     public FactorialOperator(String token, int precedence) {
         super(token, precedence, 1, Associativity.RIGHT);
     }
 
     @Override
     public double apply(double... args) {
-        double a = args[0];
-        double value = a;
-        for (int i = 2; i < a; i++) {
-            value = value * i;
+        return apply1(args[0]);
+    }
+
+    @Override
+    public double apply1(double a) {
+        return factorial(a);
+    }
+
+    /**
+     * The factorial kernel shared by every evaluation backend.
+     */
+    public static double factorial(double n) {
+        // Infinities are integers here, while NaN is not
+        if (n == Math.rint(n)) {
+            if (n < 0) {
+                return Double.NaN;
+            }
+            return n <= MAX_FACTORIAL ? FACTORIALS[(int) n] : Double.POSITIVE_INFINITY;
+        }
+        return gamma(n + 1);
+    }
+
+    /**
+     * The Lanczos approximation of the gamma function, accurate to about 15 significant digits, using the reflection formula below 1/2.
+     */
+    private static double gamma(double x) {
+        if (x < 0.5) {
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        if (x > MAX_GAMMA_ARGUMENT) {
+            // The terms below overflow and underflow before the result would, which gives NaN rather than infinity
+            return Double.POSITIVE_INFINITY;
         }
-        return value;
+
+        x -= 1;
+        double sum = LANCZOS_COEFFICIENTS[0];
+        for (int i = 1; i < LANCZOS_COEFFICIENTS.length; i++) {
+            sum += LANCZOS_COEFFICIENTS[i] / (x + i);
+        }
+        double t = x + LANCZOS_G + 0.5;
+        // t^(x + 1/2) is split into two halves, which would overflow well before the result itself
+        double halfPower = Math.pow(t, (x + 0.5) / 2);
+        return SQRT_TWO_PI * halfPower * (halfPower * Math.exp(-t)) * sum;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
     }
 
 }
@@ -0,0 +1,27 @@
+package com.logicalbias.parser.operators;
+
+/**
+ * Returns 1 if the left operand is greater than or equal to the right operand, otherwise 0.
+ */
+public class GreaterThanOrEqualOperator extends Operator {
+
+    public GreaterThanOrEqualOperator(String token, int precedence) {
+        super(token, precedence, 2, Associativity.LEFT);
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply2(args[0], args[1]);
+    }
+
+    @Override
+    public double apply2(double a, double b) {
+        return a >= b ? 1.0 : 0.0;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
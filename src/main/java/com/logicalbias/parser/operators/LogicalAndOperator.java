@@ -0,0 +1,28 @@
+package com.logicalbias.parser.operators;
+
+/**
+ * Returns 1 if both operands are true (non-zero), otherwise 0.<br />
+ * The parser compiles this operator into jump instructions so the right operand is only evaluated if the left is true.
+ */
+public class LogicalAndOperator extends Operator {
+
+    public LogicalAndOperator(String token, int precedence) {
+        super(token, precedence, 2, Associativity.LEFT);
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply2(args[0], args[1]);
+    }
+
+    @Override
+    public double apply2(double a, double b) {
+        return a != 0 && b != 0 ? 1.0 : 0.0;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
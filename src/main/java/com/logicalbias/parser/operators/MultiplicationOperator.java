@@ -9,9 +9,17 @@ public class MultiplicationOperator extends Operator {
 
     @Override
     public double apply(double... args) {
-        double a = args[0];
-        double b = args[1];
+        return apply2(args[0], args[1]);
+    }
+
+    @Override
+    public double apply2(double a, double b) {
         return a * b;
     }
 
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
 }
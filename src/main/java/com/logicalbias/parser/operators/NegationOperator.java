@@ -0,0 +1,24 @@
+package com.logicalbias.parser.operators;
+
+public class NegationOperator extends Operator {
+
+    public NegationOperator(String token, int precedence) {
+        super(token, precedence, 1, Associativity.RIGHT);
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply1(args[0]);
+    }
+
+    @Override
+    public double apply1(double a) {
+        return -a;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
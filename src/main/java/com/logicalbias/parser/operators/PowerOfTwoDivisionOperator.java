@@ -0,0 +1,42 @@
+package com.logicalbias.parser.operators;
+
+/**
+ * The division operator specialized by the optimizer for a constant divisor that is a power of two (positive or negative)
+ * with a normal reciprocal: dividing by it is exactly multiplying by its reciprocal, for every dividend.
+ * Any other divisor is divided by.
+ */
+public class PowerOfTwoDivisionOperator extends Operator {
+
+    private final double divisor;
+    private final double reciprocal;
+
+    public PowerOfTwoDivisionOperator(String token, int precedence, double divisor) {
+        super(token, precedence, 2, Associativity.LEFT);
+        this.divisor = divisor;
+        this.reciprocal = 1 / divisor;
+    }
+
+    public double getDivisor() {
+        return divisor;
+    }
+
+    public double getReciprocal() {
+        return reciprocal;
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply2(args[0], args[1]);
+    }
+
+    @Override
+    public double apply2(double a, double b) {
+        return b == divisor ? a * reciprocal : a / b;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
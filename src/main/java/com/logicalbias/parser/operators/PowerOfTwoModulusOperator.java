@@ -0,0 +1,57 @@
+package com.logicalbias.parser.operators;
+
+/**
+ * The modulus operator specialized by the optimizer for a constant divisor that is a power of two (positive or negative),
+ * computing the same result as {@code a % divisor} without a floating point remainder instruction.
+ * Any other divisor is passed to {@code %}.
+ */
+public class PowerOfTwoModulusOperator extends Operator {
+
+    private final double divisor;
+    private final double reciprocal;
+
+    public PowerOfTwoModulusOperator(String token, int precedence, double divisor) {
+        super(token, precedence, 2, Associativity.LEFT);
+        this.divisor = divisor;
+        this.reciprocal = 1 / divisor;
+    }
+
+    public double getDivisor() {
+        return divisor;
+    }
+
+    public double getReciprocal() {
+        return reciprocal;
+    }
+
+    @Override
+    public double apply(double... args) {
+        return apply2(args[0], args[1]);
+    }
+
+    @Override
+    public double apply2(double a, double b) {
+        return b == divisor ? remainder(a, divisor, reciprocal) : a % b;
+    }
+
+    /**
+     * Returns {@code a % divisor} for a power of two divisor whose reciprocal is also a normal double.<br />
+     * Scaling by the reciprocal is exact, so the truncated quotient is exactly that of {@code %}. Its product with the
+     * divisor is exact as well, and lies within a factor of two of {@code a} whenever it is non-zero, so the subtraction
+     * is exact (Sterbenz). Quotients beyond the range of a {@code long}, infinities and NaN take the plain {@code %}.
+     */
+    public static double remainder(double a, double divisor, double reciprocal) {
+        double quotient = a * reciprocal;
+        if (Math.abs(quotient) < 0x1p63) {
+            // The sign of a zero remainder is that of the dividend
+            return Math.copySign(a - (long) quotient * divisor, a);
+        }
+        return a % divisor;
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+
+}
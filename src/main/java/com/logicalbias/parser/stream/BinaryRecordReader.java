@@ -0,0 +1,79 @@
+package com.logicalbias.parser.stream;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Reads fixed-width binary records from a memory-mapped file: each record is one 8 byte IEEE 754 double
+ * per column, in column order, with no header or padding. Column names are supplied by the caller.
+ */
+public final class BinaryRecordReader implements RecordReader {
+
+    private final MappedInput input;
+    private final String[] columnNames;
+    private final int recordSize;
+
+    // Offset of the next record within the current window
+    private int position;
+
+    public BinaryRecordReader(Path path, ByteOrder order, String... columnNames) throws IOException {
+        this(path, order, MappedInput.DEFAULT_WINDOW_SIZE, columnNames);
+    }
+
+    BinaryRecordReader(Path path, ByteOrder order, int windowSize, String... columnNames) throws IOException {
+        if (columnNames.length == 0) {
+            throw new IllegalArgumentException("At least one column name is required");
+        }
+        this.columnNames = columnNames.clone();
+        this.recordSize = columnNames.length * Double.BYTES;
+        if (windowSize < recordSize) {
+            throw new IllegalArgumentException("Mapping window of " + windowSize + " bytes is smaller than a record");
+        }
+
+        // Windows hold a whole number of records so no record straddles two of them
+        this.input = new MappedInput(path, windowSize - windowSize % recordSize, order);
+        if (input.size() % recordSize != 0) {
+            input.close();
+            throw new IOException("File size " + input.size() + " is not a multiple of the " + recordSize + " byte record size");
+        }
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    @Override
+    public int read(double[][] columns, int maxRows) throws IOException {
+        int rows = 0;
+        while (rows < maxRows) {
+            MappedByteBuffer window = input.window();
+            if (position == window.limit()) {
+                if (input.isLastWindow()) {
+                    break;
+                }
+                input.map(input.windowStart() + position);
+                position = 0;
+                continue;
+            }
+
+            int count = Math.min(maxRows - rows, (window.limit() - position) / recordSize);
+            for (int row = rows; row < rows + count; row++) {
+                for (int column = 0; column < columnNames.length; column++) {
+                    columns[column][row] = window.getDouble(position);
+                    position += Double.BYTES;
+                }
+            }
+            rows += count;
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+}
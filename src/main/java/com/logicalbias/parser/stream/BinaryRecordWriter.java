@@ -0,0 +1,42 @@
+package com.logicalbias.parser.stream;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Writes fixed-width binary records through a memory mapping, in the format read by {@link BinaryRecordReader}.
+ */
+public final class BinaryRecordWriter implements RecordWriter {
+
+    private static final int WINDOW_SIZE = 64 << 20;
+
+    private final MappedOutput output;
+    private final int columnCount;
+
+    public BinaryRecordWriter(Path path, ByteOrder order, int columnCount) throws IOException {
+        if (columnCount < 1) {
+            throw new IllegalArgumentException("At least one column is required");
+        }
+        this.output = new MappedOutput(path, WINDOW_SIZE, order);
+        this.columnCount = columnCount;
+    }
+
+    @Override
+    public void write(double[][] columns, int rows) throws IOException {
+        int recordSize = columnCount * Double.BYTES;
+        for (int row = 0; row < rows; row++) {
+            MappedByteBuffer window = output.reserve(recordSize);
+            for (int column = 0; column < columnCount; column++) {
+                window.putDouble(columns[column][row]);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.logicalbias.parser.stream;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads numeric, delimiter separated records from a memory-mapped file whose first line names the columns.<br />
+ * Fields are parsed straight from the mapped bytes: decimal numbers of up to 15 significant digits and
+ * a decimal exponent of at most 22 are converted exactly without allocating; anything else (more digits,
+ * {@code NaN}, {@code Infinity}) falls back to {@link Double#parseDouble(String)}. Empty fields read as NaN,
+ * surrounding spaces are ignored and blank lines are skipped. Quoted fields are not supported.
+ */
+public final class CsvRecordReader implements RecordReader {
+
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    // Every power of ten up to 10^22 is exactly representable as a double
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private final MappedInput input;
+    private final byte delimiter;
+    private final String[] columnNames;
+
+    // Offset of the next record within the current window
+    private int position;
+    private char[] text = new char[32];
+
+    public CsvRecordReader(Path path) throws IOException {
+        this(path, ',');
+    }
+
+    public CsvRecordReader(Path path, char delimiter) throws IOException {
+        this(path, delimiter, MappedInput.DEFAULT_WINDOW_SIZE);
+    }
+
+    CsvRecordReader(Path path, char delimiter, int windowSize) throws IOException {
+        if (delimiter > 0x7F || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("Unsupported delimiter: " + delimiter);
+        }
+        this.input = new MappedInput(path, windowSize, ByteOrder.nativeOrder());
+        this.delimiter = (byte) delimiter;
+        this.columnNames = readHeader();
+    }
+
+    private String[] readHeader() throws IOException {
+        MappedByteBuffer window = input.window();
+        int end = 0;
+        while (end < window.limit() && window.get(end) != '\n') {
+            end++;
+        }
+        if (end == window.limit() && !input.isLastWindow()) {
+            throw new IOException("Header line exceeds the mapping window");
+        }
+
+        byte[] header = new byte[end];
+        window.get(header);
+        position = Math.min(end + 1, window.limit());
+
+        String[] names = new String(header, StandardCharsets.UTF_8).split(String.valueOf((char) delimiter), -1);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+        }
+        if (names.length == 1 && names[0].isEmpty()) {
+            throw new IOException("Missing header line naming the columns");
+        }
+        return names;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    @Override
+    public int read(double[][] columns, int maxRows) throws IOException {
+        int rows = 0;
+        while (rows < maxRows && readRecord(columns, rows)) {
+            rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * Parses the next record into the row of the columns, moving the window forward if the record
+     * straddles its end. Returns false at the end of the input.
+     */
+    private boolean readRecord(double[][] columns, int row) throws IOException {
+        while (true) {
+            MappedByteBuffer window = input.window();
+            int limit = window.limit();
+
+            // Skip blank lines
+            while (position < limit && (window.get(position) == '\n' || window.get(position) == '\r')) {
+                position++;
+            }
+            if (position == limit) {
+                if (input.isLastWindow()) {
+                    return false;
+                }
+                input.map(input.windowStart() + position);
+                position = 0;
+                continue;
+            }
+
+            int end = parseRecord(window, columns, row);
+            if (end >= 0) {
+                position = end;
+                return true;
+            }
+
+            // The record continues past the window; remap starting at the record
+            if (position == 0) {
+                throw new IOException("Record at byte offset " + input.windowStart() + " exceeds the mapping window");
+            }
+            input.map(input.windowStart() + position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Returns the offset following the record, or -1 if the record is cut off by the end of a window which is not the last.
+     */
+    private int parseRecord(MappedByteBuffer window, double[][] columns, int row) throws IOException {
+        int limit = window.limit();
+        int start = position;
+        for (int column = 0; column < columnNames.length; column++) {
+            int end = start;
+            while (end < limit && window.get(end) != delimiter && window.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit && !input.isLastWindow()) {
+                return -1;
+            }
+
+            boolean lastColumn = column == columnNames.length - 1;
+            boolean endOfRecord = end == limit || window.get(end) == '\n';
+            if (lastColumn != endOfRecord) {
+                throw new IOException("Record at byte offset " + (input.windowStart() + position) + " does not have "
+                        + columnNames.length + " field(s)");
+            }
+
+            columns[column][row] = parseNumber(window, start, end);
+            start = end + 1;
+        }
+        return Math.min(start, limit);
+    }
+
+    private double parseNumber(MappedByteBuffer window, int start, int end) throws IOException {
+        while (start < end && window.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && (window.get(end - 1) == ' ' || window.get(end - 1) == '\r')) {
+            end--;
+        }
+        if (start == end) {
+            return Double.NaN;
+        }
+
+        int i = start;
+        boolean negative = window.get(i) == '-';
+        if (negative || window.get(i) == '+') {
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean anyDigits = false;
+        for (; i < end && isDigit(window.get(i)); i++) {
+            anyDigits = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (window.get(i) - '0');
+                digits += mantissa != 0 ? 1 : 0;
+            }
+            else {
+                scale++;
+            }
+        }
+        if (i < end && window.get(i) == '.') {
+            for (i++; i < end && isDigit(window.get(i)); i++) {
+                anyDigits = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (window.get(i) - '0');
+                    digits += mantissa != 0 ? 1 : 0;
+                    scale--;
+                }
+            }
+        }
+        if (anyDigits && i < end && (window.get(i) == 'e' || window.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = i < end && window.get(i) == '-';
+            if (i < end && (negativeExponent || window.get(i) == '+')) {
+                i++;
+            }
+            int exponent = 0;
+            int exponentStart = i;
+            for (; i < end && isDigit(window.get(i)) && exponent < 10000; i++) {
+                exponent = exponent * 10 + (window.get(i) - '0');
+            }
+            if (i == exponentStart) {
+                anyDigits = false;
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        if (!anyDigits || i != end || digits > MAX_EXACT_DIGITS || Math.abs(scale) >= POWERS_OF_TEN.length) {
+            return parseSlow(window, start, end);
+        }
+
+        // Both the mantissa and the power of ten are exact, so a single operation rounds correctly
+        double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private double parseSlow(MappedByteBuffer window, int start, int end) throws IOException {
+        int length = end - start;
+        if (text.length < length) {
+            text = Arrays.copyOf(text, Math.max(length, text.length * 2));
+        }
+        for (int i = 0; i < length; i++) {
+            text[i] = (char) (window.get(start + i) & 0xFF);
+        }
+
+        String value = new String(text, 0, length);
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid number '" + value + "' at byte offset " + (input.windowStart() + start), e);
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.logicalbias.parser.stream;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Writes delimiter separated records through a memory mapping, starting with a header line naming the columns.
+ * Values are formatted as by {@link Double#toString(double)} into a reused buffer.
+ */
+public final class CsvRecordWriter implements RecordWriter {
+
+    private static final int WINDOW_SIZE = 64 << 20;
+
+    // Longest output of Double.toString plus a delimiter or line feed
+    private static final int MAX_FIELD_LENGTH = 32;
+
+    private final MappedOutput output;
+    private final byte delimiter;
+    private final int columnCount;
+    private final StringBuilder text = new StringBuilder(MAX_FIELD_LENGTH);
+
+    public CsvRecordWriter(Path path, String... columnNames) throws IOException {
+        this(path, ',', columnNames);
+    }
+
+    public CsvRecordWriter(Path path, char delimiter, String... columnNames) throws IOException {
+        if (delimiter > 0x7F || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("Unsupported delimiter: " + delimiter);
+        }
+        if (columnNames.length == 0) {
+            throw new IllegalArgumentException("At least one column name is required");
+        }
+        this.output = new MappedOutput(path, WINDOW_SIZE, ByteOrder.nativeOrder());
+        this.delimiter = (byte) delimiter;
+        this.columnCount = columnNames.length;
+
+        byte[] header = (String.join(String.valueOf(delimiter), columnNames) + "\n").getBytes(StandardCharsets.UTF_8);
+        output.reserve(header.length).put(header);
+    }
+
+    @Override
+    public void write(double[][] columns, int rows) throws IOException {
+        for (int row = 0; row < rows; row++) {
+            MappedByteBuffer window = output.reserve(columnCount * MAX_FIELD_LENGTH);
+            for (int column = 0; column < columnCount; column++) {
+                text.setLength(0);
+                text.append(columns[column][row]);
+                for (int i = 0; i < text.length(); i++) {
+                    window.put((byte) text.charAt(i));
+                }
+                window.put(column == columnCount - 1 ? (byte) '\n' : delimiter);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+}
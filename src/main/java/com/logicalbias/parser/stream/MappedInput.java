@@ -0,0 +1,71 @@
+package com.logicalbias.parser.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only file mapped into memory through a sliding window, so files larger than a single
+ * {@link MappedByteBuffer} (2GB) can be read. Readers address bytes relative to the current window
+ * and move the window forward, to the start of a record, when a record would straddle its end.
+ */
+final class MappedInput implements Closeable {
+
+    static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final ByteOrder order;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedInput(Path path, int windowSize, ByteOrder order) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.order = order;
+        map(0);
+    }
+
+    /**
+     * Maps the window starting at the absolute file offset.
+     */
+    void map(long offset) throws IOException {
+        windowStart = offset;
+        window = channel.map(MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+        window.order(order);
+    }
+
+    MappedByteBuffer window() {
+        return window;
+    }
+
+    long windowStart() {
+        return windowStart;
+    }
+
+    /**
+     * Returns true if the current window extends to the end of the file.
+     */
+    boolean isLastWindow() {
+        return windowStart + window.limit() >= size;
+    }
+
+    long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+}
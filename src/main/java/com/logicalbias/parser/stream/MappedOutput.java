@@ -0,0 +1,65 @@
+package com.logicalbias.parser.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file written through a sliding read-write memory mapping which extends the file as it is filled.
+ * The file is truncated to the number of bytes actually written when closed.
+ */
+final class MappedOutput implements Closeable {
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final ByteOrder order;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedOutput(Path path, int windowSize, ByteOrder order) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.windowSize = windowSize;
+        this.order = order;
+        map(0);
+    }
+
+    private void map(long offset) throws IOException {
+        windowStart = offset;
+        window = channel.map(MapMode.READ_WRITE, offset, windowSize);
+        window.order(order);
+    }
+
+    /**
+     * Returns the current window after ensuring it has room for at least the specified number of bytes.
+     */
+    MappedByteBuffer reserve(int bytes) throws IOException {
+        if (window.remaining() < bytes) {
+            if (bytes > windowSize) {
+                throw new IOException("Record of " + bytes + " bytes exceeds the mapping window of " + windowSize + " bytes");
+            }
+            map(windowStart + window.position());
+        }
+        return window;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            long written = windowStart + window.position();
+            window.force();
+            window = null;
+            channel.truncate(written);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+}
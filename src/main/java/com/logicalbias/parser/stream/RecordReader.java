@@ -0,0 +1,22 @@
+package com.logicalbias.parser.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of records of named numeric columns, read a batch of rows at a time into column arrays.
+ */
+public interface RecordReader extends Closeable {
+
+    /**
+     * Returns the column names in the order their values are written into the column arrays.
+     */
+    String[] getColumnNames();
+
+    /**
+     * Reads up to {@code maxRows} records, writing the value of column {@code i} of the n-th record read into
+     * {@code columns[i][n]}. Returns the number of records read, which is zero only once the input is exhausted.
+     */
+    int read(double[][] columns, int maxRows) throws IOException;
+
+}
@@ -0,0 +1,16 @@
+package com.logicalbias.parser.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A sink of records of numeric columns, written a batch of rows at a time from column arrays.
+ */
+public interface RecordWriter extends Closeable {
+
+    /**
+     * Writes {@code rows} records, the n-th of which consists of {@code columns[i][n]} for each column {@code i}.
+     */
+    void write(double[][] columns, int rows) throws IOException;
+
+}
@@ -0,0 +1,112 @@
+package com.logicalbias.parser.stream;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+import com.logicalbias.parser.BatchEvaluator;
+import com.logicalbias.parser.CompiledExpression;
+import com.logicalbias.parser.ExpressionParser;
+
+/**
+ * A pipeline stage applying a fixed set of named formulas to every record of an input, producing one
+ * output column per formula.<br />
+ * Formulas are compiled once, and their variables are bound by name to the input columns, ignoring case as
+ * variable names do (the first of several columns differing only in case is bound). Records are
+ * read a batch at a time into reused column arrays and each formula is evaluated column-at-a-time over
+ * the batch by its own {@link BatchEvaluator}, so steady-state processing allocates nothing per record.
+ * Formulas may only reference input columns, not each other. Not thread-safe.
+ */
+public final class StreamEvaluator {
+
+    /** Default number of records read, evaluated and written per batch */
+    public static final int DEFAULT_BATCH_SIZE = BatchEvaluator.CHUNK_SIZE * 16;
+
+    private final String[] names;
+    private final CompiledExpression[] formulas;
+    private final int batchSize;
+
+    /**
+     * @param formulas the formulas keyed by output column name, in output column order
+     */
+    public StreamEvaluator(ExpressionParser parser, Map<String, String> formulas) {
+        this(parser, formulas, DEFAULT_BATCH_SIZE);
+    }
+
+    public StreamEvaluator(ExpressionParser parser, Map<String, String> formulas, int batchSize) {
+        if (formulas.isEmpty()) {
+            throw new IllegalArgumentException("At least one formula is required");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        this.names = new String[formulas.size()];
+        this.formulas = new CompiledExpression[formulas.size()];
+        this.batchSize = batchSize;
+
+        int i = 0;
+        for (Map.Entry<String, String> formula : formulas.entrySet()) {
+            names[i] = formula.getKey();
+            this.formulas[i++] = parser.compile(formula.getValue());
+        }
+    }
+
+    /**
+     * Returns the output column names, one per formula.
+     */
+    public String[] getOutputNames() {
+        return names.clone();
+    }
+
+    /**
+     * Evaluates every formula for every record of the input, writing one output record per input record.
+     * Returns the number of records processed. The reader and writer are not closed.
+     * @throws IllegalArgumentException if a formula references a column the input does not have
+     */
+    public long evaluate(RecordReader input, RecordWriter output) throws IOException {
+        String[] columnNames = input.getColumnNames();
+        double[][] inputs = new double[columnNames.length][batchSize];
+        double[][] outputs = new double[formulas.length][batchSize];
+
+        // Bind each formula's variable slots directly to the input column arrays
+        BatchEvaluator[] evaluators = new BatchEvaluator[formulas.length];
+        double[][][] bindings = new double[formulas.length][][];
+        for (int f = 0; f < formulas.length; f++) {
+            evaluators[f] = formulas[f].newBatchEvaluator();
+            String[] variables = formulas[f].getVariableNames();
+            bindings[f] = new double[variables.length][];
+            for (int slot = 0; slot < variables.length; slot++) {
+                int column = indexOf(columnNames, variables[slot]);
+                if (column < 0) {
+                    throw new IllegalArgumentException("Formula " + names[f] + " references unknown column " + variables[slot]);
+                }
+                bindings[f][slot] = inputs[column];
+            }
+        }
+
+        long records = 0;
+        int rows;
+        while ((rows = input.read(inputs, batchSize)) > 0) {
+            for (int f = 0; f < formulas.length; f++) {
+                evaluators[f].evaluate(bindings[f], outputs[f], 0, rows);
+            }
+            output.write(outputs, rows);
+            records += rows;
+        }
+        return records;
+    }
+
+    /**
+     * Returns the index of the column named by the (lower-case) variable, or -1 if there is none.
+     */
+    private static int indexOf(String[] columnNames, String variable) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].toLowerCase(Locale.ROOT).equals(variable)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
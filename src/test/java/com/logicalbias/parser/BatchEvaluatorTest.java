@@ -0,0 +1,61 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class BatchEvaluatorTest {
+
+    @Test
+    public void everyRowAgreesWithTheInterpreter() {
+        ExpressionParser parser = new ExpressionParser();
+
+        for (String expression : TestExpressions.EXPRESSIONS) {
+            CompiledExpression compiled = parser.compile(expression);
+            double[][] columns = TestExpressions.columns(compiled.getVariableCount());
+            double[] output = new double[TestExpressions.ROWS];
+            compiled.newBatchEvaluator().evaluate(columns, output);
+
+            for (int r = 0; r < TestExpressions.ROWS; r++) {
+                assertEquals(expression + " row " + r, compiled.evaluate(TestExpressions.row(columns, r)), output[r], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void onlyTheRequestedRowsAreWritten() {
+        CompiledExpression compiled = new ExpressionParser().compile("x * 2 + y");
+        double[][] columns = TestExpressions.columns(2);
+        double[] output = new double[TestExpressions.ROWS];
+        Arrays.fill(output, -1);
+        compiled.newBatchEvaluator().evaluate(columns, output, 100, 400);
+
+        for (int r = 0; r < TestExpressions.ROWS; r++) {
+            double expected = r < 100 || r >= 400 ? -1 : columns[0][r] * 2 + columns[1][r];
+            assertEquals("row " + r, expected, output[r], 0.0);
+        }
+    }
+
+    @Test
+    public void missingOrShortColumnsAreRejected() {
+        BatchEvaluator evaluator = new ExpressionParser().compile("x + y").newBatchEvaluator();
+        try {
+            evaluator.evaluate(new double[1][10], new double[10]);
+            fail("Expected a missing column to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            evaluator.evaluate(new double[][] { new double[10], new double[5] }, new double[10]);
+            fail("Expected a short column to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+}
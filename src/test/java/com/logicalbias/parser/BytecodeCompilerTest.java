@@ -0,0 +1,51 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.logicalbias.parser.functions.Function;
+
+public class BytecodeCompilerTest {
+
+    @Test
+    public void bytecodeAgreesWithTheInterpreter() {
+        ExpressionParser parser = new ExpressionParser();
+        for (String expression : TestExpressions.EXPRESSIONS) {
+            CompiledExpression interpreted = parser.compile(expression);
+            CompiledExpression bytecode = interpreted.toBytecode();
+            assertFalse(interpreted.isBytecode());
+            assertTrue(bytecode.isBytecode());
+
+            double[][] columns = TestExpressions.columns(interpreted.getVariableCount());
+            for (int r = 0; r < TestExpressions.ROWS; r++) {
+                double[] row = TestExpressions.row(columns, r);
+                assertEquals(expression + " at " + Arrays.toString(row), interpreted.evaluate(row), bytecode.evaluate(row), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void bytecodeCallsCustomFunctions() {
+        FunctionRegistry registry = FunctionRegistry.defaults().toBuilder()
+                .function(new Function("hypot", 2) {
+                    @Override
+                    public double apply(double... args) {
+                        return Math.hypot(args[0], args[1]);
+                    }
+                })
+                .build();
+        ExpressionParser parser = new ExpressionParser(registry);
+        parser.setBytecodeEnabled(true);
+
+        CompiledExpression compiled = parser.compile("hypot(x, 4) * 2");
+        assertTrue(compiled.isBytecode());
+        assertEquals(10, compiled.evaluate(3), 0.0);
+        assertEquals(10, compiled.newBindings().set("x", 3).evaluate(), 0.0);
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.logicalbias.parser.functions.Function;
+
+public class CompiledExpressionTest {
+
+    private static final String[] CONSTANT_EXPRESSIONS = {
+            "(1 + 2) * 3", "2 ^ 3 ^ 2", "5! * 2", "max(3, min(7, 2)) + abs(-4)", "round(2.5) + floor(1.7) + ceil(1.2)", "pi * 2" };
+
+    private final ExpressionParser parser = new ExpressionParser();
+
+    @Test
+    public void compiledExpressionsEvaluateLikeTheParser() {
+        for (String expression : CONSTANT_EXPRESSIONS) {
+            CompiledExpression compiled = parser.compile(expression);
+            assertEquals(expression, parser.evaluate(expression), compiled.evaluate(), 0.0);
+            assertEquals(expression, expression, compiled.getExpression());
+        }
+    }
+
+    @Test
+    public void compiledExpressionsAreReusable() {
+        CompiledExpression compiled = parser.compile("(1 + 2) * 3");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(9, compiled.evaluate(), 0.0);
+        }
+    }
+
+    @Test
+    public void compiledExpressionsEvaluateConcurrently() throws Exception {
+        CompiledExpression compiled = parser.compile("x * x + y");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        if (compiled.evaluate(i, thread) != (double) i * i + thread) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertEquals(true, result.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void variablesAreBoundBySlotInOrderOfFirstAppearance() {
+        CompiledExpression compiled = parser.compile("price * qty - discount + price");
+        assertArrayEquals(new String[] { "price", "qty", "discount" }, compiled.getVariableNames());
+        assertEquals(2, compiled.getVariableIndex("discount"));
+        assertEquals(-1, compiled.getVariableIndex("tax"));
+        assertEquals(35, compiled.evaluate(10, 3, 5), 0.0);
+    }
+
+    @Test
+    public void bindingsAreSetByNameOrSlot() {
+        CompiledExpression compiled = parser.compile("price * qty - discount");
+        CompiledExpression.Bindings bindings = compiled.newBindings().set("price", 2).set(1, 4).set(2, 1);
+        assertEquals(7, bindings.evaluate(), 0.0);
+        assertEquals(4, bindings.get(1), 0.0);
+
+        bindings.set("qty", 5);
+        assertEquals(9, bindings.evaluate(), 0.0);
+    }
+
+    @Test
+    public void missingVariablesAreRejected() {
+        CompiledExpression compiled = parser.compile("x + y");
+        try {
+            compiled.evaluate(1);
+            fail("Expected too few variable values to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            compiled.newBindings().set("z", 1);
+            fail("Expected an unknown variable to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            parser.compile("1 + 2").evaluate(parser.compile("3 + 4").newBindings());
+            fail("Expected bindings of another expression to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void nestedEvaluationsOnTheSameThreadDoNotShareAStack() {
+        CompiledExpression inner = parser.compile("a * 100 + b * 3 - c");
+        FunctionRegistry registry = FunctionRegistry.defaults().toBuilder()
+                .function(new Function("inner", 1) {
+                    @Override
+                    public double apply(double... args) {
+                        return inner.evaluate(args[0], 2, 1);
+                    }
+                })
+                .build();
+
+        // The outer evaluation holds x * 10 on its stack while the inner one runs
+        CompiledExpression outer = new ExpressionParser(registry).compile("x * 10 + inner(y) * 2 + x");
+        assertEquals(30 + 1005 * 2 + 3, outer.evaluate(3, 10), 0.0);
+        assertEquals(30 + 1005 * 2 + 3, outer.evaluate(3, 10), 0.0);
+    }
+
+    @Test
+    public void aFailedEvaluationReleasesTheThreadsStack() {
+        FunctionRegistry registry = FunctionRegistry.defaults().toBuilder()
+                .function(new Function("check", 1) {
+                    @Override
+                    public double apply(double... args) {
+                        if (args[0] < 0) {
+                            throw new IllegalArgumentException("Negative: " + args[0]);
+                        }
+                        return args[0];
+                    }
+                })
+                .build();
+        CompiledExpression compiled = new ExpressionParser(registry).compile("x + check(y) * 2");
+        try {
+            compiled.evaluate(1, -1);
+            fail("Expected the function to fail");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(5, compiled.evaluate(1, 2), 0.0);
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.junit.Test;
+
+public class DecimalExpressionTest {
+
+    private final ExpressionParser parser = new ExpressionParser();
+
+    @Test
+    public void finiteResultsAgreeWithTheInterpreter() {
+        for (String expression : TestExpressions.EXPRESSIONS) {
+            CompiledExpression compiled = parser.compile(expression);
+            DecimalExpression decimal = parser.compileDecimal(expression, MathContext.DECIMAL64);
+
+            double[][] columns = TestExpressions.columns(compiled.getVariableCount());
+            for (int r = 0; r < TestExpressions.ROWS; r++) {
+                double[] row = TestExpressions.row(columns, r);
+                double expected = compiled.evaluate(row);
+                if (Double.isNaN(expected) || Double.isInfinite(expected)) {
+                    continue;
+                }
+
+                BigDecimal[] values = new BigDecimal[decimal.getVariableCount()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = BigDecimal.valueOf(row[compiled.getVariableIndex(decimal.getVariableNames()[i])]);
+                }
+                TestExpressions.assertClose(expression + " row " + r, expected, decimal.evaluate(values).doubleValue());
+            }
+        }
+    }
+
+    @Test
+    public void literalsAndArithmeticAreExact() {
+        assertEquals(new BigDecimal("0.3"), parser.compileDecimal("0.1 + 0.2", MathContext.DECIMAL64).evaluate());
+        assertEquals(new BigDecimal("12345678901234567890.5"),
+                parser.compileDecimal("x + 0.5", MathContext.UNLIMITED).evaluate(new BigDecimal("12345678901234567890")));
+    }
+
+    @Test
+    public void everyOperationIsRoundedToTheContext() {
+        DecimalExpression third = parser.compileDecimal("1 / x", MathContext.DECIMAL32);
+        assertEquals(new BigDecimal("0.3333333"), third.evaluate(new BigDecimal(3)));
+        assertEquals(new BigDecimal("0.3333333333333333"), third.withMathContext(MathContext.DECIMAL64).evaluate(new BigDecimal(3)));
+        assertEquals(MathContext.DECIMAL32, third.getMathContext());
+
+        try {
+            parser.compileDecimal("1 / x", MathContext.UNLIMITED).evaluate(new BigDecimal(3));
+            fail("Expected a non-terminating expansion to be rejected");
+        }
+        catch (ArithmeticException e) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ExpressionCacheTest {
+
+    private final ExpressionParser parser = new ExpressionParser();
+
+    @Test
+    public void keysIgnoreCaseAndInsignificantWhitespace() {
+        ExpressionCache cache = ExpressionCache.builder(parser).build();
+        CompiledExpression compiled = cache.compile("Max(a, B) + 1");
+        assertSame(compiled, cache.compile("max(a,b)+1"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertEquals("max(a,b)+1", ExpressionCache.normalize(" Max( a , B ) + 1 "));
+        assertEquals("1- -2", ExpressionCache.normalize("1 - - 2"));
+        assertEquals("pi e", ExpressionCache.normalize("pi e"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() {
+        ExpressionCache cache = ExpressionCache.builder(parser).maximumWeight(2).concurrencyLevel(1).build();
+        CompiledExpression a = cache.compile("1 + 1");
+        cache.compile("1 + 2");
+        // Using the first entry makes the second the least recently used
+        assertSame(a, cache.compile("1 + 1"));
+        cache.compile("1 + 3");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(a, cache.compile("1 + 1"));
+        long misses = cache.getMissCount();
+        cache.compile("1 + 2");
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void tinyLfuRejectsCandidatesLessPopularThanTheVictim() {
+        ExpressionCache cache = ExpressionCache.builder(parser).maximumWeight(2).concurrencyLevel(1)
+                .policy(ExpressionCache.Policy.TINY_LFU).build();
+        for (int i = 0; i < 5; i++) {
+            cache.compile("1 + 1");
+            cache.compile("1 + 2");
+        }
+
+        // A one-off expression is compiled and returned, but not cached in place of a popular one
+        assertEquals(4, cache.compile("1 + 3").evaluate(), 0.0);
+        assertEquals(1, cache.getRejectionCount());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+        CompiledExpression popular = cache.compile("1 + 1");
+        assertSame(popular, cache.compile("1 + 1"));
+
+        // Once it is used more often than the least recently used entry it is admitted
+        for (int i = 0; i < 10; i++) {
+            cache.compile("1 + 3");
+        }
+        CompiledExpression admitted = cache.compile("1 + 3");
+        assertSame(admitted, cache.compile("1 + 3"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void theTotalWeightStaysWithinTheMaximum() {
+        ExpressionCache cache = ExpressionCache.builder(parser).maximumWeight(20).concurrencyLevel(1)
+                .weigher(compiled -> compiled.getExpression().length()).build();
+        for (int i = 0; i < 100; i++) {
+            cache.compile(i + " * 2");
+            assertTrue(cache.getWeight() <= 20);
+        }
+
+        // An expression heavier than the whole cache is never admitted
+        CompiledExpression heavy = cache.compile("1 + 2 + 3 + 4 + 5 + 6 + 7");
+        assertNotSame(heavy, cache.compile("1 + 2 + 3 + 4 + 5 + 6 + 7"));
+        assertEquals(2, cache.getRejectionCount());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void nonPositiveWeightsAreRejected() {
+        for (int weight : new int[] { 0, -1 }) {
+            ExpressionCache cache = ExpressionCache.builder(parser).maximumWeight(2).weigher(compiled -> weight).build();
+            try {
+                cache.compile("1 + 1");
+                fail("Expected a weight of " + weight + " to be rejected");
+            }
+            catch (IllegalArgumentException e) {
+                // Expected
+            }
+            assertEquals(0, cache.size());
+            assertEquals(0, cache.getWeight());
+        }
+    }
+
+}
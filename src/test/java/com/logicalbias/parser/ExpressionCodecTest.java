@@ -0,0 +1,117 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ExpressionCodecTest {
+
+    private static final String EXPRESSION = "abs(x - y) * abs(x - y) + if(x > y, x, 2)";
+
+    private final ExpressionParser parser = new ExpressionParser();
+
+    @Test
+    public void roundTripPreservesTheProgram() {
+        CompiledExpression compiled = parser.compile(EXPRESSION);
+        CompiledExpression decoded = decode(encode());
+
+        assertEquals(EXPRESSION, decoded.getExpression());
+        assertEquals(Arrays.asList(compiled.getVariableNames()), Arrays.asList(decoded.getVariableNames()));
+        assertEquals(compiled.getMaxStackDepth(), decoded.getMaxStackDepth());
+        assertEquals(compiled.getTemporaryCount(), decoded.getTemporaryCount());
+        for (double x = -2; x <= 2; x++) {
+            assertEquals(compiled.evaluate(x, 1), decoded.evaluate(x, 1), 0.0);
+        }
+    }
+
+    @Test
+    public void decodedExpressionsAgreeWithTheOriginals() {
+        for (String expression : TestExpressions.EXPRESSIONS) {
+            CompiledExpression compiled = parser.compile(expression);
+            CompiledExpression decoded = decode(ExpressionCodec.encode(compiled, parser.getRegistry()));
+            double[][] columns = TestExpressions.columns(compiled.getVariableCount());
+            for (int r = 0; r < TestExpressions.ROWS; r++) {
+                double[] row = TestExpressions.row(columns, r);
+                assertEquals(expression + " row " + r, compiled.evaluate(row), decoded.evaluate(row), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void bundlesDecodeInOrder() {
+        List<CompiledExpression> expressions = Arrays.asList(parser.compile("1 + 2 * x"), parser.compile("max(a, b, c)"));
+        List<CompiledExpression> decoded = ExpressionCodec.decodeAll(ByteBuffer.wrap(ExpressionCodec.encode(expressions, parser.getRegistry())),
+                parser.getRegistry());
+
+        assertEquals(2, decoded.size());
+        assertEquals(7, decoded.get(0).evaluate(3), 0.0);
+        assertEquals(5, decoded.get(1).evaluate(1, 5, 2), 0.0);
+    }
+
+    @Test
+    public void corruptHeadersAreRejected() {
+        byte[] encoded = encode();
+        int header = 4 + 2 + 4 + EXPRESSION.getBytes(StandardCharsets.UTF_8).length;
+        int maxStackDepth = ByteBuffer.wrap(encoded).getInt(header);
+        int temporaryCount = ByteBuffer.wrap(encoded).getInt(header + 4);
+
+        assertRejected("magic", withInt(encoded, 0, 0x12345678));
+        assertRejected("version", withShort(encoded, 4, ExpressionCodec.VERSION + 1));
+        assertRejected("stack depth too small", withInt(encoded, header, maxStackDepth - 1));
+        assertRejected("stack depth too large", withInt(encoded, header, maxStackDepth + 1));
+        assertRejected("negative stack depth", withInt(encoded, header, -1));
+        assertRejected("too few temporaries", withInt(encoded, header + 4, temporaryCount - 1));
+        assertRejected("too many temporaries", withInt(encoded, header + 4, temporaryCount + 1));
+        assertRejected("huge temporary count", withInt(encoded, header + 4, Integer.MAX_VALUE));
+        assertRejected("truncated", Arrays.copyOf(encoded, encoded.length - 1));
+    }
+
+    @Test
+    public void unregisteredFunctionsAreRejected() {
+        FunctionRegistry withoutAbs = FunctionRegistry.builder().operator(parser.getRegistry().getOperator("+")).build();
+        try {
+            ExpressionCodec.decode(ByteBuffer.wrap(encode()), withoutAbs);
+            fail("Expected an unresolved function to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private byte[] encode() {
+        return ExpressionCodec.encode(parser.compile(EXPRESSION), parser.getRegistry());
+    }
+
+    private CompiledExpression decode(byte[] encoded) {
+        return ExpressionCodec.decode(ByteBuffer.wrap(encoded), parser.getRegistry());
+    }
+
+    private void assertRejected(String corruption, byte[] encoded) {
+        try {
+            decode(encoded);
+            fail("Expected a header with a " + corruption + " to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] withInt(byte[] encoded, int offset, int value) {
+        byte[] copy = encoded.clone();
+        ByteBuffer.wrap(copy).putInt(offset, value);
+        return copy;
+    }
+
+    private static byte[] withShort(byte[] encoded, int offset, int value) {
+        byte[] copy = encoded.clone();
+        ByteBuffer.wrap(copy).putShort(offset, (short) value);
+        return copy;
+    }
+
+}
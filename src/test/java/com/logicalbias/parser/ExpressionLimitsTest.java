@@ -0,0 +1,109 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.junit.Test;
+
+import com.logicalbias.parser.ExpressionLimitException.Limit;
+
+public class ExpressionLimitsTest {
+
+    private final ExpressionParser parser = new ExpressionParser();
+
+    @Test
+    public void lengthIsLimited() {
+        parser.setLimits(ExpressionLimits.builder().maxLength(10).build());
+        assertEquals(6, parser.evaluate("1 + 2 + 3"), 0.0);
+        ExpressionLimitException e = assertExceeds("1 + 2 + 3 + 4", Limit.LENGTH);
+        assertEquals(10, e.getMaximum());
+        assertEquals(10, e.getOffset());
+    }
+
+    @Test
+    public void tokensAreLimited() {
+        parser.setLimits(ExpressionLimits.builder().maxTokens(6).build());
+        assertEquals(3, parser.evaluate("max(1, 3)"), 0.0);
+        ExpressionLimitException e = assertExceeds("max(1, 2, 3)", Limit.TOKENS);
+        // The seventh token is the last argument
+        assertEquals(10, e.getOffset());
+    }
+
+    @Test
+    public void nestingDepthIsLimited() {
+        parser.setLimits(ExpressionLimits.builder().maxNestingDepth(3).build());
+        assertEquals(9, parser.evaluate("(1 + 2) * 3"), 0.0);
+        assertEquals(2, parser.evaluate("((((2))))"), 0.0);
+        assertExceeds("(1 + 2) * 3 - 4", Limit.NESTING_DEPTH);
+        assertExceeds("abs(-1) * 2", Limit.NESTING_DEPTH);
+    }
+
+    @Test
+    public void functionCallsAreLimited() {
+        parser.setLimits(ExpressionLimits.builder().maxFunctionCalls(2).build());
+        assertEquals(3, parser.evaluate("abs(-3)"), 0.0);
+        assertExceeds("abs(-3) + 1", Limit.FUNCTION_CALLS);
+
+        parser.setLimits(ExpressionLimits.builder().maxFunctionCalls(0).build());
+        assertEquals(4, parser.evaluate("4"), 0.0);
+        assertExceeds("-4", Limit.FUNCTION_CALLS);
+    }
+
+    @Test
+    public void theCompiledCostIsLimited() {
+        parser.setLimits(ExpressionLimits.builder().maxCost(3).build());
+        assertEquals(3, parser.compile("x + y").evaluate(1, 2), 0.0);
+        // Constants are folded before the cost is checked
+        assertEquals(10, parser.evaluate("1 + 2 + 3 + 4"), 0.0);
+        ExpressionLimitException e = assertExceeds("x + y + 1", Limit.COST);
+        assertEquals(ExpressionLimitException.NO_OFFSET, e.getOffset());
+    }
+
+    @Test
+    public void decimalEvaluationIsChargedAsItRuns() {
+        parser.setLimits(ExpressionLimits.builder().maxCost(20).build());
+        DecimalExpression factorial = parser.compileDecimal("x!", MathContext.DECIMAL64);
+        assertEquals(new BigDecimal(120), factorial.evaluate(new BigDecimal(5)));
+        try {
+            factorial.evaluate(new BigDecimal(100));
+            fail("Expected the factorial to exceed the maximum cost");
+        }
+        catch (ExpressionLimitException e) {
+            assertEquals(Limit.COST, e.getLimit());
+            assertEquals(20, e.getMaximum());
+        }
+    }
+
+    @Test
+    public void invalidLimitsAreRejected() {
+        try {
+            ExpressionLimits.builder().maxLength(0);
+            fail("Expected a maximum length of zero to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            ExpressionLimits.builder().maxFunctionCalls(-1);
+            fail("Expected a negative maximum number of function calls to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private ExpressionLimitException assertExceeds(String expression, Limit limit) {
+        try {
+            parser.compile(expression);
+        }
+        catch (ExpressionLimitException e) {
+            assertEquals(expression, limit, e.getLimit());
+            return e;
+        }
+        throw new AssertionError("Expected " + expression + " to exceed the " + limit + " limit");
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ExpressionListenerTest {
+
+    @Test
+    public void eventsArriveInOrder() {
+        List<String> events = new ArrayList<>();
+        ExpressionParser parser = new ExpressionParser();
+        parser.setListener(new ExpressionListener() {
+            @Override
+            public void onParse(String expression, List<Token> rpnTokens, int tokenCount, long parseNanos) {
+                events.add("parse " + expression + " " + tokenCount + " " + rpnTokens.size());
+            }
+
+            @Override
+            public void onOptimize(String expression, int nodesBefore, int nodesAfter) {
+                events.add("optimize " + nodesBefore + " " + nodesAfter);
+            }
+
+            @Override
+            public void onCompile(CompiledExpression compiled, long compileNanos) {
+                events.add("compile " + compiled.getExpression());
+            }
+
+            @Override
+            public void onEvaluate(CompiledExpression compiled, double value, long evaluateNanos) {
+                events.add("evaluate " + value);
+            }
+        });
+
+        assertEquals(7, parser.evaluate("1 + 2 * 3"), 0.0);
+        assertEquals(Arrays.asList("parse 1 + 2 * 3 5 5", "optimize 5 1", "compile 1 + 2 * 3", "evaluate 7.0"), events);
+    }
+
+    @Test
+    public void metricsAccumulateEveryEvent() {
+        ExpressionMetrics metrics = new ExpressionMetrics();
+        ExpressionParser parser = new ExpressionParser();
+        parser.setListener(metrics);
+        assertSame(metrics, parser.getListener());
+
+        parser.evaluate("(1 + 2) * 3");
+        parser.compile("x + 2 * 3");
+        assertEquals(2, metrics.getParseCount());
+        assertEquals(2, metrics.getCompileCount());
+        assertEquals(1, metrics.getEvaluateCount());
+        // Parentheses are tokens, but not nodes
+        assertEquals(7 + 5, metrics.getTokenCount());
+        assertEquals(5 + 5, metrics.getNodesBeforeOptimization());
+        assertEquals(1 + 3, metrics.getNodesAfterOptimization());
+        assertTrue(metrics.getParseNanos() >= 0 && metrics.getCompileNanos() >= 0 && metrics.getEvaluateNanos() >= 0);
+
+        ExpressionCache cache = ExpressionCache.builder(parser).maximumWeight(10).build();
+        cache.compile("a + b");
+        cache.compile("A+B");
+        cache.compile("a - b");
+        assertEquals(1, metrics.getCacheHits());
+        assertEquals(2, metrics.getCacheMisses());
+        assertEquals(4, metrics.getCompileCount());
+    }
+
+    @Test
+    public void theDefaultListenerIgnoresEvents() {
+        ExpressionParser parser = new ExpressionParser();
+        assertSame(ExpressionListener.NONE, parser.getListener());
+        parser.setListener(new Slf4jExpressionListener());
+        assertEquals(9, parser.evaluate("(1 + 2) * 3"), 0.0);
+    }
+
+}
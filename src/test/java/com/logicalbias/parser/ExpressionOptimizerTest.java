@@ -0,0 +1,63 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.logicalbias.parser.functions.Function;
+
+public class ExpressionOptimizerTest {
+
+    @Test
+    public void optimizedExpressionsAgreeWithUnoptimizedOnes() {
+        ExpressionParser parser = new ExpressionParser();
+        ExpressionParser unoptimized = new ExpressionParser();
+        unoptimized.setOptimizationEnabled(false);
+
+        for (String expression : TestExpressions.EXPRESSIONS) {
+            CompiledExpression optimized = parser.compile(expression);
+            CompiledExpression plain = unoptimized.compile(expression);
+            double[][] columns = TestExpressions.columns(optimized.getVariableCount());
+            for (int r = 0; r < TestExpressions.ROWS; r++) {
+                double[] row = TestExpressions.row(columns, r);
+                TestExpressions.assertClose(expression + " row " + r, plain.evaluate(row), optimized.evaluate(row));
+            }
+        }
+    }
+
+    @Test
+    public void constantsAreFoldedAndIdentitiesRemoved() {
+        ExpressionParser parser = new ExpressionParser();
+        assertEquals(1, parser.compile("2 + 3 * 4 - max(1, 2) ^ 3").instructions().length);
+        assertEquals(6, parser.compile("2 + 3 * 4 - max(1, 2) ^ 3").evaluate(), 0.0);
+        assertEquals(1, parser.compile("(x + 0) * 1 - 0 / 1").instructions().length);
+        assertEquals(1, parser.compile("--x ^ 1").instructions().length);
+        assertEquals(1, parser.compile("if(1 > 2, y, x)").instructions().length);
+
+        ExpressionParser unoptimized = new ExpressionParser();
+        unoptimized.setOptimizationEnabled(false);
+        assertEquals(11, unoptimized.compile("2 + 3 * 4 - max(1, 2) ^ 3").instructions().length);
+    }
+
+    @Test
+    public void impureFunctionsAreNotFolded() {
+        AtomicInteger calls = new AtomicInteger();
+        Function counted = new Function("counted", 1) {
+            @Override
+            public double apply(double... args) {
+                calls.incrementAndGet();
+                return args[0];
+            }
+        };
+        ExpressionParser parser = new ExpressionParser(FunctionRegistry.defaults().toBuilder().function(counted).build());
+
+        CompiledExpression compiled = parser.compile("counted(2) * 3");
+        assertEquals(0, calls.get());
+        assertEquals(6, compiled.evaluate(), 0.0);
+        assertEquals(6, compiled.evaluate(), 0.0);
+        assertEquals(2, calls.get());
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ExpressionParserTest {
+
+    private final ExpressionParser parser = new ExpressionParser();
+
+    @Test
+    public void operatorsFollowTheirPrecedence() {
+        assertEquals(14, parser.evaluate("2 + 3 * 4"), 0.0);
+        assertEquals(512, parser.evaluate("2 ^ 3 ^ 2"), 0.0);
+        assertEquals(240, parser.evaluate("5! * 2"), 0.0);
+        assertEquals(1, parser.evaluate("10 % 4 / 2"), 0.0);
+        assertEquals(1, parser.evaluate("1 + 2 > 2 && 3 <= 3"), 0.0);
+    }
+
+    @Test
+    public void numbersAreReadInFull() {
+        assertEquals(1000, parser.evaluate("1e3"), 0.0);
+        assertEquals(300, parser.evaluate("1.5e2/.5"), 0.0);
+        assertEquals(0.125, parser.evaluate("1.25E-1"), 0.0);
+    }
+
+    @Test
+    public void negationBindsTheSameHoweverItIsSpaced() {
+        assertEquals(-4, parser.evaluate("-2^2"), 0.0);
+        assertEquals(-4, parser.evaluate("- 2^2"), 0.0);
+        assertEquals(-4, parser.evaluate("-(2)^2"), 0.0);
+        assertEquals(-4, parser.compile("-x^2").evaluate(2), 0.0);
+        assertEquals(0.25, parser.evaluate("2^-2"), 0.0);
+        assertEquals(0.25, parser.evaluate("2 ^ - 2"), 0.0);
+        assertEquals(5, parser.evaluate("3--2"), 0.0);
+        assertEquals(5, parser.evaluate("3 - -2"), 0.0);
+        assertEquals(1, parser.evaluate("3 -2"), 0.0);
+        assertEquals(9, parser.evaluate("-(1+2)*-3"), 0.0);
+        assertEquals(-1, parser.evaluate("max(-1, -2)"), 0.0);
+    }
+
+    @Test
+    public void cachedExpressionsNegateLikeTheParser() {
+        ExpressionCache cache = ExpressionCache.builder(parser).maximumWeight(100).build();
+        for (String expression : new String[] { "-2^2", "- 2^2", "-2 ^ 2", "2^-2", "2 ^ - 2", "3 - -2", "3--2" }) {
+            assertEquals(expression, parser.evaluate(expression), cache.evaluate(expression), 0.0);
+        }
+    }
+
+    @Test
+    public void invalidExpressionsAreRejected() {
+        for (String expression : new String[] { "(1+2", "1+2)", "1 2", "1+", "foo(1)", "3 # 4", ",1" }) {
+            try {
+                parser.evaluate(expression);
+                fail("Expected " + expression + " to be rejected");
+            }
+            catch (RuntimeException e) {
+                // Expected
+            }
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class FormulaGraphTest {
+
+    @Test
+    public void namesAreCaseInsensitive() {
+        FormulaGraph graph = new FormulaGraph()
+                .define("Total", "Price * QTY")
+                .set("price", 4)
+                .set("Qty", 10);
+
+        assertEquals(40, graph.get("TOTAL"), 0.0);
+        assertEquals(40, graph.get("total"), 0.0);
+        assertTrue(graph.contains("PRICE"));
+        assertTrue(graph.isFormula("tOtAl"));
+        assertFalse(graph.isFormula("QTY"));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("total", "price", "qty")), graph.getNames());
+
+        graph.set("PRICE", 5);
+        assertEquals(50, graph.get("Total"), 0.0);
+    }
+
+    @Test
+    public void redefiningWithAnotherCaseReplacesTheFormula() {
+        FormulaGraph graph = new FormulaGraph()
+                .define("Rate", "1 / Count")
+                .set("COUNT", 3)
+                .define("Share", "RATE * 100");
+
+        assertEquals(100.0 / 3, graph.get("share"), 1e-12);
+        graph.define("RATE", "2 / count");
+        assertEquals(200.0 / 3, graph.get("SHARE"), 1e-12);
+        assertEquals(2, graph.getLevel("Share"));
+        assertEquals(3, graph.getNames().size());
+    }
+
+    @Test
+    public void selfReferencesInAnotherCaseAreRejected() {
+        FormulaGraph graph = new FormulaGraph().define("A", "b + 1").define("B", "c * 2");
+        try {
+            graph.define("C", "A - 1");
+            fail("Expected a circular reference to be rejected");
+        }
+        catch (RuntimeException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void functionAndConstantNamesAreRejected() {
+        FormulaGraph graph = new FormulaGraph();
+        for (String name : new String[] { "PI", "e", "Max", "abs" }) {
+            try {
+                graph.define(name, "1 + 2");
+                fail("Expected the name " + name + " to be rejected");
+            }
+            catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        assertTrue(graph.getNames().isEmpty());
+    }
+
+    @Test
+    public void onlyFormulasWhoseInputsChangedAreRecalculated() {
+        FormulaGraph graph = new FormulaGraph()
+                .define("margin", "revenue - cost")
+                .define("ratio", "margin / revenue")
+                .define("tax", "rate * 100")
+                .set("revenue", 120).set("cost", 80).set("rate", 0.2);
+        assertEquals(3, graph.recalculate());
+        assertEquals(1.0 / 3, graph.get("ratio"), 1e-12);
+
+        graph.set("cost", 60);
+        assertEquals(2, graph.recalculate());
+        assertEquals(0.5, graph.get("ratio"), 1e-12);
+
+        // A formula whose value does not change leaves its dependents clean
+        graph.set("revenue", 120).set("rate", 0.2);
+        assertEquals(0, graph.recalculate());
+        graph.define("margin", "60 + 0 * cost");
+        assertEquals(1, graph.recalculate());
+        assertEquals(2, graph.getLevel("ratio"));
+    }
+
+    @Test
+    public void wideLevelsAreRecalculatedInParallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            FormulaGraph graph = new FormulaGraph(new ExpressionParser(), pool, 8);
+            for (int i = 0; i < 500; i++) {
+                graph.define("a" + i, "x * " + i).define("b" + i, "a" + i + " + y");
+            }
+            graph.set("x", 2).set("y", 1);
+            assertEquals(1000, graph.recalculate());
+            for (int i = 0; i < 500; i++) {
+                assertEquals(2.0 * i + 1, graph.get("B" + i), 0.0);
+            }
+
+            graph.set("y", 3);
+            assertEquals(500, graph.recalculate());
+            assertEquals(2.0 * 499 + 3, graph.get("b499"), 0.0);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.logicalbias.parser.functions.Function;
+import com.logicalbias.parser.operators.Operator;
+import com.logicalbias.parser.operators.PowerOperator;
+
+public class FunctionRegistryTest {
+
+    private static final Function CUBE = new Function("Cube", 1) {
+        @Override
+        public double apply(double... args) {
+            return args[0] * args[0] * args[0];
+        }
+    };
+
+    @Test
+    public void customFunctionsOperatorsAndConstantsAreUsedByTheParser() {
+        FunctionRegistry registry = FunctionRegistry.defaults().toBuilder()
+                .function(CUBE)
+                .function("kubus", CUBE)
+                .operator(new PowerOperator("**", 5))
+                .constant("Answer", 42)
+                .build();
+        ExpressionParser parser = new ExpressionParser(registry);
+
+        assertEquals(27, parser.evaluate("CUBE(3)"), 0.0);
+        assertEquals(8, parser.evaluate("kubus(2)"), 0.0);
+        // The longest registered symbol is matched, so ** is not read as two multiplications
+        assertEquals(16, parser.evaluate("2 ** 3 * 2"), 0.0);
+        assertEquals(-6, parser.evaluate("2 * -3"), 0.0);
+        assertEquals(43, parser.evaluate("answer + 1"), 0.0);
+
+        // Extending the defaults leaves them untouched
+        assertNull(FunctionRegistry.defaults().getFunction("cube"));
+        assertNull(FunctionRegistry.defaults().getOperator("**"));
+    }
+
+    @Test
+    public void namesAreCaseInsensitiveAndReplacedWhenRegisteredAgain() {
+        FunctionRegistry registry = FunctionRegistry.builder()
+                .function("CUBE", CUBE)
+                .constant("x0", 1)
+                .constant("X0", 2)
+                .build();
+
+        assertSame(CUBE, registry.getFunction("cube"));
+        assertEquals(2, registry.getConstant("x0"), 0.0);
+        assertEquals("cube", registry.nameOf(CUBE, Token.Type.FUNCTION));
+        assertNull(registry.nameOf(CUBE, Token.Type.OPERATOR));
+    }
+
+    @Test
+    public void symbolsMayBeBothPrefixAndInfixOperators() {
+        FunctionRegistry registry = FunctionRegistry.defaults();
+        Operator negation = registry.getPrefixOperator("-");
+        Operator subtraction = registry.getOperator("-");
+        assertEquals(1, negation.getNumberOfArguments());
+        assertEquals(2, subtraction.getNumberOfArguments());
+
+        assertEquals(2, registry.matchOperator("1 <= 2", 2));
+        assertEquals(1, registry.matchOperator("1 < 2", 2));
+        assertEquals(0, registry.matchOperator("1 < 2", 1));
+    }
+
+    @Test
+    public void invalidRegistrationsAreRejected() {
+        try {
+            FunctionRegistry.builder().prefixOperator(new PowerOperator("^", 5));
+            fail("Expected a binary prefix operator to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            FunctionRegistry.builder().constant("", 1);
+            fail("Expected an empty name to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+}
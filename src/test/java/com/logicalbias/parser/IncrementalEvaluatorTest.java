@@ -0,0 +1,77 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.logicalbias.parser.functions.Function;
+
+public class IncrementalEvaluatorTest {
+
+    @Test
+    public void everyEvaluationAgreesWithTheInterpreter() {
+        ExpressionParser parser = new ExpressionParser();
+
+        for (String expression : TestExpressions.EXPRESSIONS) {
+            CompiledExpression compiled = parser.compile(expression);
+            IncrementalEvaluator evaluator = compiled.newIncrementalEvaluator();
+            double[][] columns = TestExpressions.columns(compiled.getVariableCount());
+            double[] row = new double[compiled.getVariableCount()];
+
+            for (int r = 0; r < TestExpressions.ROWS; r++) {
+                // Change every variable on some rows and a single one on the others
+                if (r % 3 == 0) {
+                    evaluator.set(0, columns[0][r]);
+                }
+                else {
+                    for (int i = 0; i < row.length; i++) {
+                        evaluator.set(i, columns[i][r]);
+                    }
+                }
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = evaluator.get(i);
+                }
+                assertEquals(expression + " row " + r, compiled.evaluate(row), evaluator.evaluate(), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void onlyAffectedResultsAreRecomputed() {
+        CompiledExpression compiled = new ExpressionParser().compile("if(x > 0, x * 2, 3) + y * z");
+        IncrementalEvaluator evaluator = compiled.newIncrementalEvaluator();
+        evaluator.set("x", 1).set("y", 2).set("z", 3);
+        assertEquals(8, evaluator.evaluate(), 0.0);
+
+        // Only the product, the sum and the variable itself depend on z
+        evaluator.set("z", 4);
+        assertEquals(10, evaluator.evaluate(), 0.0);
+        assertEquals(3, evaluator.getRecomputedCount());
+
+        // Setting a variable to its current value changes nothing
+        evaluator.set("y", 2);
+        assertEquals(10, evaluator.evaluate(), 0.0);
+        assertEquals(0, evaluator.getRecomputedCount());
+    }
+
+    @Test
+    public void impureResultsAreRecomputedOnEveryEvaluation() {
+        AtomicInteger calls = new AtomicInteger();
+        Function counted = new Function("counted", 1) {
+            @Override
+            public double apply(double... args) {
+                return args[0] + calls.incrementAndGet();
+            }
+        };
+        ExpressionParser parser = new ExpressionParser(FunctionRegistry.defaults().toBuilder().function(counted).build());
+        IncrementalEvaluator evaluator = parser.compile("counted(x) * 10 + y").newIncrementalEvaluator();
+
+        assertEquals(10, evaluator.evaluate(), 0.0);
+        assertEquals(20, evaluator.evaluate(), 0.0);
+        evaluator.set("y", 5);
+        assertEquals(35, evaluator.evaluate(), 0.0);
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.logicalbias.parser.functions.Function;
+
+/**
+ * An untaken branch of {@code &&}, {@code ||} or {@code if} must not be evaluated by any backend.
+ * Each expression calls {@code fail}, which throws, only in a branch its variables do not take.
+ */
+public class LazyEvaluationTest {
+
+    private static final FunctionRegistry REGISTRY = FunctionRegistry.defaults().toBuilder()
+            .function(new Function("fail", 1) {
+                @Override
+                public double apply(double... args) {
+                    throw new IllegalStateException("Untaken branch evaluated");
+                }
+            })
+            .build();
+
+    // Each expression of x and y, with variables taking none of its failing branches, and its value
+    private static final String[] EXPRESSIONS = {
+            "if(x, fail(y), 2)",
+            "x && fail(y)",
+            "(x || y) || fail(x)",
+            "if(x > 0, fail(1), if(y, 3, fail(2))) + x * y",
+            "(x && fail(1)) + (y || fail(2)) * 2 + if(y, 4, fail(3))",
+            "if(x || y, if(x && y, fail(1), y * 5), fail(2))" };
+    private static final double[] VALUES = { 2, 0, 1, 3, 6, 5 };
+
+    private static final double X = 0;
+    private static final double Y = 1;
+
+    @Test
+    public void interpreterAndBytecodeSkipUntakenBranches() {
+        ExpressionParser parser = new ExpressionParser(REGISTRY);
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            CompiledExpression compiled = compile(parser, EXPRESSIONS[i]);
+            assertEquals(EXPRESSIONS[i], VALUES[i], compiled.evaluate(X, Y), 0.0);
+            assertEquals(EXPRESSIONS[i], VALUES[i], compiled.toBytecode().evaluate(X, Y), 0.0);
+        }
+    }
+
+    @Test
+    public void decodedExpressionsSkipUntakenBranches() {
+        ExpressionParser parser = new ExpressionParser(REGISTRY);
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            byte[] encoded = ExpressionCodec.encode(compile(parser, EXPRESSIONS[i]), REGISTRY);
+            CompiledExpression decoded = ExpressionCodec.decode(ByteBuffer.wrap(encoded), REGISTRY);
+            assertEquals(EXPRESSIONS[i], VALUES[i], decoded.evaluate(X, Y), 0.0);
+        }
+    }
+
+    @Test
+    public void batchAndParallelEvaluationSkipUntakenBranches() {
+        ExpressionParser parser = new ExpressionParser(REGISTRY);
+        int rows = BatchEvaluator.CHUNK_SIZE * 3 + 1;
+        double[][] columns = new double[2][rows];
+        Arrays.fill(columns[0], X);
+        Arrays.fill(columns[1], Y);
+
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            CompiledExpression compiled = compile(parser, EXPRESSIONS[i]);
+            double[] batch = new double[rows];
+            compiled.newBatchEvaluator().evaluate(columns, batch);
+            double[] parallel = new double[rows];
+            new ParallelEvaluator(compiled, ForkJoinPool.commonPool(), 64).evaluate(columns, parallel);
+            for (int r = 0; r < rows; r++) {
+                assertEquals(EXPRESSIONS[i], VALUES[i], batch[r], 0.0);
+                assertEquals(EXPRESSIONS[i], VALUES[i], parallel[r], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void incrementalEvaluationSkipsUntakenBranches() {
+        ExpressionParser parser = new ExpressionParser(REGISTRY);
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            IncrementalEvaluator evaluator = compile(parser, EXPRESSIONS[i]).newIncrementalEvaluator();
+            evaluator.set("x", X).set("y", Y);
+            assertEquals(EXPRESSIONS[i], VALUES[i], evaluator.evaluate(), 0.0);
+        }
+    }
+
+    @Test
+    public void decimalEvaluationSkipsUntakenBranches() {
+        ExpressionParser parser = new ExpressionParser(REGISTRY);
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            DecimalExpression decimal = parser.compileDecimal(EXPRESSIONS[i], MathContext.DECIMAL64);
+            BigDecimal[] values = new BigDecimal[decimal.getVariableCount()];
+            for (int v = 0; v < values.length; v++) {
+                values[v] = BigDecimal.valueOf(decimal.getVariableNames()[v].equals("x") ? X : Y);
+            }
+            assertEquals(EXPRESSIONS[i], VALUES[i], decimal.evaluate(values).doubleValue(), 0.0);
+        }
+
+        // An untaken division by zero is never performed
+        DecimalExpression decimal = parser.compileDecimal("if(x, 1/0, 2)", MathContext.DECIMAL64);
+        assertEquals(0, BigDecimal.valueOf(2).compareTo(decimal.evaluate(BigDecimal.ZERO)));
+        try {
+            decimal.evaluate(BigDecimal.ONE);
+            fail("Expected the taken division by zero to fail");
+        }
+        catch (ArithmeticException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void longEvaluationSkipsUntakenBranches() {
+        // A division by zero has no exact result
+        LongExpression integral = new ExpressionParser().compile("if(x, 1/x, 2) + (x && 1 % x) + ((x + 1) || 1/x)").toLongExpression();
+        assertEquals(3, integral.evaluateExact(0));
+    }
+
+    /**
+     * Compiles the expression, checking that its variables are x and y in that order.
+     */
+    private static CompiledExpression compile(ExpressionParser parser, String expression) {
+        CompiledExpression compiled = parser.compile(expression);
+        assertEquals(expression, 0, compiled.getVariableIndex("x"));
+        assertEquals(expression, compiled.getVariableCount() - 1, compiled.getVariableIndex("y"));
+        return compiled;
+    }
+
+}
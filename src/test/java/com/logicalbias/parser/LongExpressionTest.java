@@ -0,0 +1,81 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class LongExpressionTest {
+
+    private final ExpressionParser parser = new ExpressionParser();
+
+    @Test
+    public void integralRowsAgreeWithTheInterpreter() {
+        for (String expression : TestExpressions.EXPRESSIONS) {
+            CompiledExpression compiled = parser.compile(expression);
+            LongExpression integral = compiled.toLongExpression();
+            if (integral == null) {
+                continue;
+            }
+
+            double[][] columns = TestExpressions.columns(compiled.getVariableCount());
+            for (int r = 0; r < TestExpressions.ROWS; r++) {
+                double[] row = TestExpressions.row(columns, r);
+                long[] values = new long[row.length];
+                boolean isIntegral = true;
+                for (int i = 0; i < row.length; i++) {
+                    values[i] = (long) row[i];
+                    isIntegral &= values[i] == row[i];
+                }
+                if (isIntegral) {
+                    assertEquals(expression + " row " + r, compiled.evaluate(row), integral.evaluate(values), 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void onlyIntegralExpressionsHaveALongForm() {
+        assertNotNull(parser.compile("if(x > y, x * z, y - z)").toLongExpression());
+        assertNotNull(parser.compile("max(x, 3) % 4 + abs(y)!").toLongExpression());
+        assertNull(parser.compile("x * 1.5").toLongExpression());
+        assertNull(parser.compile("x + pi").toLongExpression());
+    }
+
+    @Test
+    public void resultsAreExactBeyondTheDoublePrecision() {
+        LongExpression integral = parser.compile("x * 2 + 1").toLongExpression();
+        assertEquals(Long.MAX_VALUE, integral.evaluateExact(Long.MAX_VALUE / 2));
+        assertEquals((1L << 53) + 1, integral.evaluateExact(1L << 52));
+    }
+
+    @Test
+    public void overflowIsDetected() {
+        LongExpression integral = parser.compile("x * x").toLongExpression();
+        try {
+            integral.evaluateExact(1L << 32);
+            fail("Expected an overflow to be detected");
+        }
+        catch (ArithmeticException e) {
+            // Expected
+        }
+        // Falls back to double arithmetic rather than wrapping
+        assertEquals(Math.pow(2, 64), integral.evaluate(1L << 32), 0.0);
+    }
+
+    @Test
+    public void aFailedEvaluationReleasesTheThreadsStack() {
+        LongExpression integral = parser.compile("x * 4 + y / 2").toLongExpression();
+        try {
+            integral.evaluateExact(1, 3);
+            fail("Expected a division with a remainder to fail");
+        }
+        catch (ArithmeticException e) {
+            // Expected
+        }
+        assertEquals(8, integral.evaluateExact(1, 8));
+    }
+
+}
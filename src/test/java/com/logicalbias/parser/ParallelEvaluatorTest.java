@@ -0,0 +1,61 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class ParallelEvaluatorTest {
+
+    @Test
+    public void everyRowAgreesWithTheInterpreter() {
+        ExpressionParser parser = new ExpressionParser();
+
+        for (String expression : TestExpressions.EXPRESSIONS) {
+            CompiledExpression compiled = parser.compile(expression);
+            double[][] columns = TestExpressions.columns(compiled.getVariableCount());
+            double[] output = new double[TestExpressions.ROWS];
+            // A small task size so that the rows are split across several tasks
+            new ParallelEvaluator(compiled, ForkJoinPool.commonPool(), 64).evaluate(columns, output);
+
+            for (int r = 0; r < TestExpressions.ROWS; r++) {
+                assertEquals(expression + " row " + r, compiled.evaluate(TestExpressions.row(columns, r)), output[r], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void anEvaluatorCanBeUsedByConcurrentCallers() throws Exception {
+        CompiledExpression compiled = new ExpressionParser().compile("x * y - z");
+        ForkJoinPool pool = new ForkJoinPool(3);
+        ParallelEvaluator evaluator = new ParallelEvaluator(compiled, pool, 64);
+        double[][] columns = TestExpressions.columns(3);
+        double[] expected = new double[TestExpressions.ROWS];
+        compiled.newBatchEvaluator().evaluate(columns, expected);
+
+        double[][] outputs = new double[4][TestExpressions.ROWS];
+        Thread[] callers = new Thread[outputs.length];
+        try {
+            for (int i = 0; i < callers.length; i++) {
+                double[] output = outputs[i];
+                callers[i] = new Thread(() -> evaluator.evaluate(columns, output, 10, TestExpressions.ROWS));
+                callers[i].start();
+            }
+            for (Thread caller : callers) {
+                caller.join();
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        for (double[] output : outputs) {
+            assertEquals(0, output[0], 0.0);
+            for (int r = 10; r < TestExpressions.ROWS; r++) {
+                assertEquals("row " + r, expected[r], output[r], 0.0);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SymbolTableTest {
+
+    @Test
+    public void everyKeyIsFoundDespiteHashCollisions() {
+        // Enough similar keys that most seeds place two of them into the same slot
+        Map<String, Integer> entries = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            entries.put("v" + i, i);
+        }
+        SymbolTable<Integer> table = new SymbolTable<>(entries);
+
+        for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+            assertEquals(entry.getValue(), table.get(entry.getKey()));
+        }
+        assertEquals(5, table.getMaxKeyLength());
+    }
+
+    @Test
+    public void namesWhichAreNotKeysAreNotFound() {
+        Map<String, Integer> entries = new HashMap<>();
+        entries.put("max", 1);
+        entries.put("min", 2);
+        entries.put("<=", 3);
+        SymbolTable<Integer> table = new SymbolTable<>(entries);
+
+        assertNull(table.get("mux"));
+        assertNull(table.get("ma"));
+        assertNull(table.get("maxi"));
+        assertNull(table.get(""));
+        assertNull(new SymbolTable<Integer>(new HashMap<>()).get("max"));
+    }
+
+    @Test
+    public void rangesOfCharactersAreLookedUpInPlace() {
+        Map<String, Integer> entries = new HashMap<>();
+        entries.put("max", 1);
+        entries.put("<=", 3);
+        SymbolTable<Integer> table = new SymbolTable<>(entries);
+
+        StringBuilder expression = new StringBuilder("1 <= max(2, 3)");
+        assertEquals(Integer.valueOf(3), table.get(expression, 2, 4));
+        assertEquals(Integer.valueOf(1), table.get(expression, 5, 8));
+        assertNull(table.get(expression, 5, 7));
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.logicalbias.parser;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Expressions of the variables x, y and z, and the rows of values, against which the evaluation backends are compared.
+ */
+final class TestExpressions {
+
+    static final String[] EXPRESSIONS = {
+            "x + y * z",
+            "(x - y) * (x + y) / 4 - z / 3",
+            "x % 3 + y % 2 - z % 4",
+            "x^2 + y^3 - 2^-z",
+            "-x^2 + -2^2 * y",
+            "abs(x - y) + abs(x - y) * abs(x - y)",
+            "min(x, y, z) + max(x, y) + sum(x, y, z) + avg(x, y)",
+            "floor(x) + ceil(y) + round(z)",
+            "abs(x)! + 3!",
+            "if(x > y, x * z, y - z)",
+            "(x && y) + (x || z) * 2 + (x == y) + (x != z) + (x <= y) + (x >= z)",
+            "if(x, y, z) * if(y, 1, 2) + x * y",
+            "if(x * y > 1 && x * y < 6, x * y, -x * y) + x * y",
+            "(x || y) * if(z > x, z, x) + (y && if(x, z, 1))" };
+
+    static final double[] VALUES = { -3, -2, -1.5, -1, 0, 0.5, 1, 2, 3 };
+
+    /** More rows than a batch chunk, and not a multiple of one */
+    static final int ROWS = 600;
+
+    private TestExpressions() {
+    }
+
+    /**
+     * Returns columns of rows cycling through every combination of the test values.
+     */
+    static double[][] columns(int count) {
+        double[][] columns = new double[count][ROWS];
+        for (int r = 0; r < ROWS; r++) {
+            int index = r;
+            for (int i = 0; i < count; i++) {
+                columns[i][r] = VALUES[index % VALUES.length];
+                index /= VALUES.length;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the values of the row of the columns.
+     */
+    static double[] row(double[][] columns, int r) {
+        double[] row = new double[columns.length];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = columns[i][r];
+        }
+        return row;
+    }
+
+    /**
+     * Asserts that the values agree to within rounding, or are both the same non-finite value.
+     */
+    static void assertClose(String message, double expected, double actual) {
+        if (Double.isNaN(expected) || Double.isInfinite(expected)) {
+            assertEquals(message, expected, actual, 0.0);
+        }
+        else {
+            assertEquals(message, expected, actual, 1e-9 * Math.max(1, Math.abs(expected)));
+        }
+    }
+
+}
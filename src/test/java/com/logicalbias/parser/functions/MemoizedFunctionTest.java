@@ -0,0 +1,140 @@
+package com.logicalbias.parser.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.logicalbias.parser.CompiledExpression;
+import com.logicalbias.parser.ExpressionParser;
+import com.logicalbias.parser.FunctionRegistry;
+
+public class MemoizedFunctionTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final Function sum = new Function("total", Function.VARIADIC) {
+        @Override
+        public double apply(double... args) {
+            calls.incrementAndGet();
+            double total = 0;
+            for (double arg : args) {
+                total += arg;
+            }
+            return total;
+        }
+
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+    };
+
+    @Test
+    public void repeatedArgumentsSkipTheDelegate() {
+        MemoizedFunction memoized = sum.memoize(64);
+        assertEquals(3, memoized.apply1(3), 0.0);
+        assertEquals(3, memoized.apply1(3), 0.0);
+        assertEquals(5, memoized.apply2(2, 3), 0.0);
+        assertEquals(5, memoized.apply(2, 3), 0.0);
+        assertEquals(6, memoized.apply(1, 2, 3), 0.0);
+        assertEquals(6, memoized.apply(new double[] { 9, 1, 2, 3 }, 1, 3), 0.0);
+
+        assertEquals(3, calls.get());
+        assertEquals(3, memoized.getHitCount());
+        assertEquals(3, memoized.getMissCount());
+        assertEquals(0.5, memoized.getHitRate(), 0.0);
+        assertEquals(3, memoized.size());
+    }
+
+    @Test
+    public void argumentsAreComparedByTheirBits() {
+        MemoizedFunction memoized = sum.memoize(64);
+        memoized.apply1(Double.NaN);
+        memoized.apply1(0.0 / 0.0);
+        assertEquals(1, memoized.getHitCount());
+
+        memoized.apply1(0.0);
+        memoized.apply1(-0.0);
+        assertEquals(1, memoized.getHitCount());
+
+        // The same bits with a different number of arguments are another key
+        memoized.apply2(0.0, 0.0);
+        memoized.apply(0.0, 0.0, 0.0);
+        assertEquals(1, memoized.getHitCount());
+    }
+
+    @Test
+    public void aNewResultDisplacesTheOlderOfItsSet() {
+        // Two entries form a single set
+        MemoizedFunction memoized = sum.memoize(2);
+        memoized.apply1(1);
+        memoized.apply1(2);
+        memoized.apply1(3);
+        assertEquals(1, memoized.getEvictionCount());
+        assertEquals(2, memoized.size());
+
+        memoized.apply1(3);
+        assertEquals(1, memoized.getHitCount());
+        memoized.apply1(1);
+        assertEquals(1, memoized.getHitCount());
+        assertEquals(2, memoized.getEvictionCount());
+
+        memoized.invalidateAll();
+        assertEquals(0, memoized.size());
+    }
+
+    @Test
+    public void aWorkingSetWithinTheSizeIsMostlyHeld() {
+        MemoizedFunction memoized = sum.memoize(1000);
+        assertEquals(1000, memoized.getMaximumSize());
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 100; i++) {
+                memoized.apply2(i, i % 7);
+            }
+        }
+        assertEquals(200, memoized.getHitCount() + memoized.getMissCount());
+        assertTrue(memoized.toString(), memoized.getHitRate() > 0.45);
+        assertTrue(memoized.size() <= 512);
+    }
+
+    @Test
+    public void memoizedFunctionsAreRegisteredInPlaceOfTheDelegate() {
+        MemoizedFunction memoized = sum.memoize(16);
+        ExpressionParser parser = new ExpressionParser(FunctionRegistry.defaults().toBuilder().function(memoized).build());
+        CompiledExpression compiled = parser.compile("total(x, 4) * 2");
+        assertEquals(9, compiled.evaluate(0.5), 0.0);
+        assertEquals(9, compiled.evaluate(0.5), 0.0);
+        assertEquals(11, compiled.evaluate(1.5), 0.0);
+        assertEquals(2, calls.get());
+        assertEquals(1, memoized.getHitCount());
+    }
+
+    @Test
+    public void onlyPureFunctionsWithRoomForASetMayBeMemoized() {
+        Function impure = new Function("impure", 1) {
+            @Override
+            public double apply(double... args) {
+                return args[0];
+            }
+        };
+        try {
+            impure.memoize(16);
+            fail("Expected an impure function to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            sum.memoize(1);
+            fail("Expected a maximum size of one to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+}
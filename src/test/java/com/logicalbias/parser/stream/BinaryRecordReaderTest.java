@@ -0,0 +1,75 @@
+package com.logicalbias.parser.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BinaryRecordReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writtenRecordsReadBackInEitherByteOrder() throws IOException {
+        for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            Path path = folder.newFile().toPath();
+            double[][] columns = new double[3][500];
+            for (int r = 0; r < 500; r++) {
+                columns[0][r] = r;
+                columns[1][r] = -r / 3.0;
+                columns[2][r] = r % 7 == 0 ? Double.NaN : r * 1e10;
+            }
+            try (BinaryRecordWriter writer = new BinaryRecordWriter(path, order, 3)) {
+                writer.write(columns, 200);
+                writer.write(new double[][] { columns[0], columns[1], columns[2] }, 0);
+                double[][] rest = new double[3][];
+                for (int c = 0; c < 3; c++) {
+                    rest[c] = Arrays.copyOfRange(columns[c], 200, 500);
+                }
+                writer.write(rest, 300);
+            }
+            assertEquals(500 * 3 * Double.BYTES, Files.size(path));
+
+            // A window of 100 bytes holds four whole records
+            double[][] read = new double[3][500];
+            double[][] batch = new double[3][64];
+            int total = 0;
+            try (BinaryRecordReader reader = new BinaryRecordReader(path, order, 100, "a", "b", "c")) {
+                int rows;
+                while ((rows = reader.read(batch, 64)) > 0) {
+                    for (int c = 0; c < 3; c++) {
+                        System.arraycopy(batch[c], 0, read[c], total, rows);
+                    }
+                    total += rows;
+                }
+            }
+            assertEquals(500, total);
+            for (int c = 0; c < 3; c++) {
+                assertArrayEquals(order + " column " + c, columns[c], read[c], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void partialRecordsAreRejected() throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, new byte[Double.BYTES * 3]);
+        try (BinaryRecordReader reader = new BinaryRecordReader(path, ByteOrder.nativeOrder(), "a", "b")) {
+            fail("Expected a partial record to be rejected");
+        }
+        catch (IOException e) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.logicalbias.parser.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvRecordReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fieldsAreParsedLikeDoubleParseDouble() throws IOException {
+        String[] fields = { "0", "-12", "+3.25", "1e3", "2.5E-3", ".5", "7.", "-0", "0.1", "123456789012345678901",
+                "9007199254740993", "1e-400", "NaN", "-Infinity", "4.9e-324" };
+        Path path = write("value\n" + String.join("\n", fields) + "\n");
+
+        double[][] columns = new double[1][fields.length];
+        try (CsvRecordReader reader = new CsvRecordReader(path)) {
+            assertArrayEquals(new String[] { "value" }, reader.getColumnNames());
+            assertEquals(fields.length, reader.read(columns, fields.length + 1));
+            assertEquals(0, reader.read(columns, 1));
+        }
+        for (int i = 0; i < fields.length; i++) {
+            assertEquals(fields[i], Double.doubleToLongBits(Double.parseDouble(fields[i])), Double.doubleToLongBits(columns[0][i]));
+        }
+    }
+
+    @Test
+    public void blankLinesSpacesAndEmptyFieldsAreTolerated() throws IOException {
+        Path path = write(" a ; b \r\n\r\n 1 ;2\r\n;  \r\n\n3;4");
+
+        double[][] columns = new double[2][4];
+        try (CsvRecordReader reader = new CsvRecordReader(path, ';')) {
+            assertArrayEquals(new String[] { "a", "b" }, reader.getColumnNames());
+            assertEquals(3, reader.read(columns, 4));
+        }
+        assertArrayEquals(new double[] { 1, Double.NaN, 3, 0 }, columns[0], 0.0);
+        assertArrayEquals(new double[] { 2, Double.NaN, 4, 0 }, columns[1], 0.0);
+    }
+
+    @Test
+    public void recordsMayStraddleMappingWindows() throws IOException {
+        StringBuilder text = new StringBuilder("x,y\n");
+        for (int i = 0; i < 1000; i++) {
+            text.append(i).append(',').append(i * 0.25).append('\n');
+        }
+        Path path = write(text.toString());
+
+        double[][] columns = new double[2][64];
+        int total = 0;
+        try (CsvRecordReader reader = new CsvRecordReader(path, ',', 100)) {
+            int rows;
+            while ((rows = reader.read(columns, 64)) > 0) {
+                for (int r = 0; r < rows; r++) {
+                    assertEquals(total + r, columns[0][r], 0.0);
+                    assertEquals((total + r) * 0.25, columns[1][r], 0.0);
+                }
+                total += rows;
+            }
+        }
+        assertEquals(1000, total);
+    }
+
+    @Test
+    public void malformedRecordsAreRejected() throws IOException {
+        for (String text : new String[] { "a,b\n1\n", "a,b\n1,2,3\n", "a\n1x\n", "" }) {
+            try (CsvRecordReader reader = new CsvRecordReader(write(text))) {
+                reader.read(new double[2][1], 1);
+                fail("Expected " + text + " to be rejected");
+            }
+            catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void writtenRecordsReadBackExactly() throws IOException {
+        Path path = folder.newFile().toPath();
+        double[][] columns = { { 0.1, -2, 1e300, Double.MIN_VALUE }, { Math.PI, Double.NaN, -0.0, 12345.678 } };
+        try (CsvRecordWriter writer = new CsvRecordWriter(path, "First", "Second")) {
+            writer.write(columns, 4);
+        }
+
+        double[][] read = new double[2][4];
+        try (CsvRecordReader reader = new CsvRecordReader(path)) {
+            assertArrayEquals(new String[] { "First", "Second" }, reader.getColumnNames());
+            assertEquals(4, reader.read(read, 4));
+            assertEquals(0, reader.read(read, 4));
+        }
+        assertArrayEquals(columns[0], read[0], 0.0);
+        assertArrayEquals(columns[1], read[1], 0.0);
+    }
+
+    private Path write(String text) throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+}
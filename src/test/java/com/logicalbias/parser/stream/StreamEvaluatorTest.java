@@ -0,0 +1,78 @@
+package com.logicalbias.parser.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.logicalbias.parser.ExpressionParser;
+
+public class StreamEvaluatorTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void formulasAreEvaluatedForEveryRecord() throws IOException {
+        StringBuilder text = new StringBuilder("Price,QTY,Discount\n");
+        for (int i = 0; i < 1000; i++) {
+            text.append(i % 10).append(',').append(i).append(',').append(i % 3).append('\n');
+        }
+        Path input = write(text.toString());
+        Path output = folder.newFile().toPath();
+
+        // Variables bind to the columns ignoring case, whatever the case of the header or the formula
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("total", "price * qty - Discount");
+        formulas.put("units", "QTY");
+        StreamEvaluator evaluator = new StreamEvaluator(new ExpressionParser(), formulas, 64);
+        assertArrayEquals(new String[] { "total", "units" }, evaluator.getOutputNames());
+
+        try (CsvRecordReader reader = new CsvRecordReader(input);
+                CsvRecordWriter writer = new CsvRecordWriter(output, evaluator.getOutputNames())) {
+            assertEquals(1000, evaluator.evaluate(reader, writer));
+        }
+
+        double[][] results = new double[2][1000];
+        try (CsvRecordReader reader = new CsvRecordReader(output)) {
+            assertEquals(1000, reader.read(results, 1000));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 10 * i - i % 3, results[0][i], 0.0);
+            assertEquals(i, results[1][i], 0.0);
+        }
+    }
+
+    @Test
+    public void unknownColumnsAreRejected() throws IOException {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("total", "price * quantity");
+        StreamEvaluator evaluator = new StreamEvaluator(new ExpressionParser(), formulas);
+
+        try (CsvRecordReader reader = new CsvRecordReader(write("Price,QTY\n1,2\n"));
+                CsvRecordWriter writer = new CsvRecordWriter(folder.newFile().toPath(), "total")) {
+            evaluator.evaluate(reader, writer);
+            fail("Expected an unknown column to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private Path write(String text) throws IOException {
+        Path path = folder.newFile().toPath();
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+}